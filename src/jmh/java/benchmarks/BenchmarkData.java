@@ -0,0 +1,97 @@
+package benchmarks;
+
+import functional.ColumnarDataset;
+import functional.ParallelCsvParser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.Random;
+
+// Synthetic customer-behaviour purchases shared by the benchmarks. One row per line item:
+//   CustomerID, TransactionID, PurchaseDate, Category, Product, Quantity, Amount
+// A transaction holds 1-5 items of one customer; products are skewed so that a few are bought together
+// often enough for market basket rules. Generated once per row count with a fixed seed into
+// -Dbench.dataDir (default <tmp>/cba-benchmarks) and reused by later runs.
+public final class BenchmarkData {
+    public static final String DATA_DIR_PROPERTY = "bench.dataDir";
+    private static final String HEADER = "CustomerID,TransactionID,PurchaseDate,Category,Product,Quantity,Amount";
+    private static final String[] CATEGORIES = {
+            "Electronics", "Fashion", "Home & Kitchen", "Books", "Toys", "Sports",
+            "Beauty", "Grocery", "Garden", "Automotive", "Music", "Office"
+    };
+    private static final int PRODUCTS = 500;
+    private static final long SEED = 20240601L;
+
+    private BenchmarkData() {
+    }
+
+    public static Path directory() {
+        return Paths.get(System.getProperty(DATA_DIR_PROPERTY, Paths.get(System.getProperty("java.io.tmpdir"), "cba-benchmarks").toString()));
+    }
+
+    // CSV with the given number of rows, generated on first use
+    public static synchronized Path purchasesCsv(int rows) {
+        Path file = directory().resolve("purchases-" + rows + ".csv");
+        if (Files.isRegularFile(file)) return file;
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "purchases", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writePurchases(writer, rows);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not generate benchmark data " + file, e);
+        }
+    }
+
+    public static ColumnarDataset purchases(int rows) {
+        try {
+            return new ParallelCsvParser(',').parse(purchasesCsv(rows));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writePurchases(BufferedWriter writer, int rows) throws IOException {
+        Random random = new Random(SEED);
+        int customers = Math.max(10, rows / 10);
+        long transaction = 0;
+        writer.write(HEADER);
+        writer.newLine();
+        int written = 0;
+        StringBuilder line = new StringBuilder(96);
+        while (written < rows) {
+            transaction++;
+            int customer = random.nextInt(customers);
+            int day = random.nextInt(365);
+            String date = LocalDate.of(2024, 1, 1).plusDays(day).toString();
+            int items = Math.min(rows - written, 1 + random.nextInt(5));
+            int anchor = skewedProduct(random);
+            for (int i = 0; i < items; i++) {
+                // Items after the first are often neighbours of the first, which gives the miners real rules
+                int product = i > 0 && random.nextInt(3) > 0 ? (anchor + i) % PRODUCTS : skewedProduct(random);
+                int quantity = 1 + random.nextInt(4);
+                double price = 2 + (product % 97) * 1.5 + random.nextGaussian();
+                line.setLength(0);
+                line.append('C').append(customer).append(",T").append(transaction).append(',').append(date)
+                        .append(',').append(CATEGORIES[product % CATEGORIES.length])
+                        .append(",P").append(product).append(',').append(quantity)
+                        .append(',').append(Math.round(Math.max(0.5, price) * quantity * 100) / 100.0);
+                writer.write(line.toString());
+                writer.newLine();
+                written++;
+            }
+        }
+    }
+
+    private static int skewedProduct(Random random) {
+        double u = random.nextDouble();
+        return (int) (PRODUCTS * u * u * u);
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import functional.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// Ingestion stages: sequential and parallel CSV import, loading the columnar snapshot, and storing into SQLite
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class IngestionBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private String csv;
+    private Path workDirectory;
+    private ConnectionPool pool;
+    private DatasetCache snapshots;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = BenchmarkData.purchasesCsv(rows).toString();
+        workDirectory = Files.createTempDirectory(BenchmarkData.directory(), "ingestion");
+        pool = new ConnectionPool(new DatabaseConfig("jdbc:sqlite:" + workDirectory.resolve("bench.db")));
+        snapshots = new DatasetCache(workDirectory.resolve("cache"), false);
+        snapshots.load(Paths.get(csv), ',');
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public ColumnarDataset importData() {
+        DataIngestion ingestion = new DataIngestion(pool);
+        ingestion.importData(csv, ",");
+        return ingestion.getDataset();
+    }
+
+    @Benchmark
+    public ColumnarDataset importDataParallel() {
+        DataIngestion ingestion = new DataIngestion(pool);
+        ingestion.setDatasetCache(null);
+        ingestion.importDataParallel(csv, ",");
+        return ingestion.getDataset();
+    }
+
+    @Benchmark
+    public ColumnarDataset loadSnapshot() {
+        DataIngestion ingestion = new DataIngestion(pool);
+        ingestion.setDatasetCache(snapshots);
+        ingestion.importDataParallel(csv, ",");
+        return ingestion.getDataset();
+    }
+
+    @Benchmark
+    public DataIngestion storeData(StoreState state) {
+        state.ingestion.storeData("purchases");
+        return state.ingestion;
+    }
+
+    // A loaded dataset and an empty target table for every store
+    @State(Scope.Thread)
+    public static class StoreState {
+        DataIngestion ingestion;
+
+        @Setup(Level.Invocation)
+        public void setUp(IngestionBenchmark benchmark) throws SQLException {
+            try (ConnectionPool.Lease lease = benchmark.pool.write();
+                 Statement statement = lease.getConnection().createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS purchases");
+            }
+            ingestion = new DataIngestion(benchmark.pool);
+            ingestion.setDatasetCache(benchmark.snapshots);
+            ingestion.importDataParallel(benchmark.csv, ",");
+        }
+    }
+}
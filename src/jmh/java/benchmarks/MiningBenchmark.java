@@ -0,0 +1,39 @@
+package benchmarks;
+
+import functional.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Market basket analysis: grouping line items into baskets, then FP-Growth rule mining
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class MiningBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private ColumnarDataset purchases;
+    private TransactionBaskets baskets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        purchases = BenchmarkData.purchases(rows);
+        baskets = TransactionBaskets.fromColumns(purchases, "TransactionID", "Product");
+    }
+
+    @Benchmark
+    public TransactionBaskets groupBaskets() {
+        return TransactionBaskets.fromColumns(purchases, "TransactionID", "Product");
+    }
+
+    // What marketBasketAnalysis spends its time on, without printing the rules
+    @Benchmark
+    public List<BasketRule> mineRules() throws InterruptedException {
+        return new FPGrowth().mineRules(baskets);
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import functional.ReportingAndDashboards;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Report generation for a metrics map of the given size. Reports are written where the application writes
+// them (src/main/resources/reports under the working directory), so run from the project root.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportingBenchmark {
+    @Param({"10", "100"})
+    public int metricCount;
+
+    @Param({"pdf", "txt"})
+    public String format;
+
+    private final ReportingAndDashboards reporting = new ReportingAndDashboards();
+    private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Files.createDirectories(Paths.get("src/main/resources/reports"));
+        for (int i = 0; i < metricCount; i++) {
+            metrics.put("Metric" + i, i % 3 == 0 ? (Object) (i * 1.5) : "Segment " + i);
+        }
+    }
+
+    @Benchmark
+    public void generateReport() {
+        reporting.generateReport("benchmark_report", metrics, format);
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import functional.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Per-column statistics and the cleaning pipeline over an already imported dataset
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class StatisticsBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private ColumnarDataset purchases;
+    private final DataAnalysis dataAnalysis = new DataAnalysis();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        purchases = BenchmarkData.purchases(rows);
+    }
+
+    // The work behind calculateDescriptiveStatistics, without printing the summary
+    @Benchmark
+    public StreamingStatistics descriptiveStatistics() {
+        return dataAnalysis.summarize(purchases, "Amount");
+    }
+
+    @Benchmark
+    public Map<String, Long> frequencyDistribution() {
+        return new FrequencyCounter().frequencies(purchases, "Category");
+    }
+
+    @Benchmark
+    public CleaningPipeline.Result cleanData() {
+        return new CleaningPipeline()
+                .add(new CleaningPipeline.CoerceTypes())
+                .add(new CleaningPipeline.ImputeMissing(CleaningPipeline.ImputeMissing.Strategy.MEDIAN))
+                .add(new CleaningPipeline.RemoveOutliers(CleaningPipeline.RemoveOutliers.Method.IQR, 3.0))
+                .run(purchases);
+    }
+}
@@ -0,0 +1,103 @@
+package functional;
+
+import weka.core.Instances;
+
+import java.sql.*;
+import java.util.*;
+
+// Read side of the SQLite store: the analyses pull filtered or aggregated slices from here as columnar
+// datasets instead of reparsing the source files
+public class AnalyticsStore {
+    private static final int FETCH_SIZE = 10000;
+
+    private final ConnectionPool connectionPool;
+
+    public AnalyticsStore(String dbUrl) {
+        this(ConnectionPool.forUrl(dbUrl));
+    }
+
+    // Reads run on the pool's WAL reader connections, so they proceed while an ingestion job is writing
+    public AnalyticsStore(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    public ColumnarDataset query(SliceQuery query) throws SQLException {
+        return query(query.toSql(), query.getParameters().toArray());
+    }
+
+    // Any read-only statement with bound parameters
+    public ColumnarDataset query(String sql, Object... parameters) throws SQLException {
+        long start = System.nanoTime();
+        Metrics.Span span = PipelineMetrics.QUERY.start();
+        try (ConnectionPool.Lease lease = connectionPool.read();
+             ResultSet rs = prepare(lease, sql, parameters).executeQuery()) {
+            ColumnarDataset data = toDataset(rs);
+            System.out.println("Query returned " + data.getRowCount() + " rows in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return data;
+        } finally {
+            span.close();
+        }
+    }
+
+    // The slice as Weka Instances built straight from the rows, without an intermediate dataset; the
+    // selected columns are the attributes and the last one is the class
+    public Instances queryInstances(SliceQuery query, String relationName) throws SQLException {
+        long start = System.nanoTime();
+        Metrics.Span span = PipelineMetrics.QUERY.start();
+        try (ConnectionPool.Lease lease = connectionPool.read();
+             ResultSet rs = prepare(lease, query.toSql(), query.getParameters().toArray()).executeQuery()) {
+            Instances instances = InstancesAdapter.fromResultSet(rs, relationName);
+            System.out.println("Query returned " + instances.numInstances() + " instances in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return instances;
+        } finally {
+            span.close();
+        }
+    }
+
+    // Aggregate of a value column per group over the slice, e.g. total spend per segment or per day
+    public Map<String, Double> aggregate(SliceQuery slice, String groupColumn, SliceQuery.Aggregate aggregate,
+                                         String valueColumn) throws SQLException {
+        Map<String, Double> results = new LinkedHashMap<>();
+        Metrics.Span span = PipelineMetrics.QUERY.start();
+        try (ConnectionPool.Lease lease = connectionPool.read();
+             ResultSet rs = prepare(lease, slice.toAggregateSql(groupColumn, aggregate, valueColumn),
+                     slice.getParameters().toArray()).executeQuery()) {
+            while (rs.next()) {
+                results.put(rs.getString(1), rs.getDouble(2));
+            }
+        } finally {
+            span.close();
+        }
+        return results;
+    }
+
+    // Copy a result set into a columnar dataset; column types are inferred from the values as on import
+    public static ColumnarDataset toDataset(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        List<String> names = new ArrayList<>(meta.getColumnCount());
+        for (int c = 1; c <= meta.getColumnCount(); c++) {
+            names.add(meta.getColumnLabel(c));
+        }
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(names);
+        String[] row = new String[names.size()];
+        while (rs.next()) {
+            for (int c = 0; c < row.length; c++) {
+                row[c] = rs.getString(c + 1);
+            }
+            builder.addRow(row);
+        }
+        return builder.build();
+    }
+
+    // Statements are cached per connection, so repeated slices skip SQL parsing and planning
+    private static PreparedStatement prepare(ConnectionPool.Lease lease, String sql, Object[] parameters) throws SQLException {
+        PreparedStatement statement = lease.prepare(sql);
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+        statement.setFetchSize(FETCH_SIZE);
+        return statement;
+    }
+}
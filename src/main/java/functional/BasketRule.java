@@ -0,0 +1,51 @@
+package functional;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+// Association rule "antecedent => consequent" with its support, confidence and lift
+public class BasketRule implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> antecedent;
+    private final List<String> consequent;
+    private final double support;
+    private final double confidence;
+    private final double lift;
+
+    public BasketRule(List<String> antecedent, List<String> consequent, double support, double confidence, double lift) {
+        this.antecedent = Collections.unmodifiableList(antecedent);
+        this.consequent = Collections.unmodifiableList(consequent);
+        this.support = support;
+        this.confidence = confidence;
+        this.lift = lift;
+    }
+
+    public List<String> getAntecedent() {
+        return antecedent;
+    }
+
+    public List<String> getConsequent() {
+        return consequent;
+    }
+
+    // Fraction of transactions containing both sides
+    public double getSupport() {
+        return support;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public double getLift() {
+        return lift;
+    }
+
+    @Override
+    public String toString() {
+        return antecedent + " => " + consequent
+                + String.format(" (support=%.4f, confidence=%.3f, lift=%.3f)", support, confidence, lift);
+    }
+}
@@ -0,0 +1,100 @@
+package functional;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Renders many reports concurrently, e.g. one PDF per customer. Each worker keeps its fonts for the whole
+// batch (see PdfReportTemplate), and at most `backlog` reports wait at any time: submit() blocks beyond
+// that, so a caller producing thousands of reports never holds all their metrics in memory at once.
+//
+//   try (BatchReportRenderer batch = reporting.newBatch()) {
+//       for (...) batch.submit("Recommendations_" + id, metrics, "pdf");
+//   }   // waits for the remaining reports and prints the throughput
+public class BatchReportRenderer implements AutoCloseable {
+    private final ReportingAndDashboards reporting;
+    private final ExecutorService executor;
+    private final Semaphore backlog;
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final long started = System.nanoTime();
+    private boolean closed;
+
+    public BatchReportRenderer(ReportingAndDashboards reporting) {
+        this(reporting, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchReportRenderer(ReportingAndDashboards reporting, int workers) {
+        if (workers < 1) throw new IllegalArgumentException("Need at least one worker: " + workers);
+        this.reporting = reporting;
+        this.backlog = new Semaphore(workers * 4);
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "report-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Path> submit(String reportName, Map<String, Object> metrics, String format)
+            throws InterruptedException {
+        return submit(reportName, metrics, format, Collections.emptyList());
+    }
+
+    // Queue one report; the future completes with the written file, or exceptionally if rendering failed
+    public CompletableFuture<Path> submit(String reportName, Map<String, Object> metrics, String format,
+                                          List<Path> charts) throws InterruptedException {
+        if (closed) throw new IllegalStateException("Batch already closed");
+        backlog.acquire();
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(reporting.writeReport(reportName, metrics, format, charts));
+                    rendered.incrementAndGet();
+                } catch (Throwable e) {
+                    failed.incrementAndGet();
+                    System.err.println("Error generating report " + reportName + ": " + e.getMessage());
+                    result.completeExceptionally(e);
+                } finally {
+                    backlog.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            backlog.release();
+            throw e;
+        }
+        return result;
+    }
+
+    public int getRendered() {
+        return rendered.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    // Waits for every submitted report, then stops the workers. If the waiting thread is interrupted, close
+    // returns at once with the interrupt flag set; queued reports still finish in the background.
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Waiting for " + (rendered.get() + failed.get()) + " reports so far...");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted after " + (rendered.get() + failed.get()) + " reports; the rest finish in the background");
+            return;
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Rendered %d reports (%d failed) in %.1f s, %.0f reports/min%n",
+                rendered.get(), failed.get(), seconds, rendered.get() / Math.max(seconds, 1e-9) * 60);
+    }
+}
@@ -0,0 +1,79 @@
+package functional;
+
+import java.nio.charset.StandardCharsets;
+
+// Fixed-size Bloom filter over 64-bit hashes: "definitely not seen" or "maybe seen" in a few bits per key.
+// Probes are derived from the two halves of one 64-bit hash (Kirsch-Mitzenmacher).
+public class BloomFilter {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+    private long insertions;
+
+    // Sized so that after expectedInsertions keys the false positive rate is about falsePositiveRate
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) throw new IllegalArgumentException("Expected insertions must be positive: " + expectedInsertions);
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (Math.max(m, 64) + 63) >>> 6)];
+        this.bitCount = (long) bits.length << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.capacity = expectedInsertions;
+    }
+
+    public void put(long hash) {
+        long h1 = hash;
+        long h2 = hash >>> 32 | hash << 32;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        insertions++;
+    }
+
+    public boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = hash >>> 32 | hash << 32;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0) return false;
+        }
+        return true;
+    }
+
+    // Past its capacity the false positive rate climbs quickly; callers rebuild a larger filter
+    public boolean hasRoomFor(long moreInsertions) {
+        return insertions + moreInsertions <= capacity;
+    }
+
+    public long estimatedBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    // 64-bit hash of a composite key: FNV-1a over the UTF-8 bytes with a separator between parts,
+    // finished with the MurmurHash3 mixer so that both halves are well distributed
+    public static long hash(String... parts) {
+        long h = FNV_OFFSET;
+        for (String part : parts) {
+            byte[] bytes = (part == null ? "" : part).getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                h ^= b & 0xFF;
+                h *= FNV_PRIME;
+            }
+            h ^= 0x1F;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,199 @@
+package functional;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.util.ExportUtils;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.general.DefaultPieDataset;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.Map;
+
+// Draws bar and pie charts offscreen to PNG or SVG, so dashboards work on headless servers and charts can
+// be embedded in PDF reports. Each image is stored under a hash of the chart data plus its spec (type,
+// title, axes, size, format): asking again for an unchanged chart returns the cached file without
+// rendering anything.
+//
+// SVG goes through JFreeChart's ExportUtils, which needs JFreeSVG on the runtime classpath.
+public class ChartRenderer {
+    public static final String DEFAULT_DIRECTORY = "src/main/resources/charts";
+    private static ChartRenderer shared;
+
+    private final Path directory;
+
+    public ChartRenderer(Path directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized ChartRenderer shared() {
+        if (shared == null) shared = new ChartRenderer(Paths.get(DEFAULT_DIRECTORY));
+        return shared;
+    }
+
+    // True when charts cannot be shown in a window and have to go to files instead
+    public static boolean isHeadless() {
+        return GraphicsEnvironment.isHeadless();
+    }
+
+    public enum Type { BAR, PIE }
+
+    public enum Format {
+        PNG("png"), SVG("svg");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    // What to draw and how big; immutable, so one spec can be shared by every dashboard that uses it
+    public static final class ChartSpec {
+        private final Type type;
+        private final String title;
+        private final String categoryAxis;
+        private final String valueAxis;
+        private final int width;
+        private final int height;
+        private final Format format;
+
+        private ChartSpec(Type type, String title, String categoryAxis, String valueAxis, int width, int height, Format format) {
+            if (width < 1 || height < 1) throw new IllegalArgumentException("Chart size must be positive: " + width + "x" + height);
+            this.type = type;
+            this.title = title;
+            this.categoryAxis = categoryAxis;
+            this.valueAxis = valueAxis;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        public static ChartSpec bar(String title, String categoryAxis, String valueAxis) {
+            return new ChartSpec(Type.BAR, title, categoryAxis, valueAxis, 800, 600, Format.PNG);
+        }
+
+        public static ChartSpec pie(String title) {
+            return new ChartSpec(Type.PIE, title, "", "", 800, 600, Format.PNG);
+        }
+
+        public ChartSpec size(int width, int height) {
+            return new ChartSpec(type, title, categoryAxis, valueAxis, width, height, format);
+        }
+
+        public ChartSpec format(Format format) {
+            return new ChartSpec(type, title, categoryAxis, valueAxis, width, height, format);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        @Override
+        public String toString() {
+            return type + "|" + title + "|" + categoryAxis + "|" + valueAxis + "|" + width + "x" + height + "|" + format;
+        }
+    }
+
+    public JFreeChart createChart(Map<String, ? extends Number> data, ChartSpec spec) {
+        if (spec.type == Type.PIE) {
+            DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
+            data.forEach(dataset::setValue);
+            return ChartFactory.createPieChart(spec.title, dataset, true, true, false);
+        }
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        data.forEach((key, value) -> dataset.addValue(value, spec.categoryAxis, key));
+        return ChartFactory.createBarChart(spec.title, spec.categoryAxis, spec.valueAxis, dataset,
+                PlotOrientation.VERTICAL, true, true, false);
+    }
+
+    // Render the chart to an image file, or return the cached file if this data and spec were drawn before
+    public Path render(Map<String, ? extends Number> data, ChartSpec spec) throws IOException {
+        Path file = imageFile(data, spec);
+        if (Files.isRegularFile(file)) {
+            PipelineMetrics.CHART_CACHE_HITS.increment();
+            return file;
+        }
+        Metrics.Span span = PipelineMetrics.CHART_RENDER.start();
+        try {
+            Files.createDirectories(directory);
+            // Per-thread name: two threads drawing the same chart never write the same temporary file
+            Path temp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+            try {
+                JFreeChart chart = createChart(data, spec);
+                if (spec.format == Format.SVG) {
+                    if (!ExportUtils.isJFreeSVGAvailable()) throw new IOException("SVG charts need JFreeSVG on the classpath");
+                    ExportUtils.writeAsSVG(chart, spec.width, spec.height, temp.toFile());
+                } else {
+                    ChartUtils.saveChartAsPNG(temp.toFile(), chart, spec.width, spec.height);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return file;
+        } finally {
+            span.close();
+        }
+    }
+
+    // Show the chart in a Swing window when there is a display, otherwise render it to a file.
+    // Returns the file, or null when the chart went to a window.
+    public Path show(Map<String, ? extends Number> data, ChartSpec spec) throws IOException {
+        if (isHeadless()) {
+            Path file = render(data, spec);
+            System.out.println("Chart rendered: " + file);
+            return file;
+        }
+        JFreeChart chart = createChart(data, spec);
+        JFrame frame = new JFrame(spec.title);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.add(new ChartPanel(chart));
+        frame.pack();
+        frame.setVisible(true);
+        return null;
+    }
+
+    // <title>-<sha256 of data and spec>.<png|svg>; insertion order of the data is part of the hash,
+    // as it is the order the chart draws the categories in
+    private Path imageFile(Map<String, ? extends Number> data, ChartSpec spec) {
+        MessageDigest digest = Sha256.newDigest();
+        digest.update(spec.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder entry = new StringBuilder();
+        for (Map.Entry<String, ? extends Number> e : data.entrySet()) {
+            entry.setLength(0);
+            entry.append('\n').append(e.getKey()).append('\t').append(e.getValue());
+            digest.update(entry.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        String name = spec.title == null ? "chart" : spec.title.replaceAll("[^A-Za-z0-9]+", "_");
+        if (name.length() > 40) name = name.substring(0, 40);
+        return directory.resolve(name + "-" + Sha256.toHex(digest.digest()).substring(0, 16) + "." + spec.format.extension);
+    }
+}
@@ -0,0 +1,231 @@
+package functional;
+
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.BatchPredictor;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// In-process churn scoring: holds one trained model and returns the churn probability for a single
+// customer's feature vector. High-QPS callers can submit() instead and have requests grouped into
+// micro-batches by a background worker. Latency histograms are kept for both paths.
+public class ChurnScoringService implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MICROS = 500;
+
+    private final Classifier model;
+    private final Instances header;
+    private final int churnValueIndex;
+    private final LatencyHistogram scoreLatency = new LatencyHistogram();
+    private final LatencyHistogram batchedLatency = new LatencyHistogram();
+
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final BlockingQueue<PendingScore> queue = new LinkedBlockingQueue<>();
+    private volatile Thread batchWorker;
+    private volatile boolean closed;
+
+    private static class PendingScore {
+        final double[] features;
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        PendingScore(double[] features) {
+            this.features = features;
+        }
+    }
+
+    public ChurnScoringService(ModelRegistry.Entry entry, String churnLabel) {
+        this(entry.getModel(), entry.getHeader(), churnLabel, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MICROS);
+    }
+
+    public ChurnScoringService(Classifier model, Instances header, String churnLabel,
+                               int maxBatchSize, long maxBatchDelayMicros) {
+        if (model == null) throw new IllegalArgumentException("A trained model is required");
+        if (header == null) throw new IllegalArgumentException("The model was cached without its dataset structure; retrain it");
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+
+        this.model = model;
+        this.header = new Instances(header, 0);
+        if (this.header.classIndex() == -1) this.header.setClassIndex(this.header.numAttributes() - 1);
+
+        Attribute classAttribute = this.header.classAttribute();
+        if (!classAttribute.isNominal()) throw new IllegalArgumentException("Churn model must predict a nominal class");
+        this.churnValueIndex = churnLabel == null ? classAttribute.numValues() - 1 : classAttribute.indexOfValue(churnLabel);
+        if (churnValueIndex < 0) {
+            throw new IllegalArgumentException("Unknown churn label '" + churnLabel + "'; class values are " + classAttribute);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxBatchDelayMicros);
+    }
+
+    // Names of the features score() expects, in order (every attribute except the class)
+    public List<String> featureNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < header.numAttributes(); i++) {
+            if (i != header.classIndex()) names.add(header.attribute(i).name());
+        }
+        return names;
+    }
+
+    // Churn probability for one feature vector; nominal features are given as their value index
+    public double score(double[] features) throws Exception {
+        long start = System.nanoTime();
+        double probability = model.distributionForInstance(toInstance(features))[churnValueIndex];
+        scoreLatency.record(System.nanoTime() - start);
+        return probability;
+    }
+
+    // Churn probability for a raw row keyed by column name; unknown or missing values are treated as missing
+    public double score(Map<String, String> row) throws Exception {
+        double[] features = new double[header.numAttributes() - 1];
+        int f = 0;
+        for (int i = 0; i < header.numAttributes(); i++) {
+            if (i == header.classIndex()) continue;
+            Attribute attribute = header.attribute(i);
+            String value = row.get(attribute.name());
+            if (value == null || value.isEmpty()) {
+                features[f++] = Utils.missingValue();
+            } else if (attribute.isNumeric()) {
+                features[f++] = parseOrMissing(value);
+            } else {
+                int index = attribute.indexOfValue(value);
+                features[f++] = index < 0 ? Utils.missingValue() : index;
+            }
+        }
+        return score(features);
+    }
+
+    // Queue one request for micro-batched scoring
+    public CompletableFuture<Double> submit(double[] features) {
+        if (closed) throw new IllegalStateException("Scoring service is closed");
+        ensureBatchWorker();
+        PendingScore pending = new PendingScore(features);
+        queue.add(pending);
+        // close() sets closed before draining the queue, so a request it may have missed is still queued here
+        if (closed && queue.remove(pending)) {
+            pending.result.completeExceptionally(new IllegalStateException("Scoring service closed"));
+        }
+        return pending.result;
+    }
+
+    // p50/p99 latencies in microseconds, for monitoring
+    public Map<String, Object> latencyMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("ScoreCount", scoreLatency.getCount());
+        metrics.put("ScoreP50Micros", scoreLatency.percentileMicros(0.50));
+        metrics.put("ScoreP99Micros", scoreLatency.percentileMicros(0.99));
+        metrics.put("BatchedCount", batchedLatency.getCount());
+        metrics.put("BatchedP50Micros", batchedLatency.percentileMicros(0.50));
+        metrics.put("BatchedP99Micros", batchedLatency.percentileMicros(0.99));
+        return metrics;
+    }
+
+    public LatencyHistogram getScoreLatency() {
+        return scoreLatency;
+    }
+
+    public LatencyHistogram getBatchedLatency() {
+        return batchedLatency;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread worker = batchWorker;
+        if (worker != null) worker.interrupt();
+        PendingScore pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new IllegalStateException("Scoring service closed"));
+        }
+    }
+
+    private Instance toInstance(double[] features) {
+        if (features.length != header.numAttributes() - 1) {
+            throw new IllegalArgumentException("Expected " + (header.numAttributes() - 1) + " features but got " + features.length);
+        }
+        double[] values = new double[header.numAttributes()];
+        int f = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i == header.classIndex() ? Utils.missingValue() : features[f++];
+        }
+        Instance instance = new DenseInstance(1.0, values);
+        instance.setDataset(header);
+        return instance;
+    }
+
+    private synchronized void ensureBatchWorker() {
+        if (batchWorker != null) return;
+        Thread worker = new Thread(this::runBatches, "churn-scoring-batcher");
+        worker.setDaemon(true);
+        worker.start();
+        batchWorker = worker;
+    }
+
+    // Take the first waiting request, then gather more until the batch is full or the delay expires
+    private void runBatches() {
+        List<PendingScore> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 && queue.isEmpty()) break;
+                    PendingScore next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                scoreBatch(batch);
+            } catch (InterruptedException e) {
+                for (PendingScore pending : batch) {
+                    pending.result.completeExceptionally(new IllegalStateException("Scoring service closed"));
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void scoreBatch(List<PendingScore> batch) {
+        try {
+            Instances instances = new Instances(header, batch.size());
+            for (PendingScore pending : batch) {
+                instances.add(toInstance(pending.features));
+            }
+            double[][] distributions;
+            if (model instanceof BatchPredictor && ((BatchPredictor) model).implementsMoreEfficientBatchPrediction()) {
+                distributions = ((BatchPredictor) model).distributionsForInstances(instances);
+            } else {
+                distributions = new double[batch.size()][];
+                for (int i = 0; i < batch.size(); i++) {
+                    distributions[i] = model.distributionForInstance(instances.instance(i));
+                }
+            }
+            long now = System.nanoTime();
+            for (int i = 0; i < batch.size(); i++) {
+                PendingScore pending = batch.get(i);
+                batchedLatency.record(now - pending.enqueuedAt);
+                pending.result.complete(distributions[i][churnValueIndex]);
+            }
+        } catch (Exception e) {
+            for (PendingScore pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static double parseOrMissing(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Utils.missingValue();
+        }
+    }
+}
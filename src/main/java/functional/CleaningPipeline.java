@@ -0,0 +1,686 @@
+package functional;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Data cleaning as a sequence of composable stages over a columnar dataset. Working columns are primitive
+// arrays (numeric values as doubles with NaN for missing, categoricals as dictionary codes with -1) and
+// dropped rows are marked in a bitmap, so nothing is materialized until the end.
+//
+// Each stage is fitted on column statistics as left by the stages before it, then applied in one parallel
+// pass over row chunks. That pass also gathers the statistics the next stage is fitted on, so a pipeline
+// of n stages reads every column n + 1 times. Chunks are multiples of 64 rows, so every chunk owns its
+// words of the dropped-row bitmap and rows dropped in a chunk are excluded from its statistics at once.
+public class CleaningPipeline {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final Set<String> excludedColumns = new HashSet<>();
+
+    // Stages run in the order they are added
+    public CleaningPipeline add(Stage stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    // Columns passed through untouched (dropped rows still apply); customer ID columns are always excluded
+    public CleaningPipeline exclude(String... columns) {
+        excludedColumns.addAll(Arrays.asList(columns));
+        return this;
+    }
+
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    // The behaviour of the original cleanData: drop every row with a missing value
+    public static CleaningPipeline dropIncomplete() {
+        return new CleaningPipeline().add(new DropIncomplete());
+    }
+
+    public Result run(ColumnarDataset data) {
+        Metrics.Span span = PipelineMetrics.CLEAN.start();
+        try {
+            Result result = clean(data);
+            PipelineMetrics.ROWS_CLEANED.add(data.getRowCount());
+            PipelineMetrics.ROWS_REMOVED.add(data.getRowCount() - result.getDataset().getRowCount());
+            return result;
+        } finally {
+            span.close();
+        }
+    }
+
+    private Result clean(ColumnarDataset data) {
+        long start = System.nanoTime();
+        Frame frame = new Frame(data, excludedColumns);
+        List<StageReport> reports = new ArrayList<>();
+
+        Statistics statistics = stages.isEmpty() ? null : pass(frame, null, null, stages.get(0).requiredStatistics()).statistics;
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            long stageStart = System.nanoTime();
+            int rowsIn = frame.keptRows();
+            long changed = stage.prepare(frame, statistics);
+            if (changed > 0) statistics = pass(frame, null, null, stage.requiredStatistics()).statistics;
+
+            NumericOp[] numericOps = new NumericOp[frame.columnCount()];
+            CategoricalOp[] categoricalOps = new CategoricalOp[frame.columnCount()];
+            for (int c = 0; c < frame.columnCount(); c++) {
+                if (!stage.appliesTo(frame.names[c])) continue;
+                if (frame.numeric[c] != null) {
+                    numericOps[c] = stage.fitNumeric(frame.names[c], statistics == null ? null : statistics.numeric[c]);
+                } else {
+                    categoricalOps[c] = stage.fitCategorical(frame.names[c], statistics == null ? null : statistics.counts[c],
+                            frame.dictionaries.get(c));
+                }
+            }
+            PassResult result = pass(frame, numericOps, categoricalOps,
+                    i < stages.size() - 1 ? stages.get(i + 1).requiredStatistics() : Level.NONE);
+            statistics = result.statistics;
+            reports.add(new StageReport(stage, rowsIn, frame.keptRows(), changed + result.changedCells,
+                    (System.nanoTime() - stageStart) / 1_000_000));
+        }
+
+        BitSet kept = frame.keptRowSet();
+        ColumnarDataset cleaned = frame.materialize().retainRows(kept);
+        return new Result(cleaned, kept, data.getRowCount(), reports, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // One parallel pass: apply the ops (if any) chunk by chunk, then gather statistics over the surviving rows
+    private static PassResult pass(Frame frame, NumericOp[] numericOps, CategoricalOp[] categoricalOps, Level level) {
+        int chunks = Math.max(1, (frame.rows + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    int from = chunk * CHUNK_SIZE;
+                    int to = Math.min(frame.rows, from + CHUNK_SIZE);
+                    long changed = 0;
+                    if (numericOps != null) changed = frame.apply(numericOps, categoricalOps, from, to);
+                    return new PassResult(level == Level.NONE ? null : frame.statistics(from, to, level), changed);
+                })
+                .reduce(PassResult::merge)
+                .get();
+    }
+
+    // A cleaning step. Subclasses override the hooks they need: fitNumeric / fitCategorical return the
+    // per-value operation for one column (null leaves the column alone); prepare rewrites whole columns.
+    public abstract static class Stage {
+        private final String name;
+        private Set<String> columns;
+
+        protected Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Restrict the stage to these columns; by default it applies to every column it can handle
+        public Stage on(String... columnNames) {
+            this.columns = new HashSet<>(Arrays.asList(columnNames));
+            return this;
+        }
+
+        boolean appliesTo(String column) {
+            return columns == null || columns.contains(column);
+        }
+
+        // What the stage is fitted on; the pass before it gathers no more than this
+        Level requiredStatistics() {
+            return Level.MOMENTS;
+        }
+
+        NumericOp fitNumeric(String column, StreamingStatistics statistics) {
+            return null;
+        }
+
+        CategoricalOp fitCategorical(String column, long[] counts, List<String> dictionary) {
+            return null;
+        }
+
+        // Returns the number of cells changed
+        long prepare(Frame frame, Statistics statistics) {
+            return 0;
+        }
+    }
+
+    // Fill missing numeric values with the column mean or median (or zero) and missing categories with the mode
+    public static class ImputeMissing extends Stage {
+        public enum Strategy { MEAN, MEDIAN, ZERO }
+
+        private final Strategy strategy;
+
+        public ImputeMissing(Strategy strategy) {
+            super("Impute missing (" + strategy.name().toLowerCase() + ")");
+            this.strategy = strategy;
+        }
+
+        @Override
+        Level requiredStatistics() {
+            return strategy == Strategy.MEDIAN ? Level.QUANTILES : Level.MOMENTS;
+        }
+
+        @Override
+        NumericOp fitNumeric(String column, StreamingStatistics statistics) {
+            if (statistics.getCount() == 0 && strategy != Strategy.ZERO) return null;
+            double fill = strategy == Strategy.MEAN ? statistics.getMean()
+                    : strategy == Strategy.MEDIAN ? statistics.getMedian() : 0;
+            return value -> Double.isNaN(value) ? fill : value;
+        }
+
+        @Override
+        CategoricalOp fitCategorical(String column, long[] counts, List<String> dictionary) {
+            int mode = -1;
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0 && (mode < 0 || counts[code] > counts[mode])) mode = code;
+            }
+            if (mode < 0) return null;
+            int fill = mode;
+            return code -> code < 0 ? fill : code;
+        }
+    }
+
+    // Convert text columns that are almost entirely numbers ("$1,200", " 3.5 ") to numeric columns. Values
+    // that still do not parse become missing, for a later imputation or drop stage. Every cell of a
+    // converted column counts as changed.
+    public static class CoerceTypes extends Stage {
+        public static final double DEFAULT_MIN_NUMERIC_SHARE = 0.95;
+
+        private final double minNumericShare;
+
+        public CoerceTypes() {
+            this(DEFAULT_MIN_NUMERIC_SHARE);
+        }
+
+        public CoerceTypes(double minNumericShare) {
+            super("Coerce types");
+            if (minNumericShare <= 0 || minNumericShare > 1) {
+                throw new IllegalArgumentException("Numeric share must be in (0, 1]: " + minNumericShare);
+            }
+            this.minNumericShare = minNumericShare;
+        }
+
+        // Every distinct value is parsed once; rows only go through their code
+        @Override
+        long prepare(Frame frame, Statistics statistics) {
+            long[] changed = new long[frame.columnCount()];
+            IntStream.range(0, frame.columnCount()).parallel().forEach(c -> {
+                if (frame.codes[c] == null || !appliesTo(frame.names[c])) return;
+                List<String> dictionary = frame.dictionaries.get(c);
+                double[] parsed = new double[dictionary.size()];
+                long numericRows = 0;
+                long rows = 0;
+                for (int code = 0; code < parsed.length; code++) {
+                    parsed[code] = parseNumber(dictionary.get(code));
+                    rows += statistics.counts[c][code];
+                    if (!Double.isNaN(parsed[code])) numericRows += statistics.counts[c][code];
+                }
+                if (rows == 0 || numericRows < minNumericShare * rows) return;
+                changed[c] = rows;
+                frame.toNumeric(c, parsed);
+            });
+            return Arrays.stream(changed).sum();
+        }
+
+        static double parseNumber(String value) {
+            String s = value.trim();
+            if (!s.isEmpty() && "$\u20ac\u00a3".indexOf(s.charAt(0)) >= 0) s = s.substring(1).trim();
+            if (s.indexOf(',') >= 0) s = s.replace(",", "");
+            if (s.isEmpty() || !ColumnarDataset.looksDecimal(s)) return Double.NaN;
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    // Drop rows with a missing value in any column
+    public static class DropIncomplete extends Stage {
+        public DropIncomplete() {
+            super("Drop incomplete rows");
+        }
+
+        @Override
+        Level requiredStatistics() {
+            return Level.NONE;
+        }
+
+        // Excluded columns are not seen by the ops, but a missing value there still makes the row incomplete
+        @Override
+        long prepare(Frame frame, Statistics statistics) {
+            frame.dropIncompleteExcluded();
+            return 0;
+        }
+
+        @Override
+        NumericOp fitNumeric(String column, StreamingStatistics statistics) {
+            return new NumericOp() {
+                public double transform(double value) {
+                    return value;
+                }
+
+                public boolean rejects(double value) {
+                    return Double.isNaN(value);
+                }
+            };
+        }
+
+        @Override
+        CategoricalOp fitCategorical(String column, long[] counts, List<String> dictionary) {
+            return new CategoricalOp() {
+                public int transform(int code) {
+                    return code;
+                }
+
+                public boolean rejects(int code) {
+                    return code < 0;
+                }
+            };
+        }
+    }
+
+    // Drop rows with a value outside threshold standard deviations of the mean (Z_SCORE, typically 3) or
+    // outside threshold interquartile ranges beyond the quartiles (IQR, typically 1.5). Missing values stay.
+    public static class RemoveOutliers extends Stage {
+        public enum Method { Z_SCORE, IQR }
+
+        private final Method method;
+        private final double threshold;
+
+        public RemoveOutliers(Method method, double threshold) {
+            super("Remove outliers (" + (method == Method.IQR ? "IQR" : "z-score") + " " + threshold + ")");
+            if (threshold <= 0) throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+            this.method = method;
+            this.threshold = threshold;
+        }
+
+        @Override
+        Level requiredStatistics() {
+            return method == Method.IQR ? Level.QUANTILES : Level.MOMENTS;
+        }
+
+        @Override
+        NumericOp fitNumeric(String column, StreamingStatistics statistics) {
+            if (statistics.getCount() < 2) return null;
+            double low;
+            double high;
+            if (method == Method.Z_SCORE) {
+                double sd = statistics.getStandardDeviation();
+                if (sd == 0) return null;
+                low = statistics.getMean() - threshold * sd;
+                high = statistics.getMean() + threshold * sd;
+            } else {
+                double q1 = statistics.getQuantile(0.25);
+                double q3 = statistics.getQuantile(0.75);
+                low = q1 - threshold * (q3 - q1);
+                high = q3 + threshold * (q3 - q1);
+            }
+            return new NumericOp() {
+                public double transform(double value) {
+                    return value;
+                }
+
+                public boolean rejects(double value) {
+                    return value < low || value > high;
+                }
+            };
+        }
+    }
+
+    // Rescale numeric columns to zero mean and unit variance (Z_SCORE) or to [0, 1] (MIN_MAX)
+    public static class Normalize extends Stage {
+        public enum Method { Z_SCORE, MIN_MAX }
+
+        private final Method method;
+
+        public Normalize(Method method) {
+            super("Normalize (" + (method == Method.MIN_MAX ? "min-max" : "z-score") + ")");
+            this.method = method;
+        }
+
+        @Override
+        NumericOp fitNumeric(String column, StreamingStatistics statistics) {
+            if (statistics.getCount() == 0) return null;
+            double offset = method == Method.Z_SCORE ? statistics.getMean() : statistics.getMin();
+            double scale = method == Method.Z_SCORE ? statistics.getStandardDeviation() : statistics.getRange();
+            if (scale == 0) return value -> Double.isNaN(value) ? value : 0;
+            return value -> (value - offset) / scale;
+        }
+    }
+
+    // Statistics a stage needs: none, counts and moments, or also quantiles (a sketch update per value)
+    enum Level { NONE, MOMENTS, QUANTILES }
+
+    interface NumericOp {
+        double transform(double value);
+
+        default boolean rejects(double value) {
+            return false;
+        }
+    }
+
+    interface CategoricalOp {
+        int transform(int code);
+
+        default boolean rejects(int code) {
+            return false;
+        }
+    }
+
+    // Outcome of one stage, for the admin report
+    public static class StageReport {
+        private final String stage;
+        private final Class<? extends Stage> stageType;
+        private final int rowsIn;
+        private final int rowsOut;
+        private final long cellsChanged;
+        private final long millis;
+
+        StageReport(Stage stage, int rowsIn, int rowsOut, long cellsChanged, long millis) {
+            this.stage = stage.getName();
+            this.stageType = stage.getClass();
+            this.rowsIn = rowsIn;
+            this.rowsOut = rowsOut;
+            this.cellsChanged = cellsChanged;
+            this.millis = millis;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public int getRowsIn() {
+            return rowsIn;
+        }
+
+        public int getRowsOut() {
+            return rowsOut;
+        }
+
+        public int getRowsRemoved() {
+            return rowsIn - rowsOut;
+        }
+
+        public long getCellsChanged() {
+            return cellsChanged;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return stage + ": " + rowsIn + " -> " + rowsOut + " rows, " + cellsChanged + " cells changed, " + millis + " ms";
+        }
+    }
+
+    public static class Result {
+        private final ColumnarDataset dataset;
+        private final BitSet keptRows;
+        private final int inputRows;
+        private final List<StageReport> stages;
+        private final long millis;
+
+        Result(ColumnarDataset dataset, BitSet keptRows, int inputRows, List<StageReport> stages, long millis) {
+            this.dataset = dataset;
+            this.keptRows = keptRows;
+            this.inputRows = inputRows;
+            this.stages = Collections.unmodifiableList(stages);
+            this.millis = millis;
+        }
+
+        public ColumnarDataset getDataset() {
+            return dataset;
+        }
+
+        // Rows of the input that survived, by input row number
+        public BitSet getKeptRows() {
+            return (BitSet) keptRows.clone();
+        }
+
+        public List<StageReport> getStages() {
+            return stages;
+        }
+
+        // Rows removed by stages of the given type, e.g. RemoveOutliers.class
+        public int getRowsRemovedBy(Class<? extends Stage> stageType) {
+            int removed = 0;
+            for (StageReport report : stages) {
+                if (stageType.isAssignableFrom(report.stageType)) removed += report.getRowsRemoved();
+            }
+            return removed;
+        }
+
+        // Flat metrics for ReportingAndDashboards: totals plus one entry per stage
+        public Map<String, Object> toMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("TotalRows", inputRows);
+            metrics.put("CleanedRows", dataset.getRowCount());
+            metrics.put("RowsRemoved", inputRows - dataset.getRowCount());
+            metrics.put("OutliersRemoved", getRowsRemovedBy(RemoveOutliers.class));
+            metrics.put("CleaningTimeMs", millis);
+            for (int i = 0; i < stages.size(); i++) {
+                metrics.put("Stage " + (i + 1) + ": " + stages.get(i).getStage(), stages.get(i).getRowsIn() + " -> "
+                        + stages.get(i).getRowsOut() + " rows, " + stages.get(i).getCellsChanged() + " cells changed, "
+                        + stages.get(i).getMillis() + " ms");
+            }
+            return metrics;
+        }
+    }
+
+    // Per-column statistics over the rows not yet dropped
+    static final class Statistics {
+        final StreamingStatistics[] numeric;
+        final long[][] counts;
+
+        Statistics(StreamingStatistics[] numeric, long[][] counts) {
+            this.numeric = numeric;
+            this.counts = counts;
+        }
+
+        Statistics merge(Statistics other) {
+            for (int c = 0; c < numeric.length; c++) {
+                if (numeric[c] != null) numeric[c].merge(other.numeric[c]);
+                if (counts[c] != null) {
+                    for (int code = 0; code < counts[c].length; code++) counts[c][code] += other.counts[c][code];
+                }
+            }
+            return this;
+        }
+    }
+
+    private static final class PassResult {
+        final Statistics statistics;
+        final long changedCells;
+
+        PassResult(Statistics statistics, long changedCells) {
+            this.statistics = statistics;
+            this.changedCells = changedCells;
+        }
+
+        PassResult merge(PassResult other) {
+            return new PassResult(statistics == null ? null : statistics.merge(other.statistics), changedCells + other.changedCells);
+        }
+    }
+
+    // Working copy of the columns being cleaned plus the dropped-row bitmap
+    static final class Frame {
+        private final ColumnarDataset source;
+        final int rows;
+        final String[] names;
+        final int[] sourceColumns;
+        final double[][] numeric;
+        final int[][] codes;
+        // One slot per column, null for numeric columns; parallel passes only ever set their own slot
+        final List<List<String>> dictionaries;
+        private final boolean[] modified;
+        private final long[] dropped;
+        private final int[] excluded;
+
+        Frame(ColumnarDataset source, Set<String> excludedColumns) {
+            this.source = source;
+            this.rows = source.getRowCount();
+            List<Integer> included = new ArrayList<>();
+            List<Integer> skipped = new ArrayList<>();
+            for (int c = 0; c < source.getColumnCount(); c++) {
+                String name = source.getColumnNames().get(c);
+                if (excludedColumns.contains(name) || TableSchema.isCustomerIdColumn(name)) skipped.add(c);
+                else included.add(c);
+            }
+            this.sourceColumns = included.stream().mapToInt(Integer::intValue).toArray();
+            this.excluded = skipped.stream().mapToInt(Integer::intValue).toArray();
+            this.names = new String[sourceColumns.length];
+            this.numeric = new double[sourceColumns.length][];
+            this.codes = new int[sourceColumns.length][];
+            this.dictionaries = new ArrayList<>(Collections.nCopies(sourceColumns.length, null));
+            this.modified = new boolean[sourceColumns.length];
+            this.dropped = new long[(rows + 63) >>> 6];
+            IntStream.range(0, sourceColumns.length).parallel().forEach(c -> {
+                int column = sourceColumns[c];
+                names[c] = source.getColumnNames().get(column);
+                if (source.isNumeric(column)) {
+                    double[] values = source.doubleValues(column).clone();
+                    if (source.nullCount(column) > 0) {
+                        for (int r = 0; r < rows; r++) {
+                            if (source.isNull(r, column)) values[r] = Double.NaN;
+                        }
+                    }
+                    numeric[c] = values;
+                } else {
+                    codes[c] = source.categoryCodes(column).clone();
+                    dictionaries.set(c, source.dictionary(column));
+                }
+            });
+        }
+
+        int columnCount() {
+            return names.length;
+        }
+
+        boolean isDropped(int row) {
+            return (dropped[row >>> 6] & 1L << row) != 0;
+        }
+
+        private void drop(int row) {
+            dropped[row >>> 6] |= 1L << row;
+        }
+
+        int keptRows() {
+            int droppedRows = 0;
+            for (long word : dropped) droppedRows += Long.bitCount(word);
+            return rows - droppedRows;
+        }
+
+        BitSet keptRowSet() {
+            BitSet kept = new BitSet(rows);
+            kept.set(0, rows);
+            kept.andNot(BitSet.valueOf(dropped));
+            return kept;
+        }
+
+        // Missing values in excluded columns are not seen by the ops, so they are dropped directly
+        void dropIncompleteExcluded() {
+            for (int column : excluded) {
+                if (source.nullCount(column) == 0) continue;
+                for (int r = 0; r < rows; r++) {
+                    if (source.isNull(r, column)) drop(r);
+                }
+            }
+        }
+
+        void toNumeric(int c, double[] valuesByCode) {
+            int[] columnCodes = codes[c];
+            double[] values = new double[rows];
+            for (int r = 0; r < rows; r++) {
+                values[r] = columnCodes[r] < 0 ? Double.NaN : valuesByCode[columnCodes[r]];
+            }
+            numeric[c] = values;
+            codes[c] = null;
+            dictionaries.set(c, null);
+            modified[c] = true;
+        }
+
+        // Apply the ops to rows [from, to); returns the number of cells whose value changed
+        long apply(NumericOp[] numericOps, CategoricalOp[] categoricalOps, int from, int to) {
+            long changed = 0;
+            for (int c = 0; c < names.length; c++) {
+                long changedBefore = changed;
+                NumericOp op = numericOps[c];
+                if (op != null) {
+                    double[] values = numeric[c];
+                    for (int r = from; r < to; r++) {
+                        if (isDropped(r)) continue;
+                        double value = values[r];
+                        if (op.rejects(value)) {
+                            drop(r);
+                            continue;
+                        }
+                        double transformed = op.transform(value);
+                        if (Double.doubleToLongBits(transformed) != Double.doubleToLongBits(value)) {
+                            values[r] = transformed;
+                            changed++;
+                        }
+                    }
+                }
+                CategoricalOp categoricalOp = categoricalOps[c];
+                if (categoricalOp != null) {
+                    int[] columnCodes = codes[c];
+                    for (int r = from; r < to; r++) {
+                        if (isDropped(r)) continue;
+                        int code = columnCodes[r];
+                        if (categoricalOp.rejects(code)) {
+                            drop(r);
+                            continue;
+                        }
+                        int transformed = categoricalOp.transform(code);
+                        if (transformed != code) {
+                            columnCodes[r] = transformed;
+                            changed++;
+                        }
+                    }
+                }
+                if (changed > changedBefore) modified[c] = true;
+            }
+            return changed;
+        }
+
+        Statistics statistics(int from, int to, Level level) {
+            StreamingStatistics[] numericStatistics = new StreamingStatistics[names.length];
+            long[][] counts = new long[names.length][];
+            for (int c = 0; c < names.length; c++) {
+                if (numeric[c] != null) {
+                    StreamingStatistics statistics = level == Level.QUANTILES
+                            ? new StreamingStatistics() : StreamingStatistics.withoutQuantiles();
+                    double[] values = numeric[c];
+                    for (int r = from; r < to; r++) {
+                        if (!isDropped(r)) statistics.add(values[r]);
+                    }
+                    numericStatistics[c] = statistics;
+                } else {
+                    long[] columnCounts = new long[dictionaries.get(c).size()];
+                    int[] columnCodes = codes[c];
+                    for (int r = from; r < to; r++) {
+                        if (!isDropped(r) && columnCodes[r] >= 0) columnCounts[columnCodes[r]]++;
+                    }
+                    counts[c] = columnCounts;
+                }
+            }
+            return new Statistics(numericStatistics, counts);
+        }
+
+        // The source dataset with the changed columns swapped in, before dropped rows are removed. Unchanged
+        // columns keep their storage, so integers beyond double precision survive a pass through the pipeline.
+        ColumnarDataset materialize() {
+            ColumnarDataset result = source;
+            for (int c = 0; c < names.length; c++) {
+                if (!modified[c]) continue;
+                result = numeric[c] != null
+                        ? result.withNumericColumn(sourceColumns[c], numeric[c])
+                        : result.withCategoricalColumn(sourceColumns[c], codes[c], dictionaries.get(c));
+            }
+            return result;
+        }
+    }
+}
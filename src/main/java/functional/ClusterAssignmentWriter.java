@@ -0,0 +1,199 @@
+package functional;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Bulk write-back of customer cluster assignments, to a SQLite table or a delimited file
+public class ClusterAssignmentWriter {
+    public static final String CLUSTER_COLUMN = "Cluster";
+    public static final String ROW_HASH_COLUMN = "RowHash";
+
+    private ClusterAssignmentWriter() {
+    }
+
+    // Replace the table's contents with one (customer ID, cluster) row per customer. The rows are bulk loaded
+    // into a staging table that replaces the old one in a single transaction, so a failed write leaves the
+    // previous assignments in place.
+    public static long toTable(Connection connection, String table, String idColumn,
+                               List<String> ids, int[] clusters) throws SQLException {
+        String staging = table + "_staging";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + SQLiteBulkWriter.quoteIdentifier(staging));
+        }
+        createTable(connection, staging, idColumn);
+        long rows;
+        try {
+            rows = write(connection, staging, idColumn, ids, clusters);
+        } catch (SQLException | RuntimeException e) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + SQLiteBulkWriter.quoteIdentifier(staging));
+            } catch (SQLException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + SQLiteBulkWriter.quoteIdentifier(table));
+            statement.execute("ALTER TABLE " + SQLiteBulkWriter.quoteIdentifier(staging)
+                    + " RENAME TO " + SQLiteBulkWriter.quoteIdentifier(table));
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return rows;
+    }
+
+    // Insert or overwrite the assignments of the given customers only, leaving all others untouched
+    public static long upsert(Connection connection, String table, String idColumn,
+                              List<String> ids, int[] clusters) throws SQLException {
+        createTable(connection, table, idColumn);
+        return write(connection, table, idColumn, ids, clusters);
+    }
+
+    public static void toFile(Path file, String idColumn, List<String> ids, int[] clusters) throws IOException {
+        toFile(file, idColumn, ids, clusters, null);
+    }
+
+    // CSV with a header line; IDs are quoted like any other CSV field (see CsvTokenizer.quote), so they
+    // read back unchanged. Customers without an ID cannot be looked up again and are left out. With
+    // rowHashes (see ColumnarDataset.rowHash) a third column records each customer's feature values, so a
+    // later run can tell changed customers from unchanged ones.
+    public static void toFile(Path file, String idColumn, List<String> ids, int[] clusters, long[] rowHashes) throws IOException {
+        checkSizes(ids, clusters);
+        if (rowHashes != null && rowHashes.length != clusters.length) {
+            throw new IllegalArgumentException(rowHashes.length + " row hashes but " + clusters.length + " assignments");
+        }
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        int written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(CsvTokenizer.quote(idColumn, ',') + "," + CLUSTER_COLUMN + (rowHashes == null ? "" : "," + ROW_HASH_COLUMN));
+            writer.newLine();
+            for (int i = 0; i < clusters.length; i++) {
+                String id = ids.get(i);
+                if (id == null || id.isEmpty()) continue;
+                writer.write(CsvTokenizer.quote(id, ','));
+                writer.write(',');
+                writer.write(Integer.toString(clusters[i]));
+                if (rowHashes != null) {
+                    writer.write(',');
+                    writer.write(Long.toHexString(rowHashes[i]));
+                }
+                writer.newLine();
+                written++;
+            }
+        }
+        System.out.println("Wrote " + written + " cluster assignments to " + file
+                + (written < clusters.length ? " (" + (clusters.length - written) + " customers without an ID skipped)" : ""));
+    }
+
+    // One customer's line of an assignments file; the row hash is null for files written without row hashes
+    public static final class Assignment {
+        private final int cluster;
+        private final Long rowHash;
+
+        private Assignment(int cluster, Long rowHash) {
+            this.cluster = cluster;
+            this.rowHash = rowHash;
+        }
+
+        public int getCluster() {
+            return cluster;
+        }
+
+        public Long getRowHash() {
+            return rowHash;
+        }
+    }
+
+    // Customer IDs of an assignments file written by toFile
+    public static Set<String> readIds(Path file) throws IOException {
+        return readAssignments(file).keySet();
+    }
+
+    // Customer ID to assignment of a file written by toFile
+    public static Map<String, Assignment> readAssignments(Path file) throws IOException {
+        Map<String, Assignment> assignments = new HashMap<>();
+        CsvTokenizer tokenizer = new CsvTokenizer(',');
+        String[] fields = new String[3];
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                int count = tokenizer.tokenize(bytes, 0, bytes.length, fields);
+                if (count < 2 || fields[0].isEmpty()) continue;
+                assignments.put(fields[0], new Assignment(Integer.parseInt(fields[1]),
+                        count == 3 && !fields[2].isEmpty() ? Long.parseUnsignedLong(fields[2], 16) : null));
+            }
+        }
+        return assignments;
+    }
+
+    // Stored cluster of each given customer, -1 for customers (or a table) without one
+    public static int[] readClusters(Connection connection, String table, String idColumn, List<String> ids) throws SQLException {
+        int[] clusters = new int[ids.size()];
+        Arrays.fill(clusters, -1);
+        try (PreparedStatement exists = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            exists.setString(1, table);
+            try (ResultSet rs = exists.executeQuery()) {
+                if (!rs.next()) return clusters;
+            }
+        }
+        try (PreparedStatement select = connection.prepareStatement("SELECT " + SQLiteBulkWriter.quoteIdentifier(CLUSTER_COLUMN)
+                + " FROM " + SQLiteBulkWriter.quoteIdentifier(table) + " WHERE " + SQLiteBulkWriter.quoteIdentifier(idColumn) + " = ?")) {
+            for (int i = 0; i < clusters.length; i++) {
+                if (ids.get(i) == null) continue;
+                select.setString(1, ids.get(i));
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) clusters[i] = rs.getInt(1);
+                }
+            }
+        }
+        return clusters;
+    }
+
+    private static void createTable(Connection connection, String table, String idColumn) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + SQLiteBulkWriter.quoteIdentifier(table) + " ("
+                    + SQLiteBulkWriter.quoteIdentifier(idColumn) + " TEXT PRIMARY KEY, "
+                    + SQLiteBulkWriter.quoteIdentifier(CLUSTER_COLUMN) + " INTEGER)");
+        }
+    }
+
+    private static long write(Connection connection, String table, String idColumn,
+                              List<String> ids, int[] clusters) throws SQLException {
+        checkSizes(ids, clusters);
+        try (SQLiteBulkWriter writer = new SQLiteBulkWriter(connection, table, Arrays.asList(idColumn, CLUSTER_COLUMN),
+                SQLiteBulkWriter.DEFAULT_BATCH_SIZE, SQLiteBulkWriter.DEFAULT_SYNCHRONOUS, true)) {
+            for (int i = 0; i < clusters.length; i++) {
+                writer.addValues(ids.get(i), clusters[i]);
+            }
+            writer.flush();
+            System.out.println("Stored " + writer.getRowsWritten() + " cluster assignments in table '" + table + "'.");
+            return writer.getRowsWritten();
+        }
+    }
+
+    private static void checkSizes(List<String> ids, int[] clusters) {
+        if (ids.size() != clusters.length) {
+            throw new IllegalArgumentException(ids.size() + " customer IDs but " + clusters.length + " assignments");
+        }
+    }
+}
@@ -0,0 +1,773 @@
+package functional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Column-oriented in-memory dataset: one shared schema, typed primitive columns and a null bitmap per column
+public class ColumnarDataset {
+
+    public enum ColumnType { LONG, DOUBLE, CATEGORICAL }
+
+    private static final double MAX_EXACT_LONG = 1L << 53;
+
+    private final List<String> columnNames;
+    private final Map<String, Integer> columnIndex;
+    private final Column[] columns;
+    private final int rowCount;
+
+    private ColumnarDataset(List<String> columnNames, Column[] columns, int rowCount) {
+        this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+        this.columnIndex = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            columnIndex.put(columnNames.get(i), i);
+        }
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    public static Builder builder(List<String> columnNames) {
+        return new Builder(columnNames);
+    }
+
+    public static ColumnarDataset empty(List<String> columnNames) {
+        return builder(columnNames).build();
+    }
+
+    // Schema access
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public int getColumnIndex(String columnName) {
+        Integer index = columnIndex.get(columnName);
+        if (index == null) throw new IllegalArgumentException("Unknown column: " + columnName);
+        return index;
+    }
+
+    public boolean hasColumn(String columnName) {
+        return columnIndex.containsKey(columnName);
+    }
+
+    public ColumnType getColumnType(int column) {
+        return columns[column].type();
+    }
+
+    public boolean isNumeric(int column) {
+        return columns[column].type() != ColumnType.CATEGORICAL;
+    }
+
+    // Cell access
+    public boolean isNull(int row, int column) {
+        return columns[column].isNull(row);
+    }
+
+    public boolean hasNulls(int row) {
+        for (Column column : columns) {
+            if (column.isNull(row)) return true;
+        }
+        return false;
+    }
+
+    // 64-bit fingerprint of a row's values in the given columns, e.g. to tell whether a customer changed
+    // between two loads. Numbers hash by value, so 2 and 2.0 match; missing cells hash to a fixed marker.
+    public long rowHash(int row, int[] columnIndexes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int column : columnIndexes) {
+            long value;
+            if (isNull(row, column)) value = 0x9e3779b97f4a7c15L;
+            else if (isNumeric(column)) value = Double.doubleToLongBits(getDouble(row, column) + 0.0);
+            else value = columns[column].render(row).hashCode();
+            hash = (hash ^ value) * 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    public double getDouble(int row, int column) {
+        Column c = columns[column];
+        switch (c.type()) {
+            case LONG: return ((LongColumn) c).values[row];
+            case DOUBLE: return ((DoubleColumn) c).values[row];
+            default: throw new IllegalStateException("Column '" + columnNames.get(column) + "' is not numeric");
+        }
+    }
+
+    public long getLong(int row, int column) {
+        Column c = columns[column];
+        switch (c.type()) {
+            case LONG: return ((LongColumn) c).values[row];
+            case DOUBLE: return (long) ((DoubleColumn) c).values[row];
+            default: throw new IllegalStateException("Column '" + columnNames.get(column) + "' is not numeric");
+        }
+    }
+
+    public int getCategoryCode(int row, int column) {
+        return categorical(column).codes[row];
+    }
+
+    // Value rendered as text, or null for a missing cell
+    public String getString(int row, int column) {
+        Column c = columns[column];
+        if (c.isNull(row)) return null;
+        return c.render(row);
+    }
+
+    public Map<String, String> getRow(int row) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            String value = getString(row, i);
+            values.put(columnNames.get(i), value == null ? "" : value);
+        }
+        return values;
+    }
+
+    // Bulk column access for scans; the returned arrays must not be modified
+    public double[] doubleValues(int column) {
+        Column c = columns[column];
+        switch (c.type()) {
+            case DOUBLE: return ((DoubleColumn) c).values;
+            case LONG: {
+                long[] source = ((LongColumn) c).values;
+                double[] values = new double[rowCount];
+                for (int i = 0; i < rowCount; i++) values[i] = source[i];
+                return values;
+            }
+            default: throw new IllegalStateException("Column '" + columnNames.get(column) + "' is not numeric");
+        }
+    }
+
+    // Non-null values of a numeric column; a packed copy is made only when the column has missing values
+    public double[] nonNullDoubleValues(int column) {
+        double[] values = doubleValues(column);
+        Column c = columns[column];
+        if (c.nullCount == 0) return values;
+        double[] packed = new double[rowCount - c.nullCount];
+        int n = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (!c.isNull(i)) packed[n++] = values[i];
+        }
+        return packed;
+    }
+
+    public long[] longValues(int column) {
+        Column c = columns[column];
+        if (c.type() != ColumnType.LONG) throw new IllegalStateException("Column '" + columnNames.get(column) + "' is not integral");
+        return ((LongColumn) c).values;
+    }
+
+    public int[] categoryCodes(int column) {
+        return categorical(column).codes;
+    }
+
+    public List<String> dictionary(int column) {
+        return Collections.unmodifiableList(categorical(column).dictionary);
+    }
+
+    public int nullCount(int column) {
+        return columns[column].nullCount;
+    }
+
+    // New dataset holding only the rows whose bit is set in keep
+    public ColumnarDataset retainRows(BitSet keep) {
+        int kept = keep.cardinality();
+        if (kept == rowCount && keep.nextClearBit(0) >= rowCount) return this;
+        Column[] retained = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            retained[i] = columns[i].select(keep, kept);
+        }
+        return new ColumnarDataset(columnNames, retained, kept);
+    }
+
+    // New dataset with one column replaced by numeric values (NaN for missing). The column is stored as LONG
+    // when every value is integral and exactly representable, otherwise as DOUBLE.
+    public ColumnarDataset withNumericColumn(int column, double[] values) {
+        if (values.length != rowCount) throw new IllegalArgumentException("Expected " + rowCount + " values but got " + values.length);
+        boolean integral = true;
+        for (double v : values) {
+            if (!Double.isNaN(v) && (v != Math.rint(v) || Math.abs(v) > MAX_EXACT_LONG)) {
+                integral = false;
+                break;
+            }
+        }
+        Column replaced;
+        if (integral) {
+            LongColumn longs = new LongColumn(rowCount);
+            for (double v : values) {
+                if (Double.isNaN(v)) longs.appendNull();
+                else longs.values[longs.size++] = (long) v;
+            }
+            replaced = longs;
+        } else {
+            DoubleColumn doubles = new DoubleColumn(rowCount);
+            for (double v : values) {
+                if (Double.isNaN(v)) doubles.appendNull();
+                else doubles.values[doubles.size++] = v;
+            }
+            replaced = doubles;
+        }
+        replaced.trim();
+        return withColumn(column, replaced);
+    }
+
+    // New dataset with one column replaced by dictionary codes (-1 for missing)
+    public ColumnarDataset withCategoricalColumn(int column, int[] codes, List<String> dictionary) {
+        if (codes.length != rowCount) throw new IllegalArgumentException("Expected " + rowCount + " codes but got " + codes.length);
+        CategoricalColumn replaced = new CategoricalColumn(rowCount);
+        for (String value : dictionary) replaced.encode(value);
+        for (int code : codes) {
+            if (code < 0) {
+                replaced.appendNull();
+            } else {
+                if (code >= dictionary.size()) throw new IllegalArgumentException("Code " + code + " is not in the dictionary");
+                replaced.codes[replaced.size++] = code;
+            }
+        }
+        replaced.trim();
+        return withColumn(column, replaced);
+    }
+
+    // Rough heap footprint of the column data, for capacity planning
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Column column : columns) {
+            bytes += column.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    // Append datasets with the same columns; column types widen LONG -> DOUBLE -> CATEGORICAL as needed.
+    // Numbers widened to CATEGORICAL keep the text they were parsed from ("19.90", not "19.9"), except in
+    // columns read back from a snapshot, which only stores the parsed values.
+    public static ColumnarDataset concat(List<ColumnarDataset> parts) {
+        if (parts.isEmpty()) throw new IllegalArgumentException("Nothing to concatenate");
+        List<String> names = parts.get(0).columnNames;
+        int total = 0;
+        for (ColumnarDataset part : parts) {
+            if (!part.columnNames.equals(names)) {
+                throw new IllegalArgumentException("Cannot concatenate datasets with different columns: " + names + " vs " + part.columnNames);
+            }
+            total += part.rowCount;
+        }
+        if (parts.size() == 1) return parts.get(0);
+
+        Column[] merged = new Column[names.size()];
+        final int totalRows = total;
+        IntStream.range(0, names.size()).parallel().forEach(c -> {
+            ColumnType target = null;
+            for (ColumnarDataset part : parts) {
+                Column column = part.columns[c];
+                if (column.nullCount == part.rowCount) continue;
+                target = target == null ? column.type() : widen(target, column.type());
+            }
+            Column out = newColumn(target == null ? ColumnType.CATEGORICAL : target, totalRows);
+            for (ColumnarDataset part : parts) {
+                out.appendAll(part.columns[c], part.rowCount);
+            }
+            out.trim();
+            merged[c] = out;
+        });
+        return new ColumnarDataset(names, merged, total);
+    }
+
+    // Raw null bitmap of a column (bit r set when row r is missing), for serialization; must not be modified
+    long[] nullBits(int column) {
+        return columns[column].nullBits;
+    }
+
+    // Assemble a dataset from whole column arrays, as read back from a snapshot. values[c] is a long[],
+    // double[] or int[] of codes by type; nullBits[c] may be null for a column without missing values.
+    static ColumnarDataset fromArrays(List<String> columnNames, int rowCount, ColumnType[] types, Object[] values,
+                                      long[][] nullBits, List<List<String>> dictionaries) {
+        Column[] built = new Column[types.length];
+        for (int c = 0; c < types.length; c++) {
+            Column column;
+            switch (types[c]) {
+                case LONG: {
+                    LongColumn longs = new LongColumn(0);
+                    longs.values = (long[]) values[c];
+                    column = longs;
+                    break;
+                }
+                case DOUBLE: {
+                    DoubleColumn doubles = new DoubleColumn(0);
+                    doubles.values = (double[]) values[c];
+                    column = doubles;
+                    break;
+                }
+                default: {
+                    CategoricalColumn categorical = new CategoricalColumn(0);
+                    categorical.codes = (int[]) values[c];
+                    categorical.dictionary = new ArrayList<>(dictionaries.get(c));
+                    categorical.lookup = null;
+                    column = categorical;
+                }
+            }
+            column.size = rowCount;
+            column.nullBits = nullBits[c] != null ? nullBits[c] : new long[Math.max(1, (rowCount + 63) >>> 6)];
+            for (long word : column.nullBits) column.nullCount += Long.bitCount(word);
+            built[c] = column;
+        }
+        return new ColumnarDataset(columnNames, built, rowCount);
+    }
+
+    private ColumnarDataset withColumn(int column, Column replaced) {
+        Column[] updated = columns.clone();
+        updated[column] = replaced;
+        return new ColumnarDataset(columnNames, updated, rowCount);
+    }
+
+    private CategoricalColumn categorical(int column) {
+        Column c = columns[column];
+        if (c.type() != ColumnType.CATEGORICAL) throw new IllegalStateException("Column '" + columnNames.get(column) + "' is not categorical");
+        return (CategoricalColumn) c;
+    }
+
+    private static ColumnType widen(ColumnType a, ColumnType b) {
+        return a.ordinal() >= b.ordinal() ? a : b;
+    }
+
+    private static Column newColumn(ColumnType type, int capacity) {
+        switch (type) {
+            case LONG: return new LongColumn(capacity);
+            case DOUBLE: return new DoubleColumn(capacity);
+            default: return new CategoricalColumn(capacity);
+        }
+    }
+
+    // Cheap check so numeric inference does not rely on exceptions; leading zeros stay textual (IDs, zip codes)
+    static boolean looksIntegral(String value) {
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        int length = value.length() - start;
+        if (length == 0 || length > 18) return false;
+        if (length > 1 && value.charAt(start) == '0') return false;
+        for (int i = start; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch < '0' || ch > '9') return false;
+        }
+        return true;
+    }
+
+    // Like looksIntegral, a leading zero before another digit ("007", "01234") is textual; "0.5" is not
+    static boolean looksDecimal(String value) {
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        if (value.length() > start + 1 && value.charAt(start) == '0'
+                && value.charAt(start + 1) >= '0' && value.charAt(start + 1) <= '9') return false;
+        boolean digit = false;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch >= '0' && ch <= '9') digit = true;
+            else if (ch != '.' && ch != '-' && ch != '+' && ch != 'e' && ch != 'E') return false;
+        }
+        return digit;
+    }
+
+    // Row-at-a-time builder that infers each column's type from the values it sees
+    public static class Builder {
+        private final List<String> columnNames;
+        private final Column[] columns;
+        private int rowCount;
+
+        private Builder(List<String> columnNames) {
+            this.columnNames = new ArrayList<>(columnNames);
+            this.columns = new Column[columnNames.size()];
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        // Empty strings and nulls are stored as missing values
+        public Builder addRow(String[] values) {
+            if (values.length != columns.length) {
+                throw new IllegalArgumentException("Expected " + columns.length + " values but got " + values.length);
+            }
+            for (int i = 0; i < columns.length; i++) {
+                appendValue(i, values[i]);
+            }
+            rowCount++;
+            return this;
+        }
+
+        private void appendValue(int index, String value) {
+            Column column = columns[index];
+            if (value == null || value.isEmpty()) {
+                if (column == null) {
+                    column = columns[index] = new PendingColumn();
+                }
+                column.appendNull();
+                return;
+            }
+            if (column == null || column instanceof PendingColumn) {
+                column = columns[index] = promote(column, inferType(value));
+            }
+            if (!column.tryAppend(value)) {
+                column = columns[index] = promote(column, column.type() == ColumnType.LONG && looksDecimal(value)
+                        ? ColumnType.DOUBLE : ColumnType.CATEGORICAL);
+                if (!column.tryAppend(value)) {
+                    column = columns[index] = promote(column, ColumnType.CATEGORICAL);
+                    column.tryAppend(value);
+                }
+            }
+        }
+
+        private ColumnType inferType(String value) {
+            if (looksIntegral(value)) return ColumnType.LONG;
+            if (looksDecimal(value)) return ColumnType.DOUBLE;
+            return ColumnType.CATEGORICAL;
+        }
+
+        private Column promote(Column existing, ColumnType type) {
+            Column promoted = newColumn(type, Math.max(16, rowCount + 1));
+            if (existing != null) promoted.appendAll(existing, rowCount);
+            return promoted;
+        }
+
+        public ColumnarDataset build() {
+            Column[] built = new Column[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                Column column = columns[i];
+                if (column == null || column instanceof PendingColumn) {
+                    Column allNull = new CategoricalColumn(rowCount);
+                    for (int r = 0; r < rowCount; r++) allNull.appendNull();
+                    column = allNull;
+                }
+                column.trim();
+                built[i] = column;
+            }
+            return new ColumnarDataset(columnNames, built, rowCount);
+        }
+    }
+
+    // Column storage: typed values plus a bitmap with one bit set per missing cell
+    private abstract static class Column {
+        long[] nullBits = new long[1];
+        int size;
+        int nullCount;
+
+        abstract ColumnType type();
+
+        abstract void ensureCapacity(int capacity);
+
+        abstract boolean tryAppend(String value);
+
+        abstract String render(int row);
+
+        // Original text of the values render() does not reproduce, by row; null while there are none
+        Map<Integer, String> verbatim;
+
+        // The value as it was read, which is what a column widened to CATEGORICAL keeps
+        String text(int row) {
+            String original = verbatim == null ? null : verbatim.get(row);
+            return original != null ? original : render(row);
+        }
+
+        void keepText(int row, String text) {
+            if (verbatim == null) verbatim = new HashMap<>();
+            verbatim.put(row, text);
+        }
+
+        // Carry the original text of source's row over to the value just appended
+        void copyText(Column source, int row) {
+            String original = source.verbatim == null ? null : source.verbatim.get(row);
+            if (original != null) keepText(size - 1, original);
+        }
+
+        abstract void copyValue(Column source, int row);
+
+        abstract Column emptyCopy(int capacity);
+
+        abstract long valueBytes();
+
+        abstract void trimValues();
+
+        boolean isNull(int row) {
+            int word = row >>> 6;
+            return word < nullBits.length && (nullBits[word] & (1L << row)) != 0;
+        }
+
+        void appendNull() {
+            ensureCapacity(size + 1);
+            markNull(size);
+            size++;
+        }
+
+        void markNull(int row) {
+            int word = row >>> 6;
+            if (word >= nullBits.length) nullBits = Arrays.copyOf(nullBits, Math.max(word + 1, nullBits.length * 2));
+            nullBits[word] |= 1L << row;
+            nullCount++;
+        }
+
+        void appendAll(Column source, int rows) {
+            ensureCapacity(size + rows);
+            for (int r = 0; r < rows; r++) {
+                if (source.isNull(r)) {
+                    appendNull();
+                } else {
+                    copyValue(source, r);
+                }
+            }
+        }
+
+        Column select(BitSet keep, int kept) {
+            Column out = emptyCopy(kept);
+            for (int r = keep.nextSetBit(0); r >= 0 && r < size; r = keep.nextSetBit(r + 1)) {
+                if (isNull(r)) {
+                    out.appendNull();
+                } else {
+                    out.copyValue(this, r);
+                }
+            }
+            out.trim();
+            return out;
+        }
+
+        void trim() {
+            trimValues();
+            nullBits = Arrays.copyOf(nullBits, Math.max(1, (size + 63) >>> 6));
+        }
+
+        long estimatedBytes() {
+            return valueBytes() + 8L * nullBits.length + (verbatim == null ? 0 : 64L * verbatim.size());
+        }
+    }
+
+    // Placeholder for a column that has only seen missing values so far
+    private static class PendingColumn extends Column {
+        ColumnType type() { return ColumnType.CATEGORICAL; }
+        void ensureCapacity(int capacity) { }
+        boolean tryAppend(String value) { return false; }
+        String render(int row) { return null; }
+        void copyValue(Column source, int row) { throw new UnsupportedOperationException(); }
+        Column emptyCopy(int capacity) { return new PendingColumn(); }
+        long valueBytes() { return 0; }
+        void trimValues() { }
+    }
+
+    private static class LongColumn extends Column {
+        long[] values;
+
+        LongColumn(int capacity) {
+            values = new long[Math.max(1, capacity)];
+        }
+
+        ColumnType type() { return ColumnType.LONG; }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+
+        boolean tryAppend(String value) {
+            if (!looksIntegral(value)) return false;
+            ensureCapacity(size + 1);
+            values[size] = Long.parseLong(value);
+            if (value.charAt(0) == '+' || (values[size] == 0 && value.charAt(0) == '-')) keepText(size, value);
+            size++;
+            return true;
+        }
+
+        String render(int row) { return Long.toString(values[row]); }
+
+        void copyValue(Column source, int row) {
+            ensureCapacity(size + 1);
+            values[size++] = ((LongColumn) source).values[row];
+            copyText(source, row);
+        }
+
+        Column emptyCopy(int capacity) { return new LongColumn(capacity); }
+        long valueBytes() { return 8L * values.length; }
+        void trimValues() { values = Arrays.copyOf(values, size); }
+    }
+
+    // Besides the values, one byte per row records the digits written after the decimal point, plus one
+    // (0 when unknown), so text() can rebuild "19.90" where render() gives "19.9"
+    private static class DoubleColumn extends Column {
+        double[] values;
+        byte[] scales;
+
+        DoubleColumn(int capacity) {
+            values = new double[Math.max(1, capacity)];
+            scales = new byte[values.length];
+        }
+
+        ColumnType type() { return ColumnType.DOUBLE; }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+                scales = Arrays.copyOf(scales, values.length);
+            }
+        }
+
+        boolean tryAppend(String value) {
+            if (!looksDecimal(value)) return false;
+            double parsed;
+            try {
+                parsed = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            ensureCapacity(size + 1);
+            values[size] = parsed;
+            // BigDecimal has no negative zero, so "-0.0" is kept as it is
+            scales[size] = parsed == 0 && value.charAt(0) == '-' ? 0 : scaleOf(value);
+            if (scales[size] == 0 && !Double.toString(parsed).equals(value)) keepText(size, value);
+            size++;
+            return true;
+        }
+
+        // Digits after the decimal point plus one, or 0 unless the text is a plain decimal with at most 15
+        // significant digits: only those are rebuilt exactly from the parsed double
+        static byte scaleOf(String value) {
+            int start = value.charAt(0) == '-' ? 1 : 0;
+            int length = value.length();
+            if (start == length) return 0;
+            if (value.charAt(start) == '0' && start + 1 < length && value.charAt(start + 1) != '.') return 0;
+            int point = -1;
+            int significant = 0;
+            for (int i = start; i < length; i++) {
+                char ch = value.charAt(i);
+                if (ch == '.') {
+                    if (point >= 0 || i == start || i == length - 1) return 0;
+                    point = i;
+                } else if (ch >= '0' && ch <= '9') {
+                    if (significant > 0 || ch != '0') significant++;
+                } else {
+                    return 0;
+                }
+            }
+            int scale = point < 0 ? 0 : length - point - 1;
+            return significant > 15 || scale >= Byte.MAX_VALUE ? 0 : (byte) (scale + 1);
+        }
+
+        String render(int row) { return Double.toString(values[row]); }
+
+        @Override
+        String text(int row) {
+            int scale = row < scales.length ? scales[row] - 1 : -1;
+            if (scale < 0) return super.text(row);
+            return BigDecimal.valueOf(values[row]).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+        }
+
+        void copyValue(Column source, int row) {
+            ensureCapacity(size + 1);
+            if (source instanceof LongColumn) {
+                long value = ((LongColumn) source).values[row];
+                values[size] = value;
+                String original = source.verbatim == null ? null : source.verbatim.get(row);
+                if (original == null && Math.abs(value) <= MAX_EXACT_LONG) {
+                    scales[size++] = 1;
+                } else {
+                    keepText(size++, original != null ? original : Long.toString(value));
+                }
+            } else {
+                DoubleColumn doubles = (DoubleColumn) source;
+                values[size] = doubles.values[row];
+                scales[size++] = row < doubles.scales.length ? doubles.scales[row] : 0;
+                copyText(source, row);
+            }
+        }
+
+        Column emptyCopy(int capacity) { return new DoubleColumn(capacity); }
+        long valueBytes() { return 9L * values.length; }
+
+        void trimValues() {
+            values = Arrays.copyOf(values, size);
+            scales = Arrays.copyOf(scales, size);
+        }
+    }
+
+    // Dictionary-encoded strings: each distinct value is stored once and rows hold an int code
+    private static class CategoricalColumn extends Column {
+        int[] codes;
+        List<String> dictionary = new ArrayList<>();
+        Map<String, Integer> lookup = new HashMap<>(); // null until first needed for columns loaded whole
+
+        CategoricalColumn(int capacity) {
+            codes = new int[Math.max(1, capacity)];
+        }
+
+        ColumnType type() { return ColumnType.CATEGORICAL; }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > codes.length) codes = Arrays.copyOf(codes, Math.max(capacity, codes.length * 2));
+        }
+
+        @Override
+        void appendNull() {
+            ensureCapacity(size + 1);
+            codes[size] = -1;
+            markNull(size);
+            size++;
+        }
+
+        boolean tryAppend(String value) {
+            ensureCapacity(size + 1);
+            codes[size++] = encode(value);
+            return true;
+        }
+
+        // Merging another dictionary column only needs one lookup per distinct value, not per row
+        @Override
+        void appendAll(Column source, int rows) {
+            if (!(source instanceof CategoricalColumn)) {
+                super.appendAll(source, rows);
+                return;
+            }
+            CategoricalColumn other = (CategoricalColumn) source;
+            int[] remap = new int[other.dictionary.size()];
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = encode(other.dictionary.get(i));
+            }
+            ensureCapacity(size + rows);
+            for (int r = 0; r < rows; r++) {
+                if (other.isNull(r)) {
+                    appendNull();
+                } else {
+                    codes[size++] = remap[other.codes[r]];
+                }
+            }
+        }
+
+        int encode(String value) {
+            if (lookup == null) {
+                lookup = new HashMap<>(dictionary.size() * 2);
+                for (int i = 0; i < dictionary.size(); i++) lookup.put(dictionary.get(i), i);
+            }
+            Integer code = lookup.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            return code;
+        }
+
+        String render(int row) { return dictionary.get(codes[row]); }
+
+        void copyValue(Column source, int row) {
+            ensureCapacity(size + 1);
+            codes[size++] = encode(source.text(row));
+        }
+
+        Column emptyCopy(int capacity) { return new CategoricalColumn(capacity); }
+
+        long valueBytes() {
+            long bytes = 4L * codes.length;
+            for (String value : dictionary) bytes += 40 + 2L * value.length();
+            return bytes;
+        }
+
+        void trimValues() { codes = Arrays.copyOf(codes, size); }
+    }
+}
@@ -0,0 +1,284 @@
+package functional;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+// Binary snapshot of a ColumnarDataset. Loading copies typed column blocks straight out of a memory-mapped
+// file, so there is nothing to parse or infer.
+//
+// Layout (little-endian):
+//   header   magic "CBAS", version, flags, row count, column count, source size, source modification time
+//   schema   per column: name (UTF-8, length-prefixed), type, null count, block length
+//   blocks   per column, in schema order: null bitmap (only if the column has nulls), then the values:
+//            long[] or double[] for numeric columns; dictionary (count, length-prefixed UTF-8 strings)
+//            and int[] codes for categorical columns. With FLAG_COMPRESSED each block is deflated.
+public class ColumnarSnapshot {
+    public static final String EXTENSION = ".cbas";
+    private static final int MAGIC = 0x53414243; // "CBAS" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+
+    // Modification time and size of the file the snapshot was taken from, or -1 when unknown
+    public static class Source {
+        private final long size;
+        private final long modified;
+
+        public Source(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        public static Source of(Path file) throws IOException {
+            return new Source(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+
+        public boolean matches(Path file) throws IOException {
+            return Files.isRegularFile(file) && size == Files.size(file) && modified == Files.getLastModifiedTime(file).toMillis();
+        }
+    }
+
+    private ColumnarSnapshot() {
+    }
+
+    // Written to a temporary file and moved into place, so readers never see a partial snapshot
+    public static void write(ColumnarDataset data, Path file, Source source, boolean compress) throws IOException {
+        int columns = data.getColumnCount();
+        byte[][] blocks = new byte[columns][];
+        for (int c = 0; c < columns; c++) {
+            byte[] block = encodeColumn(data, c);
+            blocks[c] = compress ? deflate(block) : block;
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "snapshot", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(compress ? FLAG_COMPRESSED : 0)
+                    .putInt(data.getRowCount()).putInt(columns)
+                    .putLong(source == null ? -1 : source.size).putLong(source == null ? -1 : source.modified);
+            out.write(header.array());
+            for (int c = 0; c < columns; c++) {
+                byte[] name = data.getColumnNames().get(c).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer entry = ByteBuffer.allocate(4 + name.length + 1 + 4 + 8).order(ByteOrder.LITTLE_ENDIAN);
+                entry.putInt(name.length).put(name).put((byte) data.getColumnType(c).ordinal())
+                        .putInt(data.nullCount(c)).putLong(blocks[c].length);
+                out.write(entry.array());
+            }
+            for (byte[] block : blocks) out.write(block);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ColumnarDataset read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            Header header = readHeader(buffer, file);
+
+            int rows = header.rows;
+            ColumnarDataset.ColumnType[] types = new ColumnarDataset.ColumnType[header.columns];
+            Object[] values = new Object[header.columns];
+            long[][] nullBits = new long[header.columns][];
+            List<List<String>> dictionaries = new ArrayList<>();
+            for (int c = 0; c < header.columns; c++) {
+                types[c] = header.types[c];
+                ByteBuffer block = slice(buffer, header.blockLength[c]);
+                if (header.compressed) block = inflate(block);
+                block.order(ByteOrder.LITTLE_ENDIAN);
+
+                if (header.nullCounts[c] > 0) {
+                    nullBits[c] = new long[(rows + 63) >>> 6];
+                    block.asLongBuffer().get(nullBits[c]);
+                    block.position(block.position() + 8 * nullBits[c].length);
+                }
+                List<String> dictionary = null;
+                switch (types[c]) {
+                    case LONG: {
+                        long[] longs = new long[rows];
+                        block.asLongBuffer().get(longs);
+                        values[c] = longs;
+                        break;
+                    }
+                    case DOUBLE: {
+                        double[] doubles = new double[rows];
+                        block.asDoubleBuffer().get(doubles);
+                        values[c] = doubles;
+                        break;
+                    }
+                    default: {
+                        int size = block.getInt();
+                        dictionary = new ArrayList<>(size);
+                        for (int i = 0; i < size; i++) {
+                            byte[] bytes = new byte[block.getInt()];
+                            block.get(bytes);
+                            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+                        }
+                        int[] codes = new int[rows];
+                        block.asIntBuffer().get(codes);
+                        values[c] = codes;
+                    }
+                }
+                dictionaries.add(dictionary);
+            }
+            return ColumnarDataset.fromArrays(Arrays.asList(header.names), rows, types, values, nullBits, dictionaries);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt snapshot " + file + ": " + e, e);
+        }
+    }
+
+    // The source recorded in a snapshot, read from its header only
+    public static Source readSource(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < 36 || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            header.position(20);
+            return new Source(header.getLong(), header.getLong());
+        }
+    }
+
+    private static final class Header {
+        boolean compressed;
+        int rows;
+        int columns;
+        String[] names;
+        ColumnarDataset.ColumnType[] types;
+        int[] nullCounts;
+        long[] blockLength;
+    }
+
+    private static Header readHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.remaining() < 36 || buffer.getInt() != MAGIC) throw new IOException("Not a snapshot file: " + file);
+        int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + " in " + file);
+        Header header = new Header();
+        header.compressed = (buffer.getInt() & FLAG_COMPRESSED) != 0;
+        header.rows = buffer.getInt();
+        header.columns = buffer.getInt();
+        buffer.getLong();
+        buffer.getLong();
+        header.names = new String[header.columns];
+        header.types = new ColumnarDataset.ColumnType[header.columns];
+        header.nullCounts = new int[header.columns];
+        header.blockLength = new long[header.columns];
+        for (int c = 0; c < header.columns; c++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            header.names[c] = new String(name, StandardCharsets.UTF_8);
+            header.types[c] = ColumnarDataset.ColumnType.values()[buffer.get()];
+            header.nullCounts[c] = buffer.getInt();
+            header.blockLength[c] = buffer.getLong();
+        }
+        return header;
+    }
+
+    private static byte[] encodeColumn(ColumnarDataset data, int column) {
+        int rows = data.getRowCount();
+        long[] nulls = data.nullCount(column) > 0 ? Arrays.copyOf(data.nullBits(column), (rows + 63) >>> 6) : null;
+        ByteBuffer block;
+        switch (data.getColumnType(column)) {
+            case LONG: {
+                block = allocate(nulls, 8L * rows);
+                putNulls(block, nulls);
+                block.asLongBuffer().put(data.longValues(column), 0, rows);
+                break;
+            }
+            case DOUBLE: {
+                block = allocate(nulls, 8L * rows);
+                putNulls(block, nulls);
+                block.asDoubleBuffer().put(data.doubleValues(column), 0, rows);
+                break;
+            }
+            default: {
+                List<String> dictionary = data.dictionary(column);
+                byte[][] entries = new byte[dictionary.size()][];
+                long dictionaryBytes = 4;
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+                    dictionaryBytes += 4 + entries[i].length;
+                }
+                block = allocate(nulls, dictionaryBytes + 4L * rows);
+                putNulls(block, nulls);
+                block.putInt(entries.length);
+                for (byte[] entry : entries) block.putInt(entry.length).put(entry);
+                block.asIntBuffer().put(data.categoryCodes(column), 0, rows);
+            }
+        }
+        return block.array();
+    }
+
+    private static ByteBuffer allocate(long[] nulls, long valueBytes) {
+        long total = (nulls == null ? 0 : 8L * nulls.length) + valueBytes;
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Column too large for a snapshot block: " + total + " bytes");
+        return ByteBuffer.allocate((int) total).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putNulls(ByteBuffer block, long[] nulls) {
+        if (nulls == null) return;
+        block.asLongBuffer().put(nulls);
+        block.position(block.position() + 8 * nulls.length);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long length) {
+        ByteBuffer block = buffer.slice();
+        block.limit((int) length);
+        buffer.position(buffer.position() + (int) length);
+        return block;
+    }
+
+    // Compressed blocks carry their uncompressed length up front
+    private static byte[] deflate(byte[] block) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2 + 64);
+        out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(block.length).array());
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflating = new DeflaterOutputStream(out, deflater, 1 << 16)) {
+            deflating.write(block);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer inflate(ByteBuffer block) throws IOException {
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] inflated = new byte[block.getInt()];
+        byte[] compressed = new byte[block.remaining()];
+        block.get(compressed);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int total = 0;
+            while (total < inflated.length && !inflater.finished()) {
+                int n = inflater.inflate(inflated, total, inflated.length - total);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                total += n;
+            }
+            if (total != inflated.length) throw new IOException("Truncated compressed block");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(inflated);
+    }
+}
@@ -0,0 +1,232 @@
+package functional;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Shared SQLite connections. SQLite allows one writer at a time, so there is exactly one write connection,
+// handed out to one caller at a time; in WAL mode any number of readers run alongside it, so reads draw
+// from a bounded set of query-only connections. Serializing writers here rather than in SQLite means
+// concurrent jobs queue on the pool instead of failing or spinning on SQLITE_BUSY.
+//
+// Connections are leased, not closed: always release a Lease (try-with-resources) and never close its
+// connection or its cached statements. Each acquisition gets its own Lease, so releasing one twice is
+// harmless and never hands back a connection someone else has leased since.
+public class ConnectionPool implements AutoCloseable {
+    private static final Map<String, ConnectionPool> SHARED = new ConcurrentHashMap<>();
+
+    private final DatabaseConfig config;
+    private final Semaphore writerPermit = new Semaphore(1, true);
+    private final Semaphore readerPermits;
+    private final BlockingQueue<PooledConnection> idleReaders;
+    private PooledConnection writer;
+    private volatile boolean closed;
+
+    public ConnectionPool(DatabaseConfig config) {
+        this.config = config;
+        this.readerPermits = new Semaphore(config.getReaders(), true);
+        this.idleReaders = new ArrayBlockingQueue<>(config.getReaders());
+    }
+
+    // One pool per URL for the whole process, configured from database.properties when the URL matches it
+    public static ConnectionPool forUrl(String url) {
+        return SHARED.computeIfAbsent(url, u -> {
+            DatabaseConfig defaults = DatabaseConfig.load();
+            return new ConnectionPool(defaults.getUrl().equals(u) ? defaults : new DatabaseConfig(u));
+        });
+    }
+
+    // The pool for the configured database
+    public static ConnectionPool shared() {
+        return forUrl(DatabaseConfig.load().getUrl());
+    }
+
+    public DatabaseConfig getConfig() {
+        return config;
+    }
+
+    public Lease read() throws SQLException {
+        acquire(readerPermits, "read");
+        try {
+            PooledConnection pooled = idleReaders.poll();
+            if (pooled == null || !pooled.isValid()) {
+                if (pooled != null) pooled.discard();
+                pooled = new PooledConnection(open(true), true);
+            }
+            return new Lease(pooled);
+        } catch (SQLException | RuntimeException e) {
+            readerPermits.release();
+            throw e;
+        }
+    }
+
+    // Blocks until the single write connection is free; everything done through it is serialized
+    public Lease write() throws SQLException {
+        acquire(writerPermit, "write");
+        try {
+            if (writer == null || !writer.isValid()) {
+                if (writer != null) writer.discard();
+                writer = new PooledConnection(open(false), false);
+            }
+            return new Lease(writer);
+        } catch (SQLException | RuntimeException e) {
+            writerPermit.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SHARED.remove(config.getUrl(), this);
+        PooledConnection pooled;
+        while ((pooled = idleReaders.poll()) != null) pooled.discard();
+        if (writerPermit.tryAcquire()) {
+            if (writer != null) writer.discard();
+            writer = null;
+        }
+    }
+
+    private void acquire(Semaphore permits, String kind) throws SQLException {
+        if (closed) throw new SQLException("Connection pool for " + config.getUrl() + " is closed");
+        try {
+            if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out waiting for a " + kind + " connection to " + config.getUrl());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a " + kind + " connection", e);
+        }
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+        try (Statement pragma = connection.createStatement()) {
+            pragma.execute("PRAGMA busy_timeout=" + config.getBusyTimeoutMillis());
+            if (readOnly) {
+                pragma.execute("PRAGMA query_only=ON");
+            } else {
+                pragma.execute("PRAGMA journal_mode=WAL");
+                pragma.execute("PRAGMA synchronous=NORMAL");
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private void release(PooledConnection pooled) {
+        if (pooled.reader) {
+            if (closed || !pooled.isValid() || !idleReaders.offer(pooled)) pooled.discard();
+            readerPermits.release();
+        } else {
+            if (closed || !pooled.isValid()) {
+                pooled.discard();
+                writer = null;
+            }
+            writerPermit.release();
+        }
+    }
+
+    // One acquisition of a pooled connection; usable until it is closed
+    public final class Lease implements AutoCloseable {
+        private final PooledConnection pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        public Connection getConnection() {
+            checkLeased();
+            return pooled.connection;
+        }
+
+        // A cached statement for this SQL with its parameters cleared. Do not close it, and finish with its
+        // result set before preparing the same SQL again.
+        public PreparedStatement prepare(String sql) throws SQLException {
+            checkLeased();
+            return pooled.prepare(sql);
+        }
+
+        // Hand the connection back; a transaction left open by the caller is rolled back. Closing again
+        // does nothing.
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) return;
+            Connection connection = pooled.connection;
+            try {
+                if (!connection.isClosed() && !connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                System.err.println("Discarding pooled connection: " + e.getMessage());
+                pooled.discard();
+            }
+            release(pooled);
+        }
+
+        private void checkLeased() {
+            if (released.get()) throw new IllegalStateException("Connection lease already released");
+        }
+    }
+
+    // A pooled connection with its own cache of prepared statements
+    private final class PooledConnection {
+        private final Connection connection;
+        private final boolean reader;
+        private final LinkedHashMap<String, PreparedStatement> statements;
+
+        private PooledConnection(Connection connection, boolean reader) {
+            this.connection = connection;
+            this.reader = reader;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= config.getStatementCacheSize()) return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                if (config.getStatementCacheSize() > 0) statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        private boolean isValid() {
+            try {
+                return !connection.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void discard() {
+            statements.values().forEach(ConnectionPool::closeQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing pooled connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
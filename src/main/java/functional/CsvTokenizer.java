@@ -0,0 +1,103 @@
+package functional;
+
+import java.nio.charset.StandardCharsets;
+
+// Hand-written delimiter/quote aware field splitter over raw UTF-8 bytes; no regex and no per-line String
+public class CsvTokenizer {
+    private static final byte QUOTE = '"';
+
+    private final byte delimiter;
+    private byte[] unescapeBuffer = new byte[256];
+
+    public CsvTokenizer(char delimiter) {
+        if (delimiter > 0x7F || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Unsupported delimiter: '" + delimiter + "'");
+        }
+        this.delimiter = (byte) delimiter;
+    }
+
+    // Translate the delimiter strings used by importData ("," or "\\t") into a single character
+    public static char delimiterChar(String delimiter) {
+        if (delimiter.equals("\\t") || delimiter.equals("\t")) return '\t';
+        if (delimiter.equals("\\|")) return '|';
+        if (delimiter.length() == 1) return delimiter.charAt(0);
+        throw new IllegalArgumentException("Only single-character delimiters are supported: " + delimiter);
+    }
+
+    // Format one field so that tokenize() reads it back unchanged: quoted (with "" for quotes) when it holds
+    // the delimiter, a quote, a line break or surrounding whitespace. Null is written as an empty field,
+    // which ingestion reads as a missing value.
+    public static String quote(String value, char delimiter) {
+        if (value == null || value.isEmpty()) return "";
+        boolean needsQuotes = value.charAt(0) <= ' ' || value.charAt(value.length() - 1) <= ' ' || value.charAt(0) == '"';
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == delimiter || c == '"' || c == '\n' || c == '\r';
+        }
+        return needsQuotes ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    // Split bytes[start, end) (one line, without its terminator) into fields.
+    // Returns the number of fields, or -1 if the line has more fields than out can hold.
+    public int tokenize(byte[] bytes, int start, int end, String[] out) {
+        int count = 0;
+        int pos = start;
+        while (true) {
+            if (count == out.length) return -1;
+            if (pos < end && bytes[pos] == QUOTE) {
+                pos = readQuoted(bytes, pos + 1, end, out, count);
+            } else {
+                int fieldEnd = pos;
+                while (fieldEnd < end && bytes[fieldEnd] != delimiter) fieldEnd++;
+                out[count] = trimmed(bytes, pos, fieldEnd);
+                pos = fieldEnd;
+            }
+            count++;
+            if (pos >= end) return count;
+            pos++; // skip delimiter
+            if (pos == end) {
+                if (count == out.length) return -1;
+                out[count++] = "";
+                return count;
+            }
+        }
+    }
+
+    // Reads a quoted field starting just after the opening quote; "" inside the field is an escaped quote
+    private int readQuoted(byte[] bytes, int pos, int end, String[] out, int index) {
+        int length = 0;
+        while (pos < end) {
+            byte b = bytes[pos];
+            if (b == QUOTE) {
+                if (pos + 1 < end && bytes[pos + 1] == QUOTE) {
+                    append(QUOTE, length++);
+                    pos += 2;
+                    continue;
+                }
+                pos++;
+                break;
+            }
+            append(b, length++);
+            pos++;
+        }
+        out[index] = new String(unescapeBuffer, 0, length, StandardCharsets.UTF_8);
+        // anything between the closing quote and the next delimiter is ignored
+        while (pos < end && bytes[pos] != delimiter) pos++;
+        return pos;
+    }
+
+    private void append(byte b, int index) {
+        if (index == unescapeBuffer.length) {
+            byte[] grown = new byte[unescapeBuffer.length * 2];
+            System.arraycopy(unescapeBuffer, 0, grown, 0, index);
+            unescapeBuffer = grown;
+        }
+        unescapeBuffer[index] = b;
+    }
+
+    private static String trimmed(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= ' ') start++;
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') end--;
+        return start == end ? "" : new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+}
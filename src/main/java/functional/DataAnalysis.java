@@ -1,125 +1,310 @@
 package functional;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartPanel;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.data.general.DefaultPieDataset;
-import weka.associations.Apriori;
-import weka.clusterers.SimpleKMeans;
-import weka.core.Instances;
 import weka.core.converters.ConverterUtils;
 
-import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public class DataAnalysis {
 
+    private FPGrowth basketMiner = new FPGrowth();
+    private ChartRenderer chartRenderer = ChartRenderer.shared();
+
     // Descriptive Statistics
     public void calculateDescriptiveStatistics(List<Double> data) {
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        data.forEach(stats::addValue);
+        StreamingStatistics stats = new StreamingStatistics();
+        data.forEach(stats::add);
+        printStatistics(stats);
+    }
 
+    // Descriptive Statistics over a numeric column of the ingested dataset, read straight from its primitive array
+    public void calculateDescriptiveStatistics(ColumnarDataset data, String column) {
+        printStatistics(summarize(data, column));
+    }
+
+    // Single-pass summary of a numeric column, accumulated per chunk in parallel and merged
+    public StreamingStatistics summarize(ColumnarDataset data, String column) {
+        return StreamingStatistics.of(data.nonNullDoubleValues(data.getColumnIndex(column)));
+    }
+
+    private void printStatistics(StreamingStatistics stats) {
         System.out.println("Mean: " + stats.getMean());
-        System.out.println("Median: " + calculateMedian(data));
+        System.out.println("Median: " + stats.getMedian());
         System.out.println("Standard Deviation: " + stats.getStandardDeviation());
         System.out.println("Variance: " + stats.getVariance());
-        System.out.println("Range: " + (stats.getMax() - stats.getMin()));
-    }
-
-    private double calculateMedian(List<Double> data) {
-        List<Double> sortedData = data.stream().sorted().collect(Collectors.toList());
-        int size = sortedData.size();
-        return size % 2 == 0 ? (sortedData.get(size / 2 - 1) + sortedData.get(size / 2)) / 2 : sortedData.get(size / 2);
+        System.out.println("Range: " + stats.getRange());
+        System.out.println("Quartiles: " + stats.getQuantile(0.25) + " / " + stats.getQuantile(0.75));
     }
 
     // Frequency Distribution for Categorical Data
     public void frequencyDistribution(List<String> categories) {
-        Map<String, Long> frequency = categories.stream()
-                .collect(Collectors.groupingBy(category -> category, Collectors.counting()));
+        Map<String, Long> frequency = new FrequencyCounter().frequencies(categories);
         frequency.forEach((key, value) -> System.out.println(key + ": " + value));
     }
 
-    // Bar Chart Visualization
-    public void createBarChart(Map<String, Integer> data, String title, String categoryAxis, String valueAxis) {
-        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        data.forEach(dataset::addValue);
+    // Frequency Distribution of a categorical column, counted over its dictionary codes
+    public void frequencyDistribution(ColumnarDataset data, String column) {
+        Map<String, Long> frequency = new FrequencyCounter().frequencies(data, column);
+        frequency.forEach((key, value) -> System.out.println(key + ": " + value));
+    }
+
+    // Most frequent categories (or numeric values) of a loaded column, counted exactly
+    public Map<String, Long> topCategories(ColumnarDataset data, String column, int k) {
+        return new FrequencyCounter().topK(data, column, k);
+    }
 
-        JFreeChart barChart = ChartFactory.createBarChart(
-                title, categoryAxis, valueAxis, dataset, PlotOrientation.VERTICAL, true, true, false);
+    // Approximate most frequent values of one column of a file too large to load: the file is streamed
+    // through a bounded number of counters and the counts are upper bounds
+    public Map<String, Long> topCategories(Path file, String delimiter, String column, int k) throws IOException {
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (SpaceSavingSketch.Estimate<String> estimate : new FrequencyCounter().approximateTopK(file,
+                CsvTokenizer.delimiterChar(delimiter), column, k, Math.max(10 * k, 1000))) {
+            top.put(estimate.getItem(), estimate.getCount());
+        }
+        return top;
+    }
 
-        displayChart(barChart, title);
+    // Bar Chart Visualization: a window when there is a display, otherwise an image file
+    public void createBarChart(Map<String, Integer> data, String title, String categoryAxis, String valueAxis) {
+        showChart(data, ChartRenderer.ChartSpec.bar(title, categoryAxis, valueAxis));
     }
 
     // Pie Chart Visualization
     public void createPieChart(Map<String, Integer> data, String title) {
-        DefaultPieDataset dataset = new DefaultPieDataset();
-        data.forEach(dataset::setValue);
+        showChart(data, ChartRenderer.ChartSpec.pie(title));
+    }
 
-        JFreeChart pieChart = ChartFactory.createPieChart(title, dataset, true, true, false);
-        displayChart(pieChart, title);
+    public void setChartRenderer(ChartRenderer chartRenderer) {
+        this.chartRenderer = chartRenderer;
     }
 
-    // Display JFreeChart in Swing window
-    private void displayChart(JFreeChart chart, String title) {
-        JFrame frame = new JFrame(title);
-        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-        frame.add(new ChartPanel(chart));
-        frame.pack();
-        frame.setVisible(true);
+    private void showChart(Map<String, Integer> data, ChartRenderer.ChartSpec spec) {
+        try {
+            chartRenderer.show(data, spec);
+        } catch (IOException e) {
+            System.err.println("Error rendering chart: " + e.getMessage());
+        }
     }
 
-    // Market Basket Analysis using Weka's Apriori Algorithm
-    public void marketBasketAnalysis(String filePath) {
+    // Market Basket Analysis over a market-basket ARFF/CSV file (one basket per row), mined with FP-Growth
+    public List<BasketRule> marketBasketAnalysis(String filePath) {
         try {
             ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
-            Instances data = source.getDataSet();
-
-            Apriori apriori = new Apriori();
-            apriori.buildAssociations(data);
-            System.out.println("Market Basket Analysis Rules: ");
-            System.out.println(apriori);
+            return marketBasketAnalysis(TransactionBaskets.fromInstances(source.getDataSet()));
         } catch (Exception e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
     }
 
-    // Customer Segmentation using K-Means Clustering
-    public void customerSegmentation(String filePath, int numClusters) {
+    // Market Basket Analysis over purchase rows of the ingested dataset, grouped into baskets by transaction or customer
+    public List<BasketRule> marketBasketAnalysis(ColumnarDataset data, String basketColumn, String itemColumn) {
+        return marketBasketAnalysis(TransactionBaskets.fromColumns(data, basketColumn, itemColumn));
+    }
+
+    // Market Basket Analysis over a slice of the SQLite store; only the basket and item columns are read
+    public List<BasketRule> marketBasketAnalysis(AnalyticsStore store, SliceQuery slice, String basketColumn, String itemColumn) {
         try {
-            // Load dataset
-            ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
-            Instances data = source.getDataSet();
+            return marketBasketAnalysis(store.query(slice.project(basketColumn, itemColumn)), basketColumn, itemColumn);
+        } catch (SQLException e) {
+            System.err.println("Error querying basket data: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    public List<BasketRule> marketBasketAnalysis(TransactionBaskets baskets) {
+        Metrics.Span span = PipelineMetrics.BASKET_MINING.start();
+        try {
+            List<BasketRule> rules = basketMiner.mineRules(baskets);
+            System.out.println("Market Basket Analysis Rules: ");
+            rules.forEach(System.out::println);
+            return rules;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Market basket analysis interrupted");
+            return new ArrayList<>();
+        } finally {
+            span.close();
+        }
+    }
 
-            // Ensure that the dataset is numeric and ready for clustering
-            if (data.classIndex() == -1) {
-                data.setClassIndex(data.numAttributes() - 1); // Set last column as class
+    // Thresholds (min support, confidence, lift) and parallelism used by market basket analysis
+    public void setBasketMiner(FPGrowth basketMiner) {
+        this.basketMiner = basketMiner;
+    }
+
+    // Customer Segmentation using K-Means Clustering over a CSV or ARFF file. The first column identifies the
+    // customer and the remaining numeric columns are the features; assignments go to <file>_segments.csv
+    // next to the input. Centroids persist in <file>_segments.model, so later runs only stream new or
+    // changed customers into them.
+    public void customerSegmentation(String filePath, int numClusters) {
+        try {
+            ColumnarDataset data = loadSegmentationInput(filePath);
+            String idColumn = data.getColumnNames().get(0);
+            List<String> features = new ArrayList<>();
+            for (int c = 1; c < data.getColumnCount(); c++) {
+                if (data.isNumeric(c)) features.add(data.getColumnNames().get(c));
             }
+            if (features.isEmpty()) throw new IllegalArgumentException("No numeric feature columns in " + filePath);
+            String base = filePath.contains(".") ? filePath.substring(0, filePath.lastIndexOf('.')) : filePath;
+            IncrementalSegmentation segmentation = new IncrementalSegmentation(
+                    Paths.get(base + "_segments.model"), features, numClusters);
+            customerSegmentation(segmentation, data, idColumn, Paths.get(base + "_segments.csv"));
+        } catch (Exception e) {
+            System.err.println("Error performing customer segmentation: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // Build K-Means clustering model
-            SimpleKMeans kMeans = new SimpleKMeans();
-            kMeans.setNumClusters(numClusters); // Set number of clusters
-            kMeans.buildClusterer(data);
+    // CSV goes through the dataset cache; ARFF (and anything else Weka reads) through a Weka data source
+    private ColumnarDataset loadSegmentationInput(String filePath) throws Exception {
+        String lower = filePath.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".csv") || lower.endsWith(".txt")) {
+            return DatasetCache.shared().load(Paths.get(filePath), ',');
+        }
+        ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
+        return InstancesAdapter.toColumnar(source.getDataSet());
+    }
 
-            // Display cluster assignments
-            System.out.println("Cluster Centers:");
-            for (double[] center : kMeans.getClusterCentroids()) {
-                System.out.println(Arrays.toString(center));
+    // Incremental segmentation against a previous assignments file: customers missing from it, and customers
+    // whose feature values changed since it was written (per its row hashes), are streamed into the saved
+    // centroids and count towards their drift; changed customers move out of their previous cluster. Everything
+    // is reclustered when there is no model, drift is too high, or the file has no row hashes (it was not
+    // written by this method).
+    public KMeansModel customerSegmentation(IncrementalSegmentation segmentation, ColumnarDataset data,
+                                            String idColumn, Path assignmentsFile) throws Exception {
+        Metrics.Span span = PipelineMetrics.SEGMENTATION.start();
+        try {
+            int id = data.getColumnIndex(idColumn);
+            Map<String, ClusterAssignmentWriter.Assignment> previous = Files.isRegularFile(assignmentsFile)
+                    ? ClusterAssignmentWriter.readAssignments(assignmentsFile) : null;
+            boolean hashed = previous != null && previous.values().stream().allMatch(a -> a.getRowHash() != null);
+            if (segmentation.isRetrainNeeded() || !hashed) {
+                System.out.println(!segmentation.hasModel() || previous == null ? "No saved segmentation, clustering all customers"
+                        : !hashed ? "Saved assignments have no row hashes, reclustering all customers"
+                        : "Segment drift above threshold, reclustering all customers");
+                segmentation.retrain(data);
+            } else {
+                int[] features = featureIndexes(data, segmentation.getModel());
+                BitSet fresh = new BitSet(data.getRowCount());
+                List<Integer> previousClusters = new ArrayList<>();
+                int added = 0;
+                int changed = 0;
+                for (int row = 0; row < data.getRowCount(); row++) {
+                    ClusterAssignmentWriter.Assignment assignment = previous.get(data.getString(row, id));
+                    if (assignment == null) {
+                        fresh.set(row);
+                        previousClusters.add(-1);
+                        added++;
+                    } else if (assignment.getRowHash() != data.rowHash(row, features)) {
+                        fresh.set(row);
+                        previousClusters.add(assignment.getCluster());
+                        changed++;
+                    }
+                }
+                if (!fresh.isEmpty()) {
+                    segmentation.update(data.retainRows(fresh), previousClusters.stream().mapToInt(Integer::intValue).toArray());
+                }
+                System.out.println("Streamed " + added + " new and " + changed + " changed customers into the saved segmentation (drift ratio "
+                        + String.format("%.3f", segmentation.getModel().getDriftRatio()) + ")");
             }
 
-            System.out.println("\nCluster Assignments:");
-            for (int i = 0; i < data.numInstances(); i++) {
-                System.out.println("Instance " + i + " -> Cluster " + kMeans.clusterInstance(data.instance(i)));
+            KMeansModel model = segmentation.getModel();
+            int[] clusters = model.assign(data);
+            printSegments(model, clusters);
+            int[] features = featureIndexes(data, model);
+            long[] rowHashes = new long[data.getRowCount()];
+            for (int row = 0; row < rowHashes.length; row++) rowHashes[row] = data.rowHash(row, features);
+            ClusterAssignmentWriter.toFile(assignmentsFile, idColumn, columnView(data, id), clusters, rowHashes);
+            return model;
+        } finally {
+            span.close();
+        }
+    }
+
+    private static int[] featureIndexes(ColumnarDataset data, KMeansModel model) {
+        List<String> names = model.getFeatureNames();
+        int[] indexes = new int[names.size()];
+        for (int i = 0; i < indexes.length; i++) indexes[i] = data.getColumnIndex(names.get(i));
+        return indexes;
+    }
+
+    // Nightly job against the SQLite store: only new or changed customers are assigned and upserted. The full
+    // customer base is loaded and every assignment rewritten only when drift calls for a retrain.
+    public KMeansModel updateSegmentation(IncrementalSegmentation segmentation, ColumnarDataset changedCustomers,
+                                          Supplier<ColumnarDataset> allCustomers, String idColumn,
+                                          Connection connection, String table) throws Exception {
+        Metrics.Span span = PipelineMetrics.SEGMENTATION.start();
+        try {
+            if (segmentation.isRetrainNeeded()) {
+                ColumnarDataset all = allCustomers.get();
+                KMeansModel model = segmentation.retrain(all);
+                int[] clusters = model.assign(all);
+                printSegments(model, clusters);
+                ClusterAssignmentWriter.toTable(connection, table, idColumn, columnView(all, all.getColumnIndex(idColumn)), clusters);
+                return model;
             }
+            List<String> ids = columnView(changedCustomers, changedCustomers.getColumnIndex(idColumn));
+            int[] clusters = segmentation.update(changedCustomers, ClusterAssignmentWriter.readClusters(connection, table, idColumn, ids));
+            ClusterAssignmentWriter.upsert(connection, table, idColumn, ids, clusters);
+            System.out.println("Assigned " + clusters.length + " customers incrementally (drift ratio "
+                    + String.format("%.3f", segmentation.getModel().getDriftRatio()) + ")");
+            return segmentation.getModel();
+        } finally {
+            span.close();
+        }
+    }
 
+    // Segment the customers and write every (customer, cluster) pair to a file in one pass
+    public KMeansModel customerSegmentation(ColumnarDataset data, String idColumn, List<String> features,
+                                            int numClusters, Path assignmentsFile) throws Exception {
+        Metrics.Span span = PipelineMetrics.SEGMENTATION.start();
+        try {
+            KMeansModel model = segmentCustomers(data, features, numClusters);
+            int[] clusters = model.assign(data);
+            printSegments(model, clusters);
+            ClusterAssignmentWriter.toFile(assignmentsFile, idColumn, columnView(data, data.getColumnIndex(idColumn)), clusters);
             System.out.println("\nK-Means clustering completed successfully!");
+            return model;
+        } finally {
+            span.close();
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error performing customer segmentation: " + e.getMessage());
-            e.printStackTrace();
+    // Fit k-means on the feature columns, switching to mini-batch updates once the data is large
+    public KMeansModel segmentCustomers(ColumnarDataset data, List<String> features, int numClusters)
+            throws InterruptedException {
+        return KMeansClustering.forRows(numClusters, data.getRowCount()).fit(data, features);
+    }
+
+    // Cluster centers and sizes only; per-customer assignments are written out in bulk instead
+    private void printSegments(KMeansModel model, int[] clusters) {
+        long[] sizes = new long[model.getK()];
+        for (int cluster : clusters) sizes[cluster]++;
+        System.out.println("Cluster Centers (" + String.join(", ", model.getFeatureNames()) + "):");
+        for (int c = 0; c < model.getK(); c++) {
+            System.out.println("Cluster " + c + " (" + sizes[c] + " customers): " + Arrays.toString(model.centroid(c)));
         }
     }
+
+    // Read-only list view over one column of the dataset
+    private static List<String> columnView(ColumnarDataset data, int column) {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int row) {
+                return data.getString(row, column);
+            }
+
+            @Override
+            public int size() {
+                return data.getRowCount();
+            }
+        };
+    }
 }
\ No newline at end of file
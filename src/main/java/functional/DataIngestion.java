@@ -1,15 +1,57 @@
 package functional;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
 
 public class DataIngestion {
-    private List<Map<String, String>> dataset; // Dynamic dataset storage
-    private static final String DB_URL = "jdbc:sqlite:src/main/resources/datasets/customer_behavior.db";
+    private ColumnarDataset dataset; // Columnar, typed dataset storage
+    private static final int SCHEMA_SAMPLE_ROWS = 1000;
+    private final ConnectionPool connectionPool; // Database from config/database.properties unless given
+    private final IncrementalIngestion incrementalIngestion;
+    private final Map<String, Integer> storedRows = new HashMap<>(); // Leading rows of dataset already in each table
+    private CleaningPipeline cleaningPipeline = CleaningPipeline.dropIncomplete();
+    private DatasetCache datasetCache = DatasetCache.shared(); // Binary snapshots of parsed files
+    private int batchSize = SQLiteBulkWriter.DEFAULT_BATCH_SIZE;
 
     public DataIngestion() {
-        this.dataset = new ArrayList<>();
+        this(ConnectionPool.shared());
+    }
+
+    public DataIngestion(ConnectionPool connectionPool) {
+        this.dataset = ColumnarDataset.empty(Collections.emptyList());
+        this.connectionPool = connectionPool;
+        this.incrementalIngestion = new IncrementalIngestion(connectionPool);
+    }
+
+    public ColumnarDataset getDataset() {
+        return dataset;
+    }
+
+    // Number of rows sent to the database per JDBC batch / transaction
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.batchSize = batchSize;
+        incrementalIngestion.setBatchSize(batchSize);
+    }
+
+    // Where parallel imports keep their columnar snapshots; null parses every time
+    public void setDatasetCache(DatasetCache datasetCache) {
+        this.datasetCache = datasetCache;
+    }
+
+    // Columns identifying a row for incremental imports; by default the whole row is the key
+    public void setNaturalKey(String... columns) {
+        incrementalIngestion.setNaturalKey(Arrays.asList(columns));
+    }
+
+    // Import dataset with the delimiter implied by the extension: comma for CSV, tab for TXT
+    public boolean importData(String filePath) {
+        return importData(filePath, getFileExtension(filePath).equals("txt") ? "\\t" : ",");
     }
 
     // Import dataset (supports both CSV and TXT)
@@ -21,6 +63,7 @@ public class DataIngestion {
             return false;
         }
 
+        Metrics.Span span = PipelineMetrics.IMPORT.start();
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String headerLine = reader.readLine();
             if (headerLine == null) {
@@ -29,78 +72,305 @@ public class DataIngestion {
             }
 
             String[] headers = headerLine.split(delimiter);
+            ColumnarDataset.Builder builder = ColumnarDataset.builder(trimAll(headers));
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] values = line.split(delimiter);
-                if (values.length != headers.length) continue;
+                String[] values = splitRow(line, delimiter, headers.length);
+                if (values != null) builder.addRow(values);
+            }
+            PipelineMetrics.ROWS_PARSED.add(builder.getRowCount());
 
-                Map<String, String> row = new HashMap<>();
-                for (int i = 0; i < headers.length; i++) {
-                    row.put(headers[i].trim(), values[i].trim());
+            dataset = appendToDataset(builder.build());
+            System.out.println("Data imported successfully. Total rows: " + dataset.getRowCount()
+                    + " (~" + (dataset.estimatedBytes() / 1024) + " KB in memory)");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error reading the file: " + e.getMessage());
+            return false;
+        } finally {
+            span.close();
+        }
+    }
+
+    // Parallel import: memory-maps the file and parses line-aligned chunks on all cores, keeping file order.
+    // The parsed columns are snapshotted, so importing or analysing the unchanged file again skips parsing.
+    public boolean importDataParallel(String filePath, String delimiter) {
+        return importDataParallel(filePath, delimiter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public boolean importDataParallel(String filePath, String delimiter, int parallelism) {
+        String fileExtension = getFileExtension(filePath);
+
+        if (!fileExtension.equals("csv") && !fileExtension.equals("txt")) {
+            System.out.println("Unsupported file format. Please provide a CSV or TXT file.");
+            return false;
+        }
+
+        Metrics.Span span = PipelineMetrics.IMPORT.start();
+        try {
+            long startTime = System.nanoTime();
+            char delimiterChar = CsvTokenizer.delimiterChar(delimiter);
+            ColumnarDataset imported = datasetCache != null
+                    ? datasetCache.load(Paths.get(filePath), delimiterChar, parallelism)
+                    : new ParallelCsvParser(delimiterChar, parallelism, ParallelCsvParser.DEFAULT_CHUNK_SIZE).parse(Paths.get(filePath));
+            dataset = appendToDataset(imported);
+
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            System.out.println("Data imported successfully. Total rows: " + dataset.getRowCount()
+                    + " (" + imported.getRowCount() + " loaded in " + elapsedMillis + " ms on " + parallelism + " threads)");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error reading the file: " + e.getMessage());
+            return false;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error importing data: " + e.getMessage());
+            return false;
+        } finally {
+            span.close();
+        }
+    }
+
+    // Streaming import: parse, clean and store rows in bounded batches so memory stays flat for any file size
+    public boolean importDataStreaming(String filePath, String delimiter, String tableName) {
+        return importDataStreaming(filePath, delimiter, tableName, batchSize);
+    }
+
+    public boolean importDataStreaming(String filePath, String delimiter, String tableName, int batchSize) {
+        String fileExtension = getFileExtension(filePath);
+
+        if (!fileExtension.equals("csv") && !fileExtension.equals("txt")) {
+            System.out.println("Unsupported file format. Please provide a CSV or TXT file.");
+            return false;
+        }
+        if (batchSize <= 0) {
+            System.out.println("Batch size must be positive.");
+            return false;
+        }
+
+        resetPeakHeapUsage();
+        long startTime = System.nanoTime();
+        long rowsRead = 0;
+        long rowsStored = 0;
+
+        Metrics.Span span = PipelineMetrics.IMPORT.start();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath));
+             ConnectionPool.Lease lease = connectionPool.write()) {
+            Connection connection = lease.getConnection();
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                System.out.println("The file is empty.");
+                return false;
+            }
+
+            String[] headers = headerLine.split(delimiter);
+            List<String> columns = trimAll(headers);
+
+            // Column types are inferred from the first rows, so those are held back until the table exists
+            List<String[]> sample = new ArrayList<>();
+            String line = null;
+            while (sample.size() < SCHEMA_SAMPLE_ROWS && (line = reader.readLine()) != null) {
+                String[] values = splitRow(line, delimiter, headers.length);
+                if (values == null) continue;
+                rowsRead++;
+                if (!hasMissingValues(values)) sample.add(values);
+            }
+            TableSchema schema = TableSchema.infer(columns, sample);
+            createTable(connection, tableName, schema);
+
+            try (SQLiteBulkWriter writer = new SQLiteBulkWriter(connection, tableName, columns, batchSize)) {
+                for (String[] values : sample) {
+                    writer.addValues((Object[]) values);
                 }
-                dataset.add(row);
+                sample = null;
+                while ((line = reader.readLine()) != null) {
+                    String[] values = splitRow(line, delimiter, headers.length);
+                    if (values == null) continue;
+                    rowsRead++;
+                    if (hasMissingValues(values)) continue;
+                    writer.addValues((Object[]) values);
+                }
+                writer.flush();
+                rowsStored = writer.getRowsWritten();
             }
+            PipelineMetrics.ROWS_PARSED.add(rowsRead);
+            createIndexes(connection, tableName, schema);
+        } catch (IOException e) {
+            System.out.println("Error reading the file: " + e.getMessage());
+            return false;
+        } catch (SQLException e) {
+            System.out.println("Error storing data in the database: " + e.getMessage());
+            return false;
+        } finally {
+            span.close();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        long rowsPerSecond = seconds > 0 ? Math.round(rowsRead / seconds) : rowsRead;
+        System.out.println("Streaming import completed. Rows read: " + rowsRead + ", rows stored: " + rowsStored);
+        System.out.println("Throughput: " + rowsPerSecond + " rows/sec, peak heap usage: "
+                + (peakHeapUsage() / (1024 * 1024)) + " MB");
+        return true;
+    }
 
-            System.out.println("Data imported successfully. Total rows: " + dataset.size());
+    // Incremental import straight into the database: an unchanged file is skipped without being read, an
+    // appended file is read from where the last import stopped, and rows already stored are not written again
+    public boolean importDataIncremental(String filePath, String delimiter, String tableName) {
+        String fileExtension = getFileExtension(filePath);
+
+        if (!fileExtension.equals("csv") && !fileExtension.equals("txt")) {
+            System.out.println("Unsupported file format. Please provide a CSV or TXT file.");
+            return false;
+        }
+
+        Metrics.Span span = PipelineMetrics.IMPORT.start();
+        try {
+            IncrementalIngestion.Result result = incrementalIngestion.ingest(Paths.get(filePath),
+                    CsvTokenizer.delimiterChar(delimiter), tableName);
+            System.out.println("Incremental import completed. " + result);
             return true;
         } catch (IOException e) {
             System.out.println("Error reading the file: " + e.getMessage());
             return false;
+        } catch (SQLException e) {
+            System.out.println("Error storing data in the database: " + e.getMessage());
+            return false;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error importing data: " + e.getMessage());
+            return false;
+        } finally {
+            span.close();
         }
     }
 
-    // Clean data: Remove rows with missing values
-    public void cleanData() {
+    // Clean data with the configured pipeline (by default: remove rows with missing values)
+    public CleaningPipeline.Result cleanData() {
         System.out.println("Cleaning data...");
-        dataset.removeIf(row -> row.values().stream().anyMatch(String::isEmpty));
-        System.out.println("Data cleaning completed. Remaining rows: " + dataset.size());
+        CleaningPipeline.Result result = cleaningPipeline.run(dataset);
+        BitSet kept = result.getKeptRows();
+        storedRows.replaceAll((table, stored) -> kept.get(0, stored).cardinality());
+        dataset = result.getDataset();
+        result.getStages().forEach(stage -> System.out.println("  " + stage));
+        System.out.println("Data cleaning completed. Remaining rows: " + dataset.getRowCount());
+        return result;
+    }
+
+    public void setCleaningPipeline(CleaningPipeline cleaningPipeline) {
+        this.cleaningPipeline = cleaningPipeline;
     }
 
-    // Store data into the database
+    // Store data into the configured database
     public void storeData(String tableName) {
-        if (dataset.isEmpty()) {
+        storeData(connectionPool, tableName);
+    }
+
+    // Store data into another database, through that database's shared pool
+    public void storeData(String dbUrl, String tableName) {
+        storeData(ConnectionPool.forUrl(dbUrl), tableName);
+    }
+
+    // Only rows imported since the last store into the same table are written, so importing a second file
+    // and storing again does not duplicate the first one
+    private void storeData(ConnectionPool pool, String tableName) {
+        if (dataset.getRowCount() == 0) {
             System.out.println("Dataset is empty. Nothing to store.");
             return;
         }
+        String target = pool.getConfig().getUrl() + "#" + tableName;
+        int firstRow = storedRows.getOrDefault(target, 0);
+        if (firstRow == dataset.getRowCount()) {
+            System.out.println("All rows are already stored in the table: " + tableName);
+            return;
+        }
 
-        try (Connection connection = DriverManager.getConnection(DB_URL)) {
-            createTable(connection, tableName);
+        try (ConnectionPool.Lease lease = pool.write()) {
+            Connection connection = lease.getConnection();
+            List<String> columns = dataset.getColumnNames();
+            TableSchema schema = TableSchema.infer(dataset);
+            createTable(connection, tableName, schema);
 
-            for (Map<String, String> row : dataset) {
-                String sql = buildInsertQuery(tableName, row);
-                try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                    pstmt.executeUpdate();
+            long startTime = System.nanoTime();
+            try (SQLiteBulkWriter writer = new SQLiteBulkWriter(connection, tableName, columns, batchSize)) {
+                for (int row = firstRow; row < dataset.getRowCount(); row++) {
+                    writer.addRow(dataset, row);
                 }
             }
-            System.out.println("Data stored successfully in the table: " + tableName);
+            createIndexes(connection, tableName, schema);
+            storedRows.put(target, dataset.getRowCount());
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            System.out.println("Data stored successfully in the table: " + tableName
+                    + " (" + (dataset.getRowCount() - firstRow) + " rows in " + elapsedMillis + " ms)");
         } catch (SQLException e) {
             System.out.println("Error storing data in the database: " + e.getMessage());
         }
     }
 
-    // Helper method to dynamically create a table
-    private void createTable(Connection connection, String tableName) throws SQLException {
-        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + " (");
-        for (String column : dataset.get(0).keySet()) {
-            sql.append(column).append(" TEXT, ");
+    // Helper method to create a table with column types inferred from the data
+    private void createTable(Connection connection, String tableName, TableSchema schema) throws SQLException {
+        schema.createTable(connection, tableName);
+        System.out.println("Table '" + tableName + "' created or already exists.");
+    }
+
+    // Helper to index the customer ID and timestamp columns once the rows are loaded
+    private void createIndexes(Connection connection, String tableName, TableSchema schema) throws SQLException {
+        long startTime = System.nanoTime();
+        schema.createIndexes(connection, tableName);
+        if (schema.getCustomerIdColumn() != null || !schema.getTimestampColumns().isEmpty()) {
+            System.out.println("Indexes on '" + tableName + "' built in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        }
+    }
+
+    // Helper to append a newly imported file to what is already in memory
+    private ColumnarDataset appendToDataset(ColumnarDataset imported) {
+        if (dataset.getRowCount() == 0) {
+            storedRows.clear();
+            return imported;
         }
-        sql.delete(sql.length() - 2, sql.length()).append(");");
+        if (!dataset.getColumnNames().equals(imported.getColumnNames())) {
+            System.out.println("Imported columns differ from the data already in memory; replacing it.");
+            storedRows.clear();
+            return imported;
+        }
+        return ColumnarDataset.concat(Arrays.asList(dataset, imported));
+    }
 
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(sql.toString());
-            System.out.println("Table '" + tableName + "' created or already exists.");
+    // Helper to split one line into trimmed values; returns null for malformed lines
+    private String[] splitRow(String line, String delimiter, int expectedColumns) {
+        String[] values = line.split(delimiter);
+        if (values.length != expectedColumns) return null;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].trim();
         }
+        return values;
     }
 
-    // Helper method to build dynamic insert queries
-    private String buildInsertQuery(String tableName, Map<String, String> row) {
-        String columns = String.join(", ", row.keySet());
-        String values = row.values().stream()
-                .map(value -> "'" + value.replace("'", "''") + "'")
-                .reduce((a, b) -> a + ", " + b)
-                .orElse("");
+    private List<String> trimAll(String[] headers) {
+        List<String> trimmed = new ArrayList<>(headers.length);
+        for (String header : headers) {
+            trimmed.add(header.trim());
+        }
+        return trimmed;
+    }
 
-        return "INSERT OR IGNORE INTO " + tableName + " (" + columns + ") VALUES (" + values + ");";
+    private boolean hasMissingValues(String[] values) {
+        for (String value : values) {
+            if (value.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    // Helpers to measure peak heap usage across all heap memory pools
+    private void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private long peakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
     }
 
     // Helper to get file extension
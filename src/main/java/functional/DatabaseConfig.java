@@ -0,0 +1,131 @@
+package functional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// Database settings from config/database.properties (on the classpath, else under src/main/resources).
+// Only db.url is required; the pool settings fall back to defaults.
+public class DatabaseConfig {
+    public static final String RESOURCE = "config/database.properties";
+    public static final Path SOURCE_FILE = Paths.get("src/main/resources", RESOURCE);
+    public static final String DEFAULT_URL = "jdbc:sqlite:src/main/resources/datasets/customer_behavior.db";
+    public static final int DEFAULT_READERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    public static final int DEFAULT_BUSY_TIMEOUT_MILLIS = 5000;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int readers;
+    private final int statementCacheSize;
+    private final int busyTimeoutMillis;
+    private final long acquireTimeoutMillis;
+
+    public DatabaseConfig(String url) {
+        this(url, "", "", DEFAULT_READERS, DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_BUSY_TIMEOUT_MILLIS,
+                DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    public DatabaseConfig(String url, String user, String password, int readers, int statementCacheSize,
+                          int busyTimeoutMillis, long acquireTimeoutMillis) {
+        if (url == null || url.trim().isEmpty()) throw new IllegalArgumentException("A database URL is required");
+        if (readers <= 0) throw new IllegalArgumentException("Reader count must be positive: " + readers);
+        if (statementCacheSize < 0) throw new IllegalArgumentException("Statement cache size must not be negative: " + statementCacheSize);
+        this.url = url.trim();
+        this.user = user == null ? "" : user;
+        this.password = password == null ? "" : password;
+        this.readers = readers;
+        this.statementCacheSize = statementCacheSize;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    // The default configuration file, or the built-in SQLite URL if there is none
+    public static DatabaseConfig load() {
+        try (InputStream in = open()) {
+            if (in == null) {
+                System.out.println("No " + RESOURCE + " found; using " + DEFAULT_URL);
+                return new DatabaseConfig(DEFAULT_URL);
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            return fromProperties(properties);
+        } catch (IOException e) {
+            System.err.println("Error reading " + RESOURCE + ": " + e.getMessage() + "; using " + DEFAULT_URL);
+            return new DatabaseConfig(DEFAULT_URL);
+        }
+    }
+
+    public static DatabaseConfig load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            Properties properties = new Properties();
+            properties.load(in);
+            return fromProperties(properties);
+        }
+    }
+
+    public static DatabaseConfig fromProperties(Properties properties) {
+        return new DatabaseConfig(
+                properties.getProperty("db.url", DEFAULT_URL),
+                properties.getProperty("db.user", ""),
+                properties.getProperty("db.password", ""),
+                intProperty(properties, "db.pool.readers", DEFAULT_READERS),
+                intProperty(properties, "db.pool.statementCacheSize", DEFAULT_STATEMENT_CACHE_SIZE),
+                intProperty(properties, "db.busyTimeoutMillis", DEFAULT_BUSY_TIMEOUT_MILLIS),
+                intProperty(properties, "db.pool.acquireTimeoutMillis", (int) DEFAULT_ACQUIRE_TIMEOUT_MILLIS));
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    // Maximum number of concurrent read connections; there is always exactly one writer
+    public int getReaders() {
+        return readers;
+    }
+
+    // Prepared statements kept open per connection
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    // How long SQLite waits on a lock held by another process before failing with SQLITE_BUSY
+    public int getBusyTimeoutMillis() {
+        return busyTimeoutMillis;
+    }
+
+    // How long a caller waits for a free pooled connection
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    private static InputStream open() throws IOException {
+        InputStream in = DatabaseConfig.class.getClassLoader().getResourceAsStream(RESOURCE);
+        if (in != null) return in;
+        return Files.isRegularFile(SOURCE_FILE) ? Files.newInputStream(SOURCE_FILE) : null;
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring non-numeric " + key + "=" + value);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package functional;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// FP-Growth frequent itemset and association rule miner. Baskets are compressed once into a shared
+// FP-tree (items ordered by descending frequency); the conditional sub-problem of each frequent item is
+// independent, so those are mined concurrently on a fork-join pool. Only frequent itemsets are ever
+// materialized, unlike Apriori's candidate generation over a nominal instance per basket.
+public class FPGrowth {
+    public static final double DEFAULT_MIN_SUPPORT = 0.01;
+    public static final double DEFAULT_MIN_CONFIDENCE = 0.5;
+    public static final double DEFAULT_MIN_LIFT = 1.0;
+    public static final int DEFAULT_MAX_ITEMSET_SIZE = 6;
+
+    private final double minSupport;
+    private final double minConfidence;
+    private final double minLift;
+    private final int parallelism;
+    private int maxItemsetSize = DEFAULT_MAX_ITEMSET_SIZE;
+
+    // A frequent itemset as item ids of the mined baskets, sorted ascending, with its basket count
+    public static class Itemset {
+        private final int[] items;
+        private final long count;
+
+        Itemset(int[] items, long count) {
+            this.items = items;
+            this.count = count;
+        }
+
+        public int[] getItems() {
+            return items.clone();
+        }
+
+        public int size() {
+            return items.length;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private static class Node {
+        final int item;
+        final Node parent;
+        long count;
+        Node firstChild;
+        Node nextSibling;
+        Node nextSameItem;
+
+        Node(int item, Node parent) {
+            this.item = item;
+            this.parent = parent;
+        }
+    }
+
+    // Prefix tree over item ranks (0 = most frequent) with a linked list of nodes per rank
+    private static class Tree {
+        final Node root = new Node(-1, null);
+        final Node[] heads;
+        final Node[] rootChildren;
+        final long[] supports;
+
+        Tree(int ranks) {
+            heads = new Node[ranks];
+            rootChildren = new Node[ranks];
+            supports = new long[ranks];
+        }
+
+        // Insert a path of ranks sorted ascending
+        void insert(int[] path, int length, long count) {
+            Node node = root;
+            for (int i = 0; i < length; i++) {
+                int rank = path[i];
+                // The root fans out to every item, so its children are indexed directly
+                Node child;
+                if (node == root) {
+                    child = rootChildren[rank];
+                } else {
+                    child = node.firstChild;
+                    while (child != null && child.item != rank) child = child.nextSibling;
+                }
+                if (child == null) {
+                    child = new Node(rank, node);
+                    if (node == root) {
+                        rootChildren[rank] = child;
+                    } else {
+                        child.nextSibling = node.firstChild;
+                        node.firstChild = child;
+                    }
+                    child.nextSameItem = heads[rank];
+                    heads[rank] = child;
+                }
+                child.count += count;
+                supports[rank] += count;
+                node = child;
+            }
+        }
+    }
+
+    public FPGrowth() {
+        this(DEFAULT_MIN_SUPPORT, DEFAULT_MIN_CONFIDENCE, DEFAULT_MIN_LIFT);
+    }
+
+    public FPGrowth(double minSupport, double minConfidence, double minLift) {
+        this(minSupport, minConfidence, minLift, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FPGrowth(double minSupport, double minConfidence, double minLift, int parallelism) {
+        if (minSupport <= 0 || minSupport > 1) throw new IllegalArgumentException("Minimum support must be in (0, 1]: " + minSupport);
+        if (minConfidence < 0 || minConfidence > 1) throw new IllegalArgumentException("Minimum confidence must be in [0, 1]: " + minConfidence);
+        if (minLift < 0) throw new IllegalArgumentException("Minimum lift must not be negative: " + minLift);
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.minSupport = minSupport;
+        this.minConfidence = minConfidence;
+        this.minLift = minLift;
+        this.parallelism = parallelism;
+    }
+
+    // Largest itemset mined; rule generation enumerates the subsets of each itemset, so keep this small
+    public void setMaxItemsetSize(int maxItemsetSize) {
+        if (maxItemsetSize < 1 || maxItemsetSize > 30) throw new IllegalArgumentException("Maximum itemset size must be in [1, 30]: " + maxItemsetSize);
+        this.maxItemsetSize = maxItemsetSize;
+    }
+
+    // All itemsets contained in at least minSupport of the baskets
+    public List<Itemset> mineItemsets(TransactionBaskets baskets) throws InterruptedException {
+        long minCount = Math.max(1, (long) Math.ceil(minSupport * baskets.size()));
+
+        // Rank frequent items by descending support; infrequent items never enter the tree
+        long[] itemCounts = new long[baskets.itemCount()];
+        for (int b = 0; b < baskets.size(); b++) {
+            for (int item : baskets.basket(b)) itemCounts[item]++;
+        }
+        List<Integer> frequent = new ArrayList<>();
+        for (int item = 0; item < itemCounts.length; item++) {
+            if (itemCounts[item] >= minCount) frequent.add(item);
+        }
+        frequent.sort((a, b) -> itemCounts[a] != itemCounts[b] ? Long.compare(itemCounts[b], itemCounts[a]) : Integer.compare(a, b));
+        int[] rankToItem = new int[frequent.size()];
+        int[] itemToRank = new int[itemCounts.length];
+        Arrays.fill(itemToRank, -1);
+        for (int rank = 0; rank < rankToItem.length; rank++) {
+            rankToItem[rank] = frequent.get(rank);
+            itemToRank[rankToItem[rank]] = rank;
+        }
+
+        Tree tree = new Tree(rankToItem.length);
+        int[] path = new int[rankToItem.length];
+        for (int b = 0; b < baskets.size(); b++) {
+            int length = 0;
+            for (int item : baskets.basket(b)) {
+                if (itemToRank[item] >= 0) path[length++] = itemToRank[item];
+            }
+            Arrays.sort(path, 0, length);
+            tree.insert(path, length, 1);
+        }
+
+        List<Itemset> itemsets = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<List<Itemset>>> parts = new ArrayList<>(rankToItem.length);
+            for (int rank = 0; rank < rankToItem.length; rank++) {
+                int suffix = rank;
+                parts.add(pool.submit(() -> {
+                    List<Itemset> found = new ArrayList<>();
+                    mineSuffix(tree, suffix, new int[0], minCount, found);
+                    return found;
+                }));
+            }
+            // Translate ranks back to item ids
+            for (Future<List<Itemset>> part : parts) {
+                for (Itemset ranked : part.get()) {
+                    int[] items = new int[ranked.items.length];
+                    for (int i = 0; i < items.length; i++) items[i] = rankToItem[ranked.items[i]];
+                    Arrays.sort(items);
+                    itemsets.add(new Itemset(items, ranked.count));
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("FP-Growth mining failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return itemsets;
+    }
+
+    // Mine itemsets, then keep every rule X => Y over each itemset that meets the confidence and lift thresholds.
+    // Rules are sorted by confidence, then lift, then support.
+    public List<BasketRule> mineRules(TransactionBaskets baskets) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<Itemset> itemsets = mineItemsets(baskets);
+
+        Map<List<Integer>, Long> counts = new HashMap<>(itemsets.size() * 2);
+        for (Itemset itemset : itemsets) counts.put(key(itemset.items), itemset.count);
+
+        double total = baskets.size();
+        List<BasketRule> rules = new ArrayList<>();
+        for (Itemset itemset : itemsets) {
+            int size = itemset.items.length;
+            if (size < 2) continue;
+            int full = (1 << size) - 1;
+            for (int mask = 1; mask < full; mask++) {
+                int[] antecedent = subset(itemset.items, mask);
+                int[] consequent = subset(itemset.items, full & ~mask);
+                // Subsets of a frequent itemset are frequent, so both counts are known
+                double confidence = itemset.count / (double) counts.get(key(antecedent));
+                if (confidence < minConfidence) continue;
+                double lift = confidence / (counts.get(key(consequent)) / total);
+                if (lift < minLift) continue;
+                rules.add(new BasketRule(baskets.itemNames(antecedent), baskets.itemNames(consequent),
+                        itemset.count / total, confidence, lift));
+            }
+        }
+        rules.sort(Comparator.comparingDouble(BasketRule::getConfidence)
+                .thenComparingDouble(BasketRule::getLift)
+                .thenComparingDouble(BasketRule::getSupport).reversed());
+        System.out.println("FP-Growth found " + itemsets.size() + " frequent itemsets and " + rules.size()
+                + " rules in " + baskets.size() + " baskets (" + (System.currentTimeMillis() - start) + " ms)");
+        return rules;
+    }
+
+    // Emit suffix+rank (as ranks) and recurse into the conditional tree of that rank
+    private void mineSuffix(Tree tree, int rank, int[] suffix, long minCount, List<Itemset> out) {
+        long support = tree.supports[rank];
+        if (support < minCount) return;
+
+        int[] itemset = Arrays.copyOf(suffix, suffix.length + 1);
+        itemset[suffix.length] = rank;
+        out.add(new Itemset(itemset, support));
+        if (itemset.length >= maxItemsetSize || rank == 0) return;
+
+        // Conditional pattern base: prefix paths of every node holding this rank
+        long[] prefixCounts = new long[rank];
+        for (Node node = tree.heads[rank]; node != null; node = node.nextSameItem) {
+            for (Node up = node.parent; up.item >= 0; up = up.parent) prefixCounts[up.item] += node.count;
+        }
+        boolean any = false;
+        for (long count : prefixCounts) {
+            if (count >= minCount) {
+                any = true;
+                break;
+            }
+        }
+        if (!any) return;
+
+        Tree conditional = new Tree(rank);
+        int[] path = new int[rank];
+        for (Node node = tree.heads[rank]; node != null; node = node.nextSameItem) {
+            int length = 0;
+            for (Node up = node.parent; up.item >= 0; up = up.parent) {
+                if (prefixCounts[up.item] >= minCount) path[length++] = up.item;
+            }
+            // Parent walk yields descending ranks; the tree expects ascending
+            for (int i = 0, j = length - 1; i < j; i++, j--) {
+                int swap = path[i];
+                path[i] = path[j];
+                path[j] = swap;
+            }
+            conditional.insert(path, length, node.count);
+        }
+        for (int next = rank - 1; next >= 0; next--) {
+            mineSuffix(conditional, next, itemset, minCount, out);
+        }
+    }
+
+    private static int[] subset(int[] items, int mask) {
+        int[] picked = new int[Integer.bitCount(mask)];
+        int n = 0;
+        for (int i = 0; i < items.length; i++) {
+            if ((mask & (1 << i)) != 0) picked[n++] = items[i];
+        }
+        return picked;
+    }
+
+    private static List<Integer> key(int[] sortedItems) {
+        List<Integer> key = new ArrayList<>(sortedItems.length);
+        for (int item : sortedItems) key.add(item);
+        return key;
+    }
+}
@@ -0,0 +1,196 @@
+package functional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+// Frequency counts over dictionary-encoded category ids. Each worker counts its slice into a private
+// primitive array and the arrays are summed; when per-worker arrays would be too large for the
+// dictionary size, workers share one atomic array instead (contention is low at high cardinality).
+public class FrequencyCounter {
+    private static final long PER_WORKER_BUDGET_BYTES = 256L * 1024 * 1024;
+    private static final int MIN_SLICE = 1 << 15;
+
+    private final int parallelism;
+
+    public FrequencyCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public FrequencyCounter(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    // Exact count per code; negative codes (missing values) are skipped
+    public long[] countCodes(int[] codes, int rows, int dictionarySize) {
+        int workers = Math.max(1, Math.min(parallelism, rows / MIN_SLICE));
+        if (workers == 1) {
+            long[] counts = new long[dictionarySize];
+            countSlice(codes, 0, rows, counts);
+            return counts;
+        }
+
+        int sliceSize = (rows + workers - 1) / workers;
+        if ((long) workers * dictionarySize * Long.BYTES <= PER_WORKER_BUDGET_BYTES) {
+            return IntStream.range(0, workers).parallel()
+                    .mapToObj(worker -> {
+                        long[] local = new long[dictionarySize];
+                        int from = worker * sliceSize;
+                        countSlice(codes, from, Math.min(rows, from + sliceSize), local);
+                        return local;
+                    })
+                    .reduce((a, b) -> {
+                        for (int i = 0; i < a.length; i++) a[i] += b[i];
+                        return a;
+                    })
+                    .get();
+        }
+
+        AtomicLongArray shared = new AtomicLongArray(dictionarySize);
+        IntStream.range(0, workers).parallel().forEach(worker -> {
+            int from = worker * sliceSize;
+            int to = Math.min(rows, from + sliceSize);
+            for (int i = from; i < to; i++) {
+                if (codes[i] >= 0) shared.incrementAndGet(codes[i]);
+            }
+        });
+        long[] counts = new long[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) counts[i] = shared.get(i);
+        return counts;
+    }
+
+    // Exact frequencies of a column, most frequent first; numeric columns (SKU or store IDs) count by value
+    public Map<String, Long> frequencies(ColumnarDataset data, String column) {
+        List<String> dictionary = new ArrayList<>();
+        int[] codes = codes(data, data.getColumnIndex(column), dictionary);
+        long[] counts = countCodes(codes, data.getRowCount(), dictionary.size());
+        return toSortedMap(dictionary, counts, dictionary.size());
+    }
+
+    // Exact frequencies of a list of labels: labels are dictionary-encoded once, then counted as ints
+    public Map<String, Long> frequencies(List<String> categories) {
+        Map<String, Integer> lookup = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] codes = new int[categories.size()];
+        for (int i = 0; i < codes.length; i++) {
+            String category = categories.get(i);
+            Integer code = lookup.get(category);
+            if (code == null) {
+                code = dictionary.size();
+                lookup.put(category, code);
+                dictionary.add(category);
+            }
+            codes[i] = code;
+        }
+        long[] counts = countCodes(codes, codes.length, dictionary.size());
+        return toSortedMap(dictionary, counts, dictionary.size());
+    }
+
+    // Exact top-k of a column without materializing the full sorted map
+    public Map<String, Long> topK(ColumnarDataset data, String column, int k) {
+        List<String> dictionary = new ArrayList<>();
+        int[] codes = codes(data, data.getColumnIndex(column), dictionary);
+        long[] counts = countCodes(codes, data.getRowCount(), dictionary.size());
+        return toSortedMap(dictionary, counts, k);
+    }
+
+    // Approximate top-k in bounded memory (Space-Saving), for when exact counts do not fit
+    public List<SpaceSavingSketch.Estimate<String>> approximateTopK(Iterable<String> categories, int k, int capacity) {
+        SpaceSavingSketch<String> sketch = new SpaceSavingSketch<>(capacity);
+        for (String category : categories) {
+            if (category != null) sketch.offer(category);
+        }
+        return sketch.topK(k);
+    }
+
+    // Approximate top-k of one column of a delimited file with a header line. The file is streamed line by
+    // line, so memory stays at `capacity` counters however large it is; malformed lines and missing values
+    // are skipped.
+    public List<SpaceSavingSketch.Estimate<String>> approximateTopK(Path file, char delimiter, String column, int k,
+                                                                     int capacity) throws IOException {
+        SpaceSavingSketch<String> sketch = new SpaceSavingSketch<>(capacity);
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) return sketch.topK(k);
+            byte[] bytes = header.getBytes(StandardCharsets.UTF_8);
+            String[] names = new String[header.length() - header.replace(String.valueOf(delimiter), "").length() + 1];
+            int columns = tokenizer.tokenize(bytes, 0, bytes.length, names);
+            int index = Arrays.asList(names).subList(0, Math.max(0, columns)).indexOf(column);
+            if (index < 0) throw new IllegalArgumentException("Unknown column: " + column);
+
+            String[] fields = new String[columns];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bytes = line.getBytes(StandardCharsets.UTF_8);
+                if (tokenizer.tokenize(bytes, 0, bytes.length, fields) == columns && !fields[index].isEmpty()) {
+                    sketch.offer(fields[index]);
+                }
+            }
+        }
+        return sketch.topK(k);
+    }
+
+    // Dictionary codes of a column, filling `dictionary`; numeric columns are encoded here by value, with
+    // each value labelled as getString shows it. Missing values get -1.
+    private static int[] codes(ColumnarDataset data, int column, List<String> dictionary) {
+        if (!data.isNumeric(column)) {
+            dictionary.addAll(data.dictionary(column));
+            return data.categoryCodes(column);
+        }
+        boolean integral = data.getColumnType(column) == ColumnarDataset.ColumnType.LONG;
+        long[] longs = integral ? data.longValues(column) : null;
+        double[] doubles = integral ? null : data.doubleValues(column);
+        Map<Long, Integer> lookup = new HashMap<>();
+        int[] codes = new int[data.getRowCount()];
+        for (int row = 0; row < codes.length; row++) {
+            if (data.isNull(row, column)) {
+                codes[row] = -1;
+                continue;
+            }
+            long key = integral ? longs[row] : Double.doubleToLongBits(doubles[row] + 0.0);
+            Integer code = lookup.get(key);
+            if (code == null) {
+                code = dictionary.size();
+                lookup.put(key, code);
+                dictionary.add(data.getString(row, column));
+            }
+            codes[row] = code;
+        }
+        return codes;
+    }
+
+    private static void countSlice(int[] codes, int from, int to, long[] counts) {
+        for (int i = from; i < to; i++) {
+            int code = codes[i];
+            if (code >= 0) counts[code]++;
+        }
+    }
+
+    private static Map<String, Long> toSortedMap(List<String> dictionary, long[] counts, int limit) {
+        PriorityQueue<Integer> smallest = new PriorityQueue<>(Comparator.comparingLong(code -> counts[code]));
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] == 0) continue;
+            if (smallest.size() < limit) {
+                smallest.add(code);
+            } else if (limit > 0 && counts[code] > counts[smallest.peek()]) {
+                smallest.poll();
+                smallest.add(code);
+            }
+        }
+        List<Integer> ordered = new ArrayList<>(smallest);
+        ordered.sort((a, b) -> Long.compare(counts[b], counts[a]));
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code : ordered) {
+            result.put(dictionary.get(code), counts[code]);
+        }
+        return result;
+    }
+}
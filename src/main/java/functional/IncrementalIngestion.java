@@ -0,0 +1,573 @@
+package functional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+// Repeatable loads of delimited files into SQLite. A ledger table records, per (file, table), the size and
+// modification time seen and the byte offset and CRC32 of the prefix already ingested:
+//   - unchanged size and modification time: nothing is read;
+//   - prefix checksum still matches (the file was appended to): only the bytes after the offset are read;
+//   - anything else: the whole file is re-read.
+// A re-read adds new rows and updates changed ones, but never deletes: one table may be loaded from several
+// files and rows do not record which file they came from, so a row missing from the new version of a file
+// stays stored. Drop or truncate the table and reset() the file to replace its rows outright.
+// Rows are deduplicated on a natural key (all columns unless configured) backed by a unique index; a Bloom
+// filter of stored keys lets new keys skip the lookup, and rows whose stored copy is identical are not
+// rewritten. Numeric key parts are hashed by value, as SQLite stores them ("10.50" is stored as 10.5). Rows with missing values are skipped, as in the streaming import.
+public class IncrementalIngestion {
+    public static final String LEDGER_TABLE = "ingestion_ledger";
+    public static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_BLOOM_CAPACITY = 1 << 16;
+    private static final int SCHEMA_SAMPLE_ROWS = 1000;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int MIN_BYTES_PER_ROW = 16;
+
+    // RELOADED: the file was rewritten rather than appended to, so it was read in full (see the class comment)
+    public enum Change { NEW, UNCHANGED, APPENDED, RELOADED }
+
+    // What one ingest call did
+    public static class Result {
+        private final String source;
+        private final String table;
+        private final Change change;
+        private final long rowsRead;
+        private final long rowsInserted;
+        private final long rowsUpdated;
+        private final long rowsUnchanged;
+        private final long rowsRejected;
+        private final long elapsedMillis;
+
+        private Result(String source, String table, Change change, long rowsRead, long rowsInserted, long rowsUpdated,
+                       long rowsUnchanged, long rowsRejected, long elapsedMillis) {
+            this.source = source;
+            this.table = table;
+            this.change = change;
+            this.rowsRead = rowsRead;
+            this.rowsInserted = rowsInserted;
+            this.rowsUpdated = rowsUpdated;
+            this.rowsUnchanged = rowsUnchanged;
+            this.rowsRejected = rowsRejected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Change getChange() {
+            return change;
+        }
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getRowsInserted() {
+            return rowsInserted;
+        }
+
+        public long getRowsUpdated() {
+            return rowsUpdated;
+        }
+
+        public long getRowsUnchanged() {
+            return rowsUnchanged;
+        }
+
+        // Malformed lines and rows with missing values
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return source + " -> " + table + ": " + change + ", rows read: " + rowsRead + ", inserted: " + rowsInserted
+                    + ", updated: " + rowsUpdated + ", unchanged: " + rowsUnchanged + ", rejected: " + rowsRejected
+                    + " (" + elapsedMillis + " ms)";
+        }
+    }
+
+    private final ConnectionPool connectionPool;
+    private final Map<String, BloomFilter> storedKeys = new ConcurrentHashMap<>();
+    private List<String> naturalKey = Collections.emptyList();
+    private int batchSize = SQLiteBulkWriter.DEFAULT_BATCH_SIZE;
+
+    public IncrementalIngestion(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    // Columns that identify a row, e.g. a transaction ID or (CustomerID, Timestamp); empty means the whole row
+    public void setNaturalKey(List<String> columns) {
+        this.naturalKey = new ArrayList<>(columns);
+        storedKeys.clear();
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public Result ingest(Path file, char delimiter, String table) throws IOException, SQLException {
+        long startTime = System.nanoTime();
+        String source = file.toAbsolutePath().normalize().toString();
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+
+        try (ConnectionPool.Lease lease = connectionPool.write()) {
+            Connection connection = lease.getConnection();
+            createLedger(connection);
+            LedgerEntry previous = readLedger(lease, source, table);
+            if (previous != null && previous.size == size && previous.modified == modified) {
+                return new Result(source, table, Change.UNCHANGED, 0, 0, 0, 0, 0, elapsedMillis(startTime));
+            }
+
+            CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                byte[] header = readHeader(channel, size);
+                String[] columns = new String[Math.max(1, count(header, (byte) delimiter) + 1)];
+                if (header.length == 0 || tokenizer.tokenize(header, 0, lineEnd(header), columns) != columns.length) {
+                    throw new IOException("Missing or malformed header in " + file);
+                }
+                List<String> columnNames = Arrays.asList(columns);
+                int[] keyIndexes = keyIndexes(columnNames);
+
+                Change change = previous == null ? Change.NEW : Change.RELOADED;
+                CRC32 checksum = null;
+                long offset = header.length;
+                if (previous != null && previous.offset >= header.length && previous.offset <= size) {
+                    CRC32 prefix = checksum(channel, previous.offset);
+                    if (prefix.getValue() == previous.checksum) {
+                        change = Change.APPENDED;
+                        checksum = prefix;
+                        offset = previous.offset;
+                    }
+                }
+                if (checksum == null) {
+                    checksum = new CRC32();
+                    checksum.update(header, 0, header.length);
+                }
+
+                // a new table is indexed after the load, as in the streaming import; an existing one needs its
+                // natural key index up front so that changed rows replace their stored copy
+                TableSchema created = createTableIfMissing(connection, file, tokenizer, columnNames, table);
+                if (created == null) createNaturalKeyIndex(connection, table, columnNames, keyIndexes);
+                TableSchema.SqlType[] keyTypes = keyTypes(created != null ? created : TableSchema.read(connection, table),
+                        columnNames, keyIndexes);
+                BloomFilter seen = storedKeys(lease, table, columnNames, keyIndexes, keyTypes,
+                        (size - offset) / MIN_BYTES_PER_ROW + 1);
+                Loader loader = new Loader(lease, table, columnNames, keyIndexes, keyTypes, seen, created == null);
+                long consumed;
+                try (SQLiteBulkWriter writer = new SQLiteBulkWriter(connection, table, columnNames, batchSize,
+                        SQLiteBulkWriter.DEFAULT_SYNCHRONOUS, created == null)) {
+                    loader.writer = writer;
+                    consumed = scan(channel, offset, size, checksum, tokenizer, loader);
+                }
+                if (created != null) {
+                    // keys repeated in different batches of a first load only meet here: the index keeps the
+                    // later copy, so those rows were updates rather than inserts
+                    long repeats = createNaturalKeyIndex(connection, table, columnNames, keyIndexes) - loader.storedTwice;
+                    loader.inserted -= repeats;
+                    loader.updated += repeats;
+                    created.createIndexes(connection, table);
+                }
+
+                long totalRows = (change == Change.APPENDED ? previous.rows : 0) + loader.rowsRead;
+                writeLedger(connection, new LedgerEntry(source, table, size, modified, consumed, checksum.getValue(), totalRows));
+                return new Result(source, table, change, loader.rowsRead, loader.inserted, loader.updated,
+                        loader.unchanged, loader.rejected, elapsedMillis(startTime));
+            }
+        }
+    }
+
+    // Forget what was ingested from a file, so the next ingest reads it in full
+    public void reset(Path file, String table) throws SQLException {
+        try (ConnectionPool.Lease lease = connectionPool.write()) {
+            createLedger(lease.getConnection());
+            PreparedStatement delete = lease.prepare("DELETE FROM " + LEDGER_TABLE + " WHERE source = ? AND table_name = ?");
+            delete.setString(1, file.toAbsolutePath().normalize().toString());
+            delete.setString(2, table);
+            delete.executeUpdate();
+        }
+    }
+
+    // Per-row decision: new keys are inserted without a lookup; keys that may be stored are looked up and
+    // only rewritten when a value differs. A table created by this load holds nothing to compare against
+    // (and has no key index yet), so every row is written and repeats are resolved when the index is built.
+    // Rows queued since the last flush are not visible to the lookup yet, so a key repeated before its batch
+    // is committed is compared against the queued copy instead and counted once.
+    private final class Loader {
+        private final ConnectionPool.Lease lease;
+        private final boolean lookups;
+        private final String lookupSql;
+        private final int[] keyIndexes;
+        private final TableSchema.SqlType[] keyTypes;
+        private final BloomFilter seen;
+        private final String[] fields;
+        private final String[] keyParts;
+        private final Map<List<String>, String[]> queued = new HashMap<>();
+        private SQLiteBulkWriter writer;
+        private long rowsRead, inserted, updated, unchanged, rejected;
+        // repeats written next to their queued copy into a table without a key index yet
+        private long storedTwice;
+
+        private Loader(ConnectionPool.Lease lease, String table, List<String> columns, int[] keyIndexes,
+                       TableSchema.SqlType[] keyTypes, BloomFilter seen, boolean lookups) {
+            this.lease = lease;
+            this.lookups = lookups;
+            this.keyIndexes = keyIndexes;
+            this.keyTypes = keyTypes;
+            this.seen = seen;
+            this.fields = new String[columns.size()];
+            this.keyParts = new String[keyIndexes.length];
+            StringJoiner projection = new StringJoiner(", ");
+            for (String column : columns) projection.add(SQLiteBulkWriter.quoteIdentifier(column));
+            StringJoiner key = new StringJoiner(" AND ");
+            for (int index : keyIndexes) key.add(SQLiteBulkWriter.quoteIdentifier(columns.get(index)) + " = ?");
+            this.lookupSql = "SELECT " + projection + " FROM " + SQLiteBulkWriter.quoteIdentifier(table) + " WHERE " + key;
+        }
+
+        private void accept(CsvTokenizer tokenizer, byte[] bytes, int start, int end) throws SQLException {
+            if (end > start && bytes[end - 1] == '\r') end--;
+            if (end == start) return;
+            rowsRead++;
+            if (tokenizer.tokenize(bytes, start, end, fields) != fields.length || hasMissingValues(fields)) {
+                rejected++;
+                return;
+            }
+            for (int k = 0; k < keyIndexes.length; k++) keyParts[k] = keyPart(fields[keyIndexes[k]], keyTypes[k]);
+            List<String> key = Arrays.asList(keyParts.clone());
+            String[] pending = queued.get(key);
+            if (pending != null) {
+                if (Arrays.equals(pending, fields)) {
+                    unchanged++;
+                    return;
+                }
+                updated++;
+                if (!lookups) storedTwice++;
+                queue(key);
+                return;
+            }
+            long hash = BloomFilter.hash(keyParts);
+            if (!lookups || !seen.mightContain(hash)) {
+                seen.put(hash);
+                queue(key);
+                inserted++;
+                return;
+            }
+            PreparedStatement lookup = lease.prepare(lookupSql);
+            // the raw text: SQLite converts it by the column affinity, exactly as when the row was stored
+            for (int k = 0; k < keyParts.length; k++) lookup.setString(k + 1, fields[keyIndexes[k]]);
+            try (ResultSet rs = lookup.executeQuery()) {
+                if (!rs.next()) {
+                    inserted++;
+                } else if (sameValues(rs, fields)) {
+                    unchanged++;
+                    return;
+                } else {
+                    updated++;
+                }
+            }
+            queue(key);
+        }
+
+        private void queue(List<String> key) throws SQLException {
+            writer.addValues((Object[]) fields);
+            if (writer.getPendingRows() == 0) queued.clear();
+            else queued.put(key, fields.clone());
+        }
+    }
+
+    // Stored values come back typed by the column affinity, so numbers are compared as numbers
+    private static boolean sameValues(ResultSet rs, String[] fields) throws SQLException {
+        for (int c = 0; c < fields.length; c++) {
+            Object stored = rs.getObject(c + 1);
+            if (stored instanceof Number) {
+                try {
+                    if (((Number) stored).doubleValue() != Double.parseDouble(fields[c])) return false;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else if (stored == null || !stored.toString().equals(fields[c])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Feed every line in [from, to) to the loader. Returns the offset after the last newline: an unterminated
+    // last line is loaded but not counted as consumed, so it is read again (and deduplicated) if it grows.
+    private static long scan(FileChannel channel, long from, long to, CRC32 checksum, CsvTokenizer tokenizer,
+                             Loader loader) throws IOException, SQLException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int filled = 0;
+        long position = from;
+        long consumed = from;
+        while (true) {
+            int read = 0;
+            if (position < to) {
+                if (filled == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                read = channel.read(ByteBuffer.wrap(buffer, filled, (int) Math.min(buffer.length - filled, to - position)), position);
+                if (read > 0) {
+                    position += read;
+                    filled += read;
+                }
+            }
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    loader.accept(tokenizer, buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            checksum.update(buffer, 0, lineStart);
+            consumed += lineStart;
+            filled -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, filled);
+            if (position >= to || read < 0) {
+                if (filled > 0) loader.accept(tokenizer, buffer, 0, filled);
+                return consumed;
+            }
+        }
+    }
+
+    // Create the table on first load, with types inferred from a sample; returns null if it already exists
+    private static TableSchema createTableIfMissing(Connection connection, Path file, CsvTokenizer tokenizer,
+                                                    List<String> columns, String table) throws IOException, SQLException {
+        if (tableExists(connection, table)) return null;
+        List<String[]> sample = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            while (sample.size() < SCHEMA_SAMPLE_ROWS && (line = reader.readLine()) != null) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                String[] fields = new String[columns.size()];
+                if (tokenizer.tokenize(bytes, 0, bytes.length, fields) == fields.length && !hasMissingValues(fields)) {
+                    sample.add(fields);
+                }
+            }
+        }
+        TableSchema schema = TableSchema.infer(columns, sample);
+        schema.createTable(connection, table);
+        return schema;
+    }
+
+    // Unique index on the natural key. Rows stored before it existed (or repeated within the first load of a
+    // file) may collide; the most recently stored copy is kept. Returns the number of rows removed.
+    private long createNaturalKeyIndex(Connection connection, String table, List<String> columns, int[] keyIndexes)
+            throws SQLException {
+        String index = ("ux_" + table + "_natural_key").replaceAll("[^A-Za-z0-9_]", "_");
+        if (indexExists(connection, index)) return 0;
+        StringJoiner key = new StringJoiner(", ");
+        for (int k : keyIndexes) key.add(SQLiteBulkWriter.quoteIdentifier(columns.get(k)));
+        try (Statement statement = connection.createStatement()) {
+            int removed = statement.executeUpdate("DELETE FROM " + SQLiteBulkWriter.quoteIdentifier(table)
+                    + " WHERE rowid NOT IN (SELECT MAX(rowid) FROM " + SQLiteBulkWriter.quoteIdentifier(table)
+                    + " GROUP BY " + key + ")");
+            if (removed > 0) System.out.println("Removed " + removed + " duplicate rows from '" + table + "'.");
+            statement.execute("CREATE UNIQUE INDEX " + SQLiteBulkWriter.quoteIdentifier(index) + " ON "
+                    + SQLiteBulkWriter.quoteIdentifier(table) + " (" + key + ")");
+            return removed;
+        }
+    }
+
+    // Keys already in the table; built once per table and kept up to date by this instance. It is rebuilt
+    // larger when the rows about to be read (estimated from the bytes left) would overfill it.
+    private BloomFilter storedKeys(ConnectionPool.Lease lease, String table, List<String> columns, int[] keyIndexes,
+                                   TableSchema.SqlType[] keyTypes, long expectedNewRows) throws SQLException {
+        BloomFilter seen = storedKeys.get(table);
+        if (seen != null && seen.hasRoomFor(expectedNewRows)) return seen;
+
+        String quotedTable = SQLiteBulkWriter.quoteIdentifier(table);
+        long rows;
+        try (ResultSet rs = lease.prepare("SELECT COUNT(*) FROM " + quotedTable).executeQuery()) {
+            rows = rs.next() ? rs.getLong(1) : 0;
+        }
+        seen = new BloomFilter(Math.max(MIN_BLOOM_CAPACITY, 2 * (rows + expectedNewRows)), BLOOM_FALSE_POSITIVE_RATE);
+        StringJoiner key = new StringJoiner(", ");
+        for (int k : keyIndexes) key.add(SQLiteBulkWriter.quoteIdentifier(columns.get(k)));
+        String[] parts = new String[keyIndexes.length];
+        try (ResultSet rs = lease.prepare("SELECT " + key + " FROM " + quotedTable).executeQuery()) {
+            while (rs.next()) {
+                for (int k = 0; k < parts.length; k++) parts[k] = keyPart(rs.getString(k + 1), keyTypes[k]);
+                seen.put(BloomFilter.hash(parts));
+            }
+        }
+        storedKeys.put(table, seen);
+        return seen;
+    }
+
+    private static TableSchema.SqlType[] keyTypes(TableSchema schema, List<String> columns, int[] keyIndexes) {
+        TableSchema.SqlType[] types = new TableSchema.SqlType[keyIndexes.length];
+        for (int k = 0; k < types.length; k++) types[k] = schema.getType(columns.get(keyIndexes[k]));
+        return types;
+    }
+
+    // A key value as it compares once stored: numbers in INTEGER and REAL columns by their value ("10.50",
+    // "10.5" and, read back from a REAL column, "10.0" and "10" each hash alike), everything else as text
+    static String keyPart(String value, TableSchema.SqlType type) {
+        if (type == TableSchema.SqlType.TEXT || value == null || value.isEmpty()) return value;
+        boolean digit = false;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch >= '0' && ch <= '9') digit = true;
+            else if (ch != '.' && ch != '-' && ch != '+' && ch != 'e' && ch != 'E') return value;
+        }
+        if (!digit) return value;
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+        if (Double.isInfinite(number)) return value;
+        return number == Math.rint(number) && Math.abs(number) <= 1L << 53 ? Long.toString((long) number) : Double.toString(number);
+    }
+
+    private int[] keyIndexes(List<String> columns) {
+        if (naturalKey.isEmpty()) {
+            int[] all = new int[columns.size()];
+            for (int c = 0; c < all.length; c++) all[c] = c;
+            return all;
+        }
+        int[] indexes = new int[naturalKey.size()];
+        for (int k = 0; k < indexes.length; k++) {
+            indexes[k] = columns.indexOf(naturalKey.get(k));
+            if (indexes[k] < 0) throw new IllegalArgumentException("Natural key column not in file: " + naturalKey.get(k));
+        }
+        return indexes;
+    }
+
+    // One ledger row per (source file, table)
+    private static final class LedgerEntry {
+        private final String source;
+        private final String table;
+        private final long size;
+        private final long modified;
+        private final long offset;
+        private final long checksum;
+        private final long rows;
+
+        private LedgerEntry(String source, String table, long size, long modified, long offset, long checksum, long rows) {
+            this.source = source;
+            this.table = table;
+            this.size = size;
+            this.modified = modified;
+            this.offset = offset;
+            this.checksum = checksum;
+            this.rows = rows;
+        }
+    }
+
+    private static void createLedger(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + LEDGER_TABLE + " (source TEXT NOT NULL, table_name TEXT NOT NULL, "
+                    + "size INTEGER, modified INTEGER, byte_offset INTEGER, checksum INTEGER, rows INTEGER, "
+                    + "ingested_at INTEGER, PRIMARY KEY (source, table_name))");
+        }
+    }
+
+    private static LedgerEntry readLedger(ConnectionPool.Lease lease, String source, String table) throws SQLException {
+        PreparedStatement select = lease.prepare("SELECT size, modified, byte_offset, checksum, rows FROM " + LEDGER_TABLE
+                + " WHERE source = ? AND table_name = ?");
+        select.setString(1, source);
+        select.setString(2, table);
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) return null;
+            return new LedgerEntry(source, table, rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5));
+        }
+    }
+
+    private static void writeLedger(Connection connection, LedgerEntry entry) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement("INSERT OR REPLACE INTO " + LEDGER_TABLE
+                + " (source, table_name, size, modified, byte_offset, checksum, rows, ingested_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            upsert.setString(1, entry.source);
+            upsert.setString(2, entry.table);
+            upsert.setLong(3, entry.size);
+            upsert.setLong(4, entry.modified);
+            upsert.setLong(5, entry.offset);
+            upsert.setLong(6, entry.checksum);
+            upsert.setLong(7, entry.rows);
+            upsert.setLong(8, System.currentTimeMillis());
+            upsert.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        return schemaObjectExists(connection, "table", table);
+    }
+
+    private static boolean indexExists(Connection connection, String index) throws SQLException {
+        return schemaObjectExists(connection, "index", index);
+    }
+
+    private static boolean schemaObjectExists(Connection connection, String type, String name) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = ? AND name = ?")) {
+            select.setString(1, type);
+            select.setString(2, name);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // The header line including its terminator
+    private static byte[] readHeader(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 1 << 16));
+        channel.read(buffer, 0);
+        byte[] bytes = Arrays.copyOf(buffer.array(), buffer.position());
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') return Arrays.copyOf(bytes, i + 1);
+        }
+        return bytes;
+    }
+
+    private static int lineEnd(byte[] line) {
+        int end = line.length;
+        if (end > 0 && line[end - 1] == '\n') end--;
+        if (end > 0 && line[end - 1] == '\r') end--;
+        return end;
+    }
+
+    // CRC32 of the first length bytes, continued with the rest of the file as it is read
+    private static CRC32 checksum(FileChannel channel, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc;
+    }
+
+    private static int count(byte[] bytes, byte value) {
+        int n = 0;
+        for (byte b : bytes) if (b == value) n++;
+        return n;
+    }
+
+    private static boolean hasMissingValues(String[] fields) {
+        for (String field : fields) {
+            if (field == null || field.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return (System.nanoTime() - startTime) / 1_000_000;
+    }
+}
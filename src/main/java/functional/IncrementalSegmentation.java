@@ -0,0 +1,96 @@
+package functional;
+
+import weka.core.SerializationHelper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Segmentation that survives between runs: the centroids are persisted to a file, new or changed
+// customers are streamed into them, and the full data is only reclustered once the drift ratio of the
+// streamed customers crosses a threshold.
+public class IncrementalSegmentation {
+    public static final double DEFAULT_DRIFT_THRESHOLD = 1.5;
+
+    private final Path modelFile;
+    private final List<String> features;
+    private final int numClusters;
+    private double driftThreshold = DEFAULT_DRIFT_THRESHOLD;
+    private KMeansModel model;
+
+    public IncrementalSegmentation(Path modelFile, List<String> features, int numClusters) {
+        this.modelFile = modelFile;
+        this.features = new ArrayList<>(features);
+        this.numClusters = numClusters;
+        this.model = load();
+    }
+
+    // Drift ratio (see KMeansModel.getDriftRatio) above which the next run retrains from scratch
+    public void setDriftThreshold(double driftThreshold) {
+        if (driftThreshold <= 1) throw new IllegalArgumentException("Drift threshold must be above 1: " + driftThreshold);
+        this.driftThreshold = driftThreshold;
+    }
+
+    public boolean hasModel() {
+        return model != null;
+    }
+
+    public KMeansModel getModel() {
+        return model;
+    }
+
+    public boolean isRetrainNeeded() {
+        return model == null || model.getDriftRatio() > driftThreshold;
+    }
+
+    // Assign new customers to the current centroids and move the centroids towards them
+    public int[] update(ColumnarDataset customers) {
+        return update(customers, null);
+    }
+
+    // As update(customers), where previousClusters[row] is the cluster a changed customer was assigned to
+    // before (-1 for a new one), so it is moved rather than counted twice (see KMeansModel.update)
+    public int[] update(ColumnarDataset customers, int[] previousClusters) {
+        if (model == null) throw new IllegalStateException("No segmentation model yet; retrain on the full data first");
+        int[] clusters = model.update(customers, previousClusters);
+        save();
+        return clusters;
+    }
+
+    // Recluster the full customer base, replacing the persisted centroids
+    public KMeansModel retrain(ColumnarDataset allCustomers) throws InterruptedException {
+        model = KMeansClustering.forRows(numClusters, allCustomers.getRowCount()).fit(allCustomers, features);
+        save();
+        return model;
+    }
+
+    // A persisted model is only reused when it was trained on the same features and cluster count
+    private KMeansModel load() {
+        if (!Files.isRegularFile(modelFile)) return null;
+        try {
+            KMeansModel loaded = (KMeansModel) SerializationHelper.read(modelFile.toString());
+            if (loaded.getK() != numClusters || !loaded.getFeatureNames().equals(features)) {
+                System.out.println("Ignoring segmentation model " + modelFile + " trained with different features or cluster count");
+                return null;
+            }
+            return loaded;
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable segmentation model " + modelFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void save() {
+        try {
+            Path directory = modelFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "segmentation", ".tmp");
+            SerializationHelper.write(temp.toString(), model);
+            Files.move(temp, modelFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("Could not persist segmentation model " + modelFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package functional;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+// Builds Weka Instances straight from a columnar dataset or a SQL result set. Only the projected columns
+// are read, numeric columns become numeric attributes and categorical columns nominal attributes over
+// their dictionary, and each row's value array is handed to Weka as is: one double[] per row is the
+// only copy, where loading a file and running it through a Remove filter held two full datasets.
+public class InstancesAdapter {
+    private final ColumnarDataset data;
+    private String relationName = "dataset";
+    private List<String> columns;
+    private String classColumn;
+
+    private InstancesAdapter(ColumnarDataset data) {
+        this.data = data;
+        this.columns = data.getColumnNames();
+    }
+
+    public static InstancesAdapter from(ColumnarDataset data) {
+        return new InstancesAdapter(data);
+    }
+
+    public InstancesAdapter relation(String relationName) {
+        this.relationName = relationName;
+        return this;
+    }
+
+    // Attributes in the given order; every other column is left out
+    public InstancesAdapter select(String... selected) {
+        List<String> projected = new ArrayList<>();
+        for (String column : selected) {
+            if (!data.hasColumn(column)) throw new IllegalArgumentException("Unknown column: " + column);
+            projected.add(column);
+        }
+        this.columns = projected;
+        return this;
+    }
+
+    // All currently selected columns except these, e.g. the customer ID before training
+    public InstancesAdapter exclude(String... excluded) {
+        List<String> projected = new ArrayList<>(columns);
+        projected.removeAll(Arrays.asList(excluded));
+        this.columns = projected;
+        return this;
+    }
+
+    // Class attribute; by default the last projected column, as the trainers expect
+    public InstancesAdapter classColumn(String classColumn) {
+        this.classColumn = classColumn;
+        return this;
+    }
+
+    public Instances build() {
+        int width = columns.size();
+        int[] source = new int[width];
+        ArrayList<Attribute> attributes = new ArrayList<>(width);
+        for (int a = 0; a < width; a++) {
+            source[a] = data.getColumnIndex(columns.get(a));
+            attributes.add(data.isNumeric(source[a])
+                    ? new Attribute(columns.get(a))
+                    : new Attribute(columns.get(a), new ArrayList<>(data.dictionary(source[a]))));
+        }
+
+        int rows = data.getRowCount();
+        double[][] values = new double[rows][width];
+        for (int a = 0; a < width; a++) {
+            int c = source[a];
+            switch (data.getColumnType(c)) {
+                case LONG: {
+                    long[] longs = data.longValues(c);
+                    for (int r = 0; r < rows; r++) values[r][a] = longs[r];
+                    break;
+                }
+                case DOUBLE: {
+                    double[] doubles = data.doubleValues(c);
+                    for (int r = 0; r < rows; r++) values[r][a] = doubles[r];
+                    break;
+                }
+                default: {
+                    int[] codes = data.categoryCodes(c);
+                    for (int r = 0; r < rows; r++) values[r][a] = codes[r];
+                }
+            }
+            if (data.nullCount(c) > 0) {
+                for (int r = 0; r < rows; r++) {
+                    if (data.isNull(r, c)) values[r][a] = Utils.missingValue();
+                }
+            }
+        }
+        return assemble(relationName, attributes, values, rows, classColumn);
+    }
+
+    // The other direction, for sources only Weka can read (ARFF): every attribute becomes a column whose type
+    // is inferred from its values as for a CSV file; missing values stay missing
+    public static ColumnarDataset toColumnar(Instances instances) {
+        List<String> names = new ArrayList<>(instances.numAttributes());
+        for (int a = 0; a < instances.numAttributes(); a++) names.add(instances.attribute(a).name());
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(names);
+        String[] values = new String[names.size()];
+        for (Instance instance : instances) {
+            for (int a = 0; a < values.length; a++) {
+                Attribute attribute = instances.attribute(a);
+                if (instance.isMissing(a)) {
+                    values[a] = null;
+                } else if (attribute.isDate()) {
+                    values[a] = attribute.formatDate(instance.value(a));
+                } else if (attribute.isNumeric()) {
+                    double value = instance.value(a);
+                    values[a] = value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+                } else {
+                    values[a] = instance.stringValue(a);
+                }
+            }
+            builder.addRow(values);
+        }
+        return builder.build();
+    }
+
+    // Instances from a query result: numeric SQL columns become numeric attributes, everything else nominal
+    // attributes over the values seen. Project in the SELECT; the last column is the class attribute.
+    public static Instances fromResultSet(ResultSet rs, String relationName) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int width = meta.getColumnCount();
+        List<double[]> rows = new ArrayList<>();
+        List<Map<String, Integer>> nominalValues = new ArrayList<>(width);
+        boolean[] numeric = new boolean[width];
+
+        boolean typed = false;
+        while (rs.next()) {
+            // SQLite reports the type of expression columns per row, so read it once there is a row
+            if (!typed) {
+                for (int c = 0; c < width; c++) {
+                    numeric[c] = isNumericType(meta.getColumnType(c + 1));
+                    nominalValues.add(numeric[c] ? null : new LinkedHashMap<>());
+                }
+                typed = true;
+            }
+            double[] values = new double[width];
+            for (int c = 0; c < width; c++) {
+                if (numeric[c]) {
+                    double value = rs.getDouble(c + 1);
+                    values[c] = rs.wasNull() ? Utils.missingValue() : value;
+                } else {
+                    String value = rs.getString(c + 1);
+                    if (value == null) {
+                        values[c] = Utils.missingValue();
+                    } else {
+                        Map<String, Integer> codes = nominalValues.get(c);
+                        Integer code = codes.get(value);
+                        if (code == null) {
+                            code = codes.size();
+                            codes.put(value, code);
+                        }
+                        values[c] = code;
+                    }
+                }
+            }
+            rows.add(values);
+        }
+
+        ArrayList<Attribute> attributes = new ArrayList<>(width);
+        for (int c = 0; c < width; c++) {
+            String name = meta.getColumnLabel(c + 1);
+            attributes.add(!typed || numeric[c]
+                    ? new Attribute(name)
+                    : new Attribute(name, new ArrayList<>(nominalValues.get(c).keySet())));
+        }
+        return assemble(relationName, attributes, rows.toArray(new double[0][]), rows.size(), null);
+    }
+
+    private static boolean isNumericType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Instances assemble(String relationName, ArrayList<Attribute> attributes, double[][] values,
+                                      int rows, String classColumn) {
+        AdaptedInstances instances = new AdaptedInstances(relationName, attributes, rows);
+        for (int r = 0; r < rows; r++) {
+            instances.addWithoutCopy(new DenseInstance(1.0, values[r]));
+        }
+        if (classColumn != null) {
+            Attribute classAttribute = instances.attribute(classColumn);
+            if (classAttribute == null) throw new IllegalArgumentException("Class column not projected: " + classColumn);
+            instances.setClass(classAttribute);
+        } else if (!attributes.isEmpty()) {
+            instances.setClassIndex(attributes.size() - 1);
+        }
+        return instances;
+    }
+
+    // Instances.add copies every instance it is given; these rows are freshly built, so skip that copy
+    private static final class AdaptedInstances extends Instances {
+        private static final long serialVersionUID = 1L;
+
+        AdaptedInstances(String relationName, ArrayList<Attribute> attributes, int capacity) {
+            super(relationName, attributes, capacity);
+        }
+
+        void addWithoutCopy(Instance instance) {
+            instance.setDataset(this);
+            m_Instances.add(instance);
+        }
+    }
+}
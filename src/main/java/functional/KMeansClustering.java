@@ -0,0 +1,293 @@
+package functional;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// K-means over row-major primitive feature arrays. Centroids are seeded with k-means++ (on a uniform
+// sample when the data is large), then refined either with parallel Lloyd iterations, where each chunk
+// of rows accumulates its own per-cluster sums that are merged at the end of the pass, or, when a batch
+// size is set, with mini-batch updates that touch only a small random batch per iteration.
+public class KMeansClustering {
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    public static final double DEFAULT_TOLERANCE = 1e-4;
+    public static final int SEEDING_SAMPLE_SIZE = 100000;
+    public static final int MINI_BATCH_MIN_ROWS = 1000000;
+    public static final int MINI_BATCH_SIZE = 10000;
+    public static final int MINI_BATCH_ITERATIONS = 300;
+    private static final int CHUNK_ROWS = 1 << 14;
+
+    private final int k;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private long seed = 42;
+    private int batchSize;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // Per-chunk partial results of one pass over the data
+    private static class Partial {
+        final double[] sums;
+        final long[] counts;
+        double inertia;
+
+        Partial(int k, int dims) {
+            sums = new double[k * dims];
+            counts = new long[k];
+        }
+    }
+
+    public KMeansClustering(int k) {
+        if (k <= 0) throw new IllegalArgumentException("Number of clusters must be positive: " + k);
+        this.k = k;
+    }
+
+    // Full Lloyd iterations for moderate data, mini-batch updates once the data is large
+    public static KMeansClustering forRows(int k, long rows) {
+        KMeansClustering clusterer = new KMeansClustering(k);
+        if (rows > MINI_BATCH_MIN_ROWS) {
+            clusterer.setBatchSize(MINI_BATCH_SIZE);
+            clusterer.setMaxIterations(MINI_BATCH_ITERATIONS);
+        }
+        return clusterer;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations <= 0) throw new IllegalArgumentException("Iterations must be positive: " + maxIterations);
+        this.maxIterations = maxIterations;
+    }
+
+    // Stop once the total squared centroid movement of an iteration falls below this value
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // Rows per mini-batch; 0 (the default) runs full Lloyd iterations over every row
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) throw new IllegalArgumentException("Batch size must not be negative: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    // Cluster the given numeric columns, standardized to zero mean and unit variance
+    public KMeansModel fit(ColumnarDataset data, List<String> featureColumns) throws InterruptedException {
+        double[] points = features(data, featureColumns);
+        int dims = featureColumns.size();
+        int rows = data.getRowCount();
+
+        double[] offsets = new double[dims];
+        double[] scales = new double[dims];
+        for (int d = 0; d < dims; d++) {
+            double mean = 0;
+            double m2 = 0;
+            for (int row = 0; row < rows; row++) {
+                double delta = points[row * dims + d] - mean;
+                mean += delta / (row + 1);
+                m2 += delta * (points[row * dims + d] - mean);
+            }
+            double std = rows > 1 ? Math.sqrt(m2 / (rows - 1)) : 0;
+            offsets[d] = mean;
+            scales[d] = std > 0 ? std : 1.0;
+            for (int row = 0; row < rows; row++) {
+                points[row * dims + d] = (points[row * dims + d] - mean) / scales[d];
+            }
+        }
+        return fit(points, dims, featureColumns, offsets, scales);
+    }
+
+    // Cluster pre-scaled row-major points as they are
+    public KMeansModel fit(double[] points, int dims) throws InterruptedException {
+        List<String> names = new ArrayList<>();
+        for (int d = 0; d < dims; d++) names.add("f" + d);
+        double[] scales = new double[dims];
+        Arrays.fill(scales, 1.0);
+        return fit(points, dims, names, new double[dims], scales);
+    }
+
+    private KMeansModel fit(double[] points, int dims, List<String> names, double[] offsets, double[] scales)
+            throws InterruptedException {
+        if (dims <= 0 || points.length % dims != 0) throw new IllegalArgumentException("Points do not form rows of " + dims + " features");
+        int rows = points.length / dims;
+        if (rows < k) throw new IllegalArgumentException("Need at least " + k + " rows to form " + k + " clusters, got " + rows);
+
+        long start = System.currentTimeMillis();
+        Random random = new Random(seed);
+        double[] centroids = seedPlusPlus(points, dims, rows, random);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            int iterations;
+            Partial result;
+            if (batchSize > 0 && batchSize < rows) {
+                iterations = miniBatch(pool, points, dims, rows, centroids, random);
+                result = pass(pool, points, dims, rows, centroids);
+            } else {
+                iterations = 0;
+                do {
+                    result = pass(pool, points, dims, rows, centroids);
+                    iterations++;
+                } while (updateCentroids(centroids, result, dims) > tolerance && iterations < maxIterations);
+            }
+            System.out.println("K-means (k=" + k + ", " + rows + " rows, " + iterations + " iterations) finished in "
+                    + (System.currentTimeMillis() - start) + " ms, inertia " + result.inertia);
+            return new KMeansModel(names, offsets, scales, centroids, result.counts, result.inertia, iterations, rows);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Raw feature values in row-major order; missing values are replaced by the column mean
+    static double[] features(ColumnarDataset data, List<String> columns) {
+        int dims = columns.size();
+        int rows = data.getRowCount();
+        double[] points = new double[rows * dims];
+        for (int d = 0; d < dims; d++) {
+            int column = data.getColumnIndex(columns.get(d));
+            if (!data.isNumeric(column)) throw new IllegalArgumentException("Feature column '" + columns.get(d) + "' is not numeric");
+            double[] values = data.doubleValues(column);
+            double fill = data.nullCount(column) > 0 ? StreamingStatistics.of(data.nonNullDoubleValues(column)).getMean() : 0;
+            for (int row = 0; row < rows; row++) {
+                points[row * dims + d] = data.isNull(row, column) ? fill : values[row];
+            }
+        }
+        return points;
+    }
+
+    // k-means++: each further centroid is drawn with probability proportional to its squared distance
+    // from the nearest centroid chosen so far
+    private double[] seedPlusPlus(double[] points, int dims, int rows, Random random) {
+        int sampleSize = Math.min(rows, Math.max(SEEDING_SAMPLE_SIZE, k));
+        int[] sample = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = sampleSize == rows ? i : random.nextInt(rows);
+        }
+
+        double[] centroids = new double[k * dims];
+        System.arraycopy(points, sample[random.nextInt(sampleSize)] * dims, centroids, 0, dims);
+        double[] distances = new double[sampleSize];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < sampleSize; i++) {
+                double distance = KMeansModel.squaredDistance(centroids, (c - 1) * dims, points, sample[i] * dims, dims, distances[i]);
+                if (distance < distances[i]) distances[i] = distance;
+                total += distances[i];
+            }
+            int chosen = sample[random.nextInt(sampleSize)];
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < sampleSize; i++) {
+                    target -= distances[i];
+                    if (target <= 0) {
+                        chosen = sample[i];
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(points, chosen * dims, centroids, c * dims, dims);
+        }
+        return centroids;
+    }
+
+    // One parallel assignment pass: per-chunk cluster sums, counts and inertia, merged in chunk order
+    private Partial pass(ForkJoinPool pool, double[] points, int dims, int rows, double[] centroids)
+            throws InterruptedException {
+        List<Future<Partial>> futures = new ArrayList<>();
+        for (int from = 0; from < rows; from += CHUNK_ROWS) {
+            int start = from;
+            int end = Math.min(rows, from + CHUNK_ROWS);
+            futures.add(pool.submit(() -> {
+                Partial partial = new Partial(k, dims);
+                for (int row = start; row < end; row++) {
+                    int offset = row * dims;
+                    int cluster = KMeansModel.nearest(centroids, k, dims, points, offset);
+                    partial.counts[cluster]++;
+                    partial.inertia += KMeansModel.squaredDistance(centroids, cluster * dims, points, offset, dims, Double.POSITIVE_INFINITY);
+                    for (int d = 0; d < dims; d++) partial.sums[cluster * dims + d] += points[offset + d];
+                }
+                return partial;
+            }));
+        }
+        Partial total = new Partial(k, dims);
+        try {
+            for (Future<Partial> future : futures) {
+                Partial partial = future.get();
+                for (int i = 0; i < total.sums.length; i++) total.sums[i] += partial.sums[i];
+                for (int c = 0; c < k; c++) total.counts[c] += partial.counts[c];
+                total.inertia += partial.inertia;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("K-means pass failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return total;
+    }
+
+    // Move each centroid to the mean of its rows (empty clusters stay put); returns the total squared shift
+    private double updateCentroids(double[] centroids, Partial partial, int dims) {
+        double shift = 0;
+        for (int c = 0; c < k; c++) {
+            if (partial.counts[c] == 0) continue;
+            for (int d = 0; d < dims; d++) {
+                double updated = partial.sums[c * dims + d] / partial.counts[c];
+                double diff = updated - centroids[c * dims + d];
+                shift += diff * diff;
+                centroids[c * dims + d] = updated;
+            }
+        }
+        return shift;
+    }
+
+    // Mini-batch k-means: assign a random batch in parallel, then move each centroid towards its
+    // batch rows with a per-centroid learning rate of 1 / (rows seen so far)
+    private int miniBatch(ForkJoinPool pool, double[] points, int dims, int rows, double[] centroids, Random random)
+            throws InterruptedException {
+        long[] seen = new long[k];
+        int[] batch = new int[batchSize];
+        int[] nearest = new int[batchSize];
+        double[] previous = new double[centroids.length];
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            iteration++;
+            for (int i = 0; i < batchSize; i++) batch[i] = random.nextInt(rows);
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < batchSize; from += CHUNK_ROWS) {
+                int start = from;
+                int end = Math.min(batchSize, from + CHUNK_ROWS);
+                futures.add(pool.submit(() -> {
+                    for (int i = start; i < end; i++) {
+                        nearest[i] = KMeansModel.nearest(centroids, k, dims, points, batch[i] * dims);
+                    }
+                }));
+            }
+            try {
+                for (Future<?> future : futures) future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("K-means mini-batch failed: " + e.getCause().getMessage(), e.getCause());
+            }
+
+            System.arraycopy(centroids, 0, previous, 0, centroids.length);
+            for (int i = 0; i < batchSize; i++) {
+                int cluster = nearest[i];
+                double rate = 1.0 / ++seen[cluster];
+                for (int d = 0; d < dims; d++) {
+                    int index = cluster * dims + d;
+                    centroids[index] += rate * (points[batch[i] * dims + d] - centroids[index]);
+                }
+            }
+            double shift = 0;
+            for (int i = 0; i < centroids.length; i++) {
+                double diff = centroids[i] - previous[i];
+                shift += diff * diff;
+            }
+            if (shift <= tolerance) break;
+        }
+        return iteration;
+    }
+}
@@ -0,0 +1,193 @@
+package functional;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Trained k-means centroids. Features are standardized ((x - offset) / scale) before distances are
+// taken; the scaling is stored with the centroids so raw customer features can be assigned directly.
+// New customers can be streamed in with update(), which moves each centroid towards the rows assigned
+// to it (sequential k-means) and tracks how well those rows fit compared to the training data. A changed
+// customer moves to its new cluster rather than being counted again, but its old values stay blended into
+// the centroid it was in: only the assignment is known, not what it was computed from. That error is what
+// the drift ratio eventually retrains away.
+public class KMeansModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int ASSIGN_CHUNK_ROWS = 1 << 14;
+
+    private final ArrayList<String> featureNames;
+    private final double[] offsets;
+    private final double[] scales;
+    private final double[] centroids;
+    private final long[] clusterSizes;
+    private final int k;
+    private final int dims;
+    private final double inertia;
+    private final int iterations;
+    private final long trainedRows;
+    private long streamedRows;
+    private double streamedSquaredDistance;
+
+    KMeansModel(List<String> featureNames, double[] offsets, double[] scales, double[] centroids,
+                long[] clusterSizes, double inertia, int iterations, long trainedRows) {
+        this.featureNames = new ArrayList<>(featureNames);
+        this.offsets = offsets;
+        this.scales = scales;
+        this.centroids = centroids;
+        this.clusterSizes = clusterSizes.clone();
+        this.k = clusterSizes.length;
+        this.dims = offsets.length;
+        this.inertia = inertia;
+        this.iterations = iterations;
+        this.trainedRows = trainedRows;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getDimensions() {
+        return dims;
+    }
+
+    public List<String> getFeatureNames() {
+        return Collections.unmodifiableList(featureNames);
+    }
+
+    // Sum of squared (standardized) distances of the training rows to their centroid
+    public double getInertia() {
+        return inertia;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public long getTrainedRows() {
+        return trainedRows;
+    }
+
+    // Customers in each cluster: the training rows plus new customers streamed in since
+    public synchronized long[] getClusterSizes() {
+        return clusterSizes.clone();
+    }
+
+    public synchronized long getStreamedRows() {
+        return streamedRows;
+    }
+
+    // Mean squared distance of the rows streamed in since training, relative to that of the training rows.
+    // Around 1 the new customers fit the clusters as well as the old ones; well above 1 they no longer do.
+    public synchronized double getDriftRatio() {
+        if (streamedRows == 0 || trainedRows == 0 || inertia == 0) return streamedRows == 0 ? 1.0 : Double.POSITIVE_INFINITY;
+        return (streamedSquaredDistance / streamedRows) / (inertia / trainedRows);
+    }
+
+    // Centroid of a cluster in the original feature units
+    public synchronized double[] centroid(int cluster) {
+        double[] raw = new double[dims];
+        for (int d = 0; d < dims; d++) {
+            raw[d] = centroids[cluster * dims + d] * scales[d] + offsets[d];
+        }
+        return raw;
+    }
+
+    // Cluster of one customer's raw feature vector
+    public synchronized int predict(double[] features) {
+        if (features.length != dims) throw new IllegalArgumentException("Expected " + dims + " features but got " + features.length);
+        double[] scaled = new double[dims];
+        scaleInto(features, 0, scaled, 0);
+        return nearest(centroids, k, dims, scaled, 0);
+    }
+
+    // Clusters of a row-major block of raw feature vectors, assigned in parallel chunks
+    public synchronized int[] assign(double[] rawPoints) {
+        int rows = rawPoints.length / dims;
+        int[] clusters = new int[rows];
+        int chunks = (rows + ASSIGN_CHUNK_ROWS - 1) / ASSIGN_CHUNK_ROWS;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            double[] scaled = new double[dims];
+            int end = Math.min(rows, (chunk + 1) * ASSIGN_CHUNK_ROWS);
+            for (int row = chunk * ASSIGN_CHUNK_ROWS; row < end; row++) {
+                scaleInto(rawPoints, row * dims, scaled, 0);
+                clusters[row] = nearest(centroids, k, dims, scaled, 0);
+            }
+        });
+        return clusters;
+    }
+
+    // Clusters of every row of a dataset holding the model's feature columns
+    public int[] assign(ColumnarDataset data) {
+        return assign(KMeansClustering.features(data, featureNames));
+    }
+
+    // Assign new or changed customers and move each centroid towards its rows with a learning rate of
+    // 1 / (rows in the cluster); returns the assignments. previousClusters (null when every row is new)
+    // holds the cluster each changed customer was counted in before, -1 for new customers.
+    public synchronized int[] update(double[] rawPoints, int[] previousClusters) {
+        int[] clusters = assign(rawPoints);
+        if (previousClusters != null && previousClusters.length != clusters.length) {
+            throw new IllegalArgumentException(previousClusters.length + " previous clusters but " + clusters.length + " rows");
+        }
+        double[] scaled = new double[dims];
+        for (int row = 0; row < clusters.length; row++) {
+            int cluster = clusters[row];
+            scaleInto(rawPoints, row * dims, scaled, 0);
+            streamedSquaredDistance += squaredDistance(centroids, cluster * dims, scaled, 0, dims, Double.POSITIVE_INFINITY);
+            int previous = previousClusters == null ? -1 : previousClusters[row];
+            if (previous >= 0 && previous < k && clusterSizes[previous] > 0) clusterSizes[previous]--;
+            double rate = 1.0 / ++clusterSizes[cluster];
+            for (int d = 0; d < dims; d++) {
+                centroids[cluster * dims + d] += rate * (scaled[d] - centroids[cluster * dims + d]);
+            }
+        }
+        streamedRows += clusters.length;
+        return clusters;
+    }
+
+    public int[] update(double[] rawPoints) {
+        return update(rawPoints, null);
+    }
+
+    public int[] update(ColumnarDataset data) {
+        return update(data, null);
+    }
+
+    public int[] update(ColumnarDataset data, int[] previousClusters) {
+        return update(KMeansClustering.features(data, featureNames), previousClusters);
+    }
+
+    void scaleInto(double[] raw, int rawOffset, double[] out, int outOffset) {
+        for (int d = 0; d < dims; d++) {
+            double value = raw[rawOffset + d];
+            out[outOffset + d] = Double.isNaN(value) ? 0.0 : (value - offsets[d]) / scales[d];
+        }
+    }
+
+    // Index of the centroid closest (squared Euclidean) to points[offset .. offset + dims)
+    static int nearest(double[] centroids, int k, int dims, double[] points, int offset) {
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            double distance = squaredDistance(centroids, c * dims, points, offset, dims, bestDistance);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // Squared distance, abandoning early once it exceeds the best distance found so far
+    static double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int dims, double bound) {
+        double sum = 0;
+        for (int d = 0; d < dims; d++) {
+            double diff = a[aOffset + d] - b[bOffset + d];
+            sum += diff * diff;
+            if (sum >= bound) return sum;
+        }
+        return sum;
+    }
+}
@@ -1,137 +1,352 @@
 package functional;
 
-import weka.associations.Apriori;
 import weka.classifiers.Evaluation;
 import weka.classifiers.functions.LinearRegression;
 import weka.classifiers.trees.RandomForest;
-import weka.clusterers.SimpleKMeans;
 import weka.core.Instances;
 import weka.core.converters.ConverterUtils;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
 
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MLAnalysis {
 
     private ReportingAndDashboards reporting;
+    private ModelRegistry modelRegistry;
+    private ParallelCrossValidator crossValidator = new ParallelCrossValidator();
+    private ChurnScoringService churnScoringService;
+    private int forestExecutionSlots = Math.max(1, Runtime.getRuntime().availableProcessors() / 10);
+    private final Map<String, RecommendationEngine> recommendationEngines = new ConcurrentHashMap<>();
+    private RecommendationEngine recommendationEngine;
+    private TrendEngine trendEngine;
+
+    private static final int DEFAULT_RECOMMENDATIONS = 5;
+    private static final int TREND_MOVING_AVERAGE_DAYS = 7;
+    private static final int TREND_SEASONAL_PERIOD_DAYS = 7;
 
     public MLAnalysis(ReportingAndDashboards reporting) {
+        this(reporting, new ModelRegistry());
+    }
+
+    public MLAnalysis(ReportingAndDashboards reporting, ModelRegistry modelRegistry) {
         this.reporting = reporting;
+        this.modelRegistry = modelRegistry;
     }
 
-    // 1. Customer Churn Prediction
+    // Executor used to run cross-validation folds concurrently
+    public void setCrossValidator(ParallelCrossValidator crossValidator) {
+        this.crossValidator = crossValidator;
+    }
+
+    // Threads each RandomForest uses to grow its trees; folds already run in parallel, so keep this small
+    public void setForestExecutionSlots(int forestExecutionSlots) {
+        if (forestExecutionSlots <= 0) throw new IllegalArgumentException("Execution slots must be positive: " + forestExecutionSlots);
+        this.forestExecutionSlots = forestExecutionSlots;
+    }
+
+    // 1. Customer Churn Prediction (served from the model registry when the data and parameters are unchanged)
     public void predictChurn(String filePath) {
         try {
-            ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
-            Instances dataset = source.getDataSet();
-            if (dataset.classIndex() == -1) dataset.setClassIndex(dataset.numAttributes() - 1);
+            String datasetHash = modelRegistry.hashFile(filePath);
+            ModelRegistry.Entry entry = modelRegistry.getOrTrain(datasetHash, newChurnModel(),
+                    () -> trainChurnModel(loadDataset(filePath, false)));
+            reporting.addChurnPredictionResults(entry.getMetrics());
+        } catch (Exception e) {
+            System.err.println("Error predicting churn: " + e.getMessage());
+        }
+    }
 
-            RandomForest model = new RandomForest();
-            model.setNumTrees(100);
-            model.buildClassifier(dataset);
+    public void predictChurn(ColumnarDataset data) {
+        try {
+            Instances dataset = toInstances(data, "churn");
+            ModelRegistry.Entry entry = modelRegistry.getOrTrain(ModelRegistry.hashInstances(dataset), newChurnModel(),
+                    () -> trainChurnModel(dataset));
+            reporting.addChurnPredictionResults(entry.getMetrics());
+        } catch (Exception e) {
+            System.err.println("Error predicting churn: " + e.getMessage());
+        }
+    }
 
-            Evaluation eval = new Evaluation(dataset);
-            eval.crossValidateModel(model, dataset, 10, new Random(1));
+    // Churn over a slice of the SQLite store; select the model's columns with the churn label last
+    public void predictChurn(AnalyticsStore store, SliceQuery slice) {
+        try {
+            Instances dataset = store.queryInstances(slice, "churn");
+            ModelRegistry.Entry entry = modelRegistry.getOrTrain(ModelRegistry.hashInstances(dataset), newChurnModel(),
+                    () -> trainChurnModel(dataset));
+            reporting.addChurnPredictionResults(entry.getMetrics());
+        } catch (Exception e) {
+            System.err.println("Error predicting churn: " + e.getMessage());
+        }
+    }
 
-            Map<String, Object> results = Map.of(
-                "Accuracy", eval.pctCorrect(),
-                "Summary", eval.toSummaryString()
-            );
-            reporting.addChurnPredictionResults(results);
+    // Load (or train once) the churn model and keep an in-process scoring service for it
+    public ChurnScoringService loadChurnScoringService(String filePath, String churnLabel) throws Exception {
+        String datasetHash = modelRegistry.hashFile(filePath);
+        ModelRegistry.Entry entry = modelRegistry.getOrTrain(datasetHash, newChurnModel(),
+                () -> trainChurnModel(loadDataset(filePath, false)));
+        if (churnScoringService != null) churnScoringService.close();
+        churnScoringService = new ChurnScoringService(entry, churnLabel);
+        return churnScoringService;
+    }
+
+    // Per-customer churn probabilities from the loaded scoring service, keyed by customer ID (first column)
+    public Map<String, Double> predictChurn(List<Map<String, String>> customers) {
+        Map<String, Double> predictions = new LinkedHashMap<>();
+        if (churnScoringService == null) {
+            System.err.println("No churn model loaded. Call loadChurnScoringService first.");
+            return predictions;
+        }
+        String idColumn = churnScoringService.featureNames().get(0);
+        for (Map<String, String> customer : customers) {
+            try {
+                predictions.put(customer.get(idColumn), churnScoringService.score(customer));
+            } catch (Exception e) {
+                System.err.println("Error scoring customer " + customer.get(idColumn) + ": " + e.getMessage());
+            }
+        }
+        return predictions;
+    }
 
+    // Churn metrics only: parallel cross-validation without building the final full-data forest
+    public void evaluateChurn(String filePath) {
+        try {
+            String datasetHash = modelRegistry.hashFile(filePath);
+            ModelRegistry.Entry cached = modelRegistry.get(modelRegistry.key(datasetHash, newChurnModel()));
+            Map<String, Object> results = cached != null
+                    ? cached.getMetrics()
+                    : churnMetrics(crossValidateChurn(loadDataset(filePath, false), null));
+            reporting.addChurnPredictionResults(results);
         } catch (Exception e) {
-            System.err.println("Error predicting churn: " + e.getMessage());
+            System.err.println("Error evaluating churn model: " + e.getMessage());
         }
     }
 
-    // 2. Customer Lifetime Value (CLV) Prediction
-    public void predictCLV(String filePath) {
+    // Registry key template; execution slots are set on training copies so they do not change the key
+    private RandomForest newChurnModel() {
+        RandomForest model = new RandomForest();
+        model.setNumIterations(100);
+        return model;
+    }
+
+    private ModelRegistry.Entry trainChurnModel(Instances dataset) throws Exception {
+        Metrics.Span span = PipelineMetrics.MODEL_TRAIN.start();
         try {
-            ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
-            Instances dataset = source.getDataSet();
             if (dataset.classIndex() == -1) dataset.setClassIndex(dataset.numAttributes() - 1);
 
-            Remove remove = new Remove();
-            remove.setAttributeIndices("1");
-            remove.setInputFormat(dataset);
-            Instances filteredData = Filter.useFilter(dataset, remove);
+            RandomForest model = newChurnModel();
+            model.setNumExecutionSlots(Runtime.getRuntime().availableProcessors());
+            Evaluation eval = crossValidateChurn(dataset, model);
+            return new ModelRegistry.Entry(model, churnMetrics(eval), dataset);
+        } finally {
+            span.close();
+        }
+    }
 
-            LinearRegression model = new LinearRegression();
-            model.buildClassifier(filteredData);
+    // 10-fold cross-validation with folds run concurrently; finalModel (if any) is trained alongside them
+    private Evaluation crossValidateChurn(Instances dataset, RandomForest finalModel) throws Exception {
+        if (dataset.classIndex() == -1) dataset.setClassIndex(dataset.numAttributes() - 1);
 
-            Evaluation eval = new Evaluation(filteredData);
-            eval.crossValidateModel(model, filteredData, 10, new Random(1));
+        RandomForest foldModel = newChurnModel();
+        foldModel.setNumExecutionSlots(forestExecutionSlots);
+        return crossValidator.crossValidate(foldModel, dataset, 10, 1, finalModel);
+    }
 
-            Map<String, Object> results = Map.of(
-                "RegressionModel", model.toString(),
-                "MAE", eval.meanAbsoluteError(),
-                "RMSE", eval.rootMeanSquaredError()
-            );
-            reporting.addCLVResults(results);
+    private Map<String, Object> churnMetrics(Evaluation eval) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("Accuracy", eval.pctCorrect());
+        results.put("Summary", eval.toSummaryString());
+        return results;
+    }
 
+    // 2. Customer Lifetime Value (CLV) Prediction
+    public void predictCLV(String filePath) {
+        try {
+            String datasetHash = modelRegistry.hashFile(filePath);
+            ModelRegistry.Entry entry = modelRegistry.getOrTrain(datasetHash, new LinearRegression(),
+                    () -> trainCLVModel(loadDataset(filePath, true)));
+            reporting.addCLVResults(entry.getMetrics());
         } catch (Exception e) {
             System.err.println("Error predicting CLV: " + e.getMessage());
         }
     }
 
-    // 3. Personalized Recommendations
-    public void generateRecommendations(String filePath, String customerID) {
+    public void predictCLV(ColumnarDataset data) {
         try {
-            ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
-            Instances data = source.getDataSet();
+            Instances dataset = InstancesAdapter.from(data).relation("clv").exclude(data.getColumnNames().get(0)).build();
+            ModelRegistry.Entry entry = modelRegistry.getOrTrain(ModelRegistry.hashInstances(dataset), new LinearRegression(),
+                    () -> trainCLVModel(dataset));
+            reporting.addCLVResults(entry.getMetrics());
+        } catch (Exception e) {
+            System.err.println("Error predicting CLV: " + e.getMessage());
+        }
+    }
 
-            Apriori apriori = new Apriori();
-            apriori.buildAssociations(data);
+    // CLV over a slice of the SQLite store; select the features with the CLV column last and leave out the ID
+    public void predictCLV(AnalyticsStore store, SliceQuery slice) {
+        try {
+            Instances dataset = store.queryInstances(slice, "clv");
+            ModelRegistry.Entry entry = modelRegistry.getOrTrain(ModelRegistry.hashInstances(dataset), new LinearRegression(),
+                    () -> trainCLVModel(dataset));
+            reporting.addCLVResults(entry.getMetrics());
+        } catch (Exception e) {
+            System.err.println("Error predicting CLV: " + e.getMessage());
+        }
+    }
 
-            // Filter recommendations for the specific customer
-            List<String> customerProducts = getCustomerProducts(data, customerID);
-            List<String> recommendations = filterRecommendations(apriori, customerProducts);
+    // Expects the customer ID already projected out (see loadDataset)
+    private ModelRegistry.Entry trainCLVModel(Instances dataset) throws Exception {
+        Metrics.Span span = PipelineMetrics.MODEL_TRAIN.start();
+        try {
+            if (dataset.classIndex() == -1) dataset.setClassIndex(dataset.numAttributes() - 1);
+
+            LinearRegression model = new LinearRegression();
+            Evaluation eval = crossValidator.crossValidate(new LinearRegression(), dataset, 10, 1, model);
+
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("RegressionModel", model.toString());
+            results.put("MAE", eval.meanAbsoluteError());
+            results.put("RMSE", eval.rootMeanSquaredError());
+            return new ModelRegistry.Entry(model, results, dataset);
+        } finally {
+            span.close();
+        }
+    }
 
-            reporting.addRecommendations(customerID, recommendations);
+    // Delimited files come from their columnar snapshot; other formats (ARFF, ...) go through Weka's loaders.
+    // dropIdColumn leaves out the first column, the customer ID, while building rather than filtering a copy.
+    private Instances loadDataset(String filePath, boolean dropIdColumn) throws Exception {
+        String name = filePath.toLowerCase();
+        if (name.endsWith(".csv") || name.endsWith(".txt")) {
+            ColumnarDataset data = DatasetCache.shared().load(Paths.get(filePath), name.endsWith(".txt") ? '\t' : ',');
+            InstancesAdapter adapter = InstancesAdapter.from(data).relation(Paths.get(filePath).getFileName().toString());
+            if (dropIdColumn) adapter.exclude(data.getColumnNames().get(0));
+            return adapter.build();
+        }
+        ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
+        Instances dataset = source.getDataSet();
+        if (dropIdColumn) dataset.deleteAttributeAt(0);
+        return dataset;
+    }
 
+    // 3. Personalized Recommendations
+    // The file holds one purchase per row: customer ID in the first column, product in the second.
+    // Rules are mined once per file content and reused for every later customer lookup.
+    public void generateRecommendations(String filePath, String customerID) {
+        try {
+            String datasetHash = modelRegistry.hashFile(filePath);
+            RecommendationEngine engine = recommendationEngines.get(datasetHash);
+            if (engine == null) {
+                ColumnarDataset data = DatasetCache.shared().load(Paths.get(filePath), ',');
+                List<String> columns = data.getColumnNames();
+                if (columns.size() < 2) throw new IllegalArgumentException("Expected customer and product columns in " + filePath);
+                engine = buildRecommendationEngine(data, columns.get(0), columns.get(1));
+                recommendationEngines.put(datasetHash, engine);
+            }
+            recommendationEngine = engine;
+            generateRecommendations(customerID);
         } catch (Exception e) {
             System.err.println("Error generating recommendations: " + e.getMessage());
         }
     }
 
-    private List<String> getCustomerProducts(Instances data, String customerID) {
-        // Mock logic for retrieving customer products
-        return List.of("ProductA", "ProductB");
+    // Recommendations from the most recently built engine, without touching the dataset again
+    public void generateRecommendations(String customerID) {
+        if (recommendationEngine == null) {
+            System.err.println("Error generating recommendations: no recommendation engine has been built");
+            return;
+        }
+        reporting.addRecommendations(customerID, recommendationEngine.recommend(customerID, DEFAULT_RECOMMENDATIONS));
+    }
+
+    // Recommendations for every customer of the most recently built engine, one report each
+    public void generateAllRecommendations() {
+        if (recommendationEngine == null) {
+            System.err.println("Error generating recommendations: no recommendation engine has been built");
+            return;
+        }
+        reporting.addRecommendations(recommendationEngine.recommendAll(DEFAULT_RECOMMENDATIONS));
     }
 
-    private List<String> filterRecommendations(Apriori apriori, List<String> customerProducts) {
-        // Mock filtering logic based on Apriori rules
-        return List.of("ProductC", "ProductD");
+    // Group purchases into customer baskets and mine the association rules once
+    public RecommendationEngine buildRecommendationEngine(ColumnarDataset data, String customerColumn,
+                                                          String productColumn) throws Exception {
+        recommendationEngine = RecommendationEngine.build(TransactionBaskets.fromColumns(data, customerColumn, productColumn));
+        return recommendationEngine;
     }
 
     // 4. Time-Series Trend Analysis
+    // Daily buckets with a 7-day moving average, week-over-week change and weekly seasonality. The timestamp
+    // is the first column named like a date or time (else the first column), the value the first other
+    // numeric column and the category the first other text column, if any.
     public void analyzeTrends(String filePath) {
         try {
-            ConverterUtils.DataSource source = new ConverterUtils.DataSource(filePath);
-            Instances dataset = source.getDataSet();
+            ColumnarDataset dataset = DatasetCache.shared().load(Paths.get(filePath), ',');
+            List<String> columns = dataset.getColumnNames();
+            String timestampColumn = columns.get(0);
+            for (String column : columns) {
+                String name = column.toLowerCase();
+                if (name.contains("date") || name.contains("time")) {
+                    timestampColumn = column;
+                    break;
+                }
+            }
+            String valueColumn = null;
+            String categoryColumn = null;
+            for (int c = 0; c < columns.size(); c++) {
+                if (columns.get(c).equals(timestampColumn)) continue;
+                if (dataset.isNumeric(c) && valueColumn == null) valueColumn = columns.get(c);
+                if (!dataset.isNumeric(c) && categoryColumn == null) categoryColumn = columns.get(c);
+            }
 
-            Remove remove = new Remove();
-            remove.setAttributeIndices("1");
-            remove.setInputFormat(dataset);
-            Instances numericData = Filter.useFilter(dataset, remove);
-
-            SimpleKMeans kMeans = new SimpleKMeans();
-            kMeans.setNumClusters(3);
-            kMeans.buildClusterer(numericData);
+            trendEngine = new TrendEngine(Duration.ofDays(1));
+            analyzeTrends(dataset, timestampColumn, categoryColumn, valueColumn);
+        } catch (Exception e) {
+            System.err.println("Error analyzing trends: " + e.getMessage());
+        }
+    }
 
-            Map<String, Object> trends = Map.of(
-                "Clusters", kMeans.getClusterCentroids()
-            );
+    // Add newly arrived events to the running trend engine and report; only buckets from the earliest new
+    // event onwards are recomputed
+    public void analyzeTrends(ColumnarDataset newEvents, String timestampColumn, String categoryColumn, String valueColumn) {
+        Metrics.Span span = PipelineMetrics.TREND_ANALYSIS.start();
+        try {
+            if (trendEngine == null) trendEngine = new TrendEngine(Duration.ofDays(1));
+            long start = System.currentTimeMillis();
+            trendEngine.add(newEvents, timestampColumn, categoryColumn, valueColumn);
+            Map<String, Object> trends = trendEngine.summary(TREND_MOVING_AVERAGE_DAYS, TREND_SEASONAL_PERIOD_DAYS);
+            System.out.println("Trend analysis of " + newEvents.getRowCount() + " events took " + (System.currentTimeMillis() - start) + " ms");
             reporting.addTrends(trends);
+        } finally {
+            span.close();
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error analyzing trends: " + e.getMessage());
+    // Trends over a slice of the SQLite store, e.g. one date range or one customer segment, without reparsing files
+    public void analyzeTrends(AnalyticsStore store, SliceQuery slice, String timestampColumn, String categoryColumn,
+                              String valueColumn) {
+        try {
+            SliceQuery columns = categoryColumn == null
+                    ? slice.project(timestampColumn, valueColumn)
+                    : slice.project(timestampColumn, categoryColumn, valueColumn);
+            analyzeTrends(store.query(columns), timestampColumn, categoryColumn, valueColumn);
+        } catch (SQLException e) {
+            System.err.println("Error querying trend data: " + e.getMessage());
         }
     }
-}
 
+    public TrendEngine getTrendEngine() {
+        return trendEngine;
+    }
 
+    // Convert the columnar dataset to Weka Instances: numeric columns map to numeric attributes,
+    // categorical columns to nominal attributes over their dictionary
+    public Instances toInstances(ColumnarDataset data, String relationName) {
+        return InstancesAdapter.from(data).relation(relationName).build();
+    }
+}
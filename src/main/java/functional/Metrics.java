@@ -0,0 +1,335 @@
+package functional;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Process-wide counters, timers and gauges. Recording is a LongAdder increment or a lock-free histogram
+// update, cheap enough to leave on everywhere; stages record once per batch or per call, never per row.
+//
+// The same registry is exposed three ways: as MBeans under "functional:type=Metrics" once enableJmx() has
+// been called, as Prometheus text (see MetricsServer), and, with -Dmetrics.jfr=true or
+// setJfrEventsEnabled(true), as a JFR event per timed span for deep profiling.
+public class Metrics {
+    public static final String JMX_DOMAIN = "functional";
+    private static final Metrics GLOBAL = new Metrics("cba");
+
+    private final String prefix;
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private volatile MBeanServer jmxServer;
+    private volatile boolean jfrEvents = Boolean.getBoolean("metrics.jfr");
+
+    // prefix is prepended to every name in the Prometheus output, e.g. cba_rows_parsed_total
+    public Metrics(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name, String help) {
+        return register(new Counter(name, help), Counter.class);
+    }
+
+    public Timer timer(String name, String help) {
+        return register(new Timer(this, name, help), Timer.class);
+    }
+
+    public Gauge gauge(String name, String help, DoubleSupplier value) {
+        return register(new Gauge(name, help, value), Gauge.class);
+    }
+
+    public Collection<Metric> getMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    // Register every metric, including ones created later, with the platform MBean server
+    public synchronized void enableJmx() {
+        if (jmxServer != null) return;
+        jmxServer = ManagementFactory.getPlatformMBeanServer();
+        metrics.values().forEach(this::registerMBean);
+    }
+
+    public void setJfrEventsEnabled(boolean enabled) {
+        this.jfrEvents = enabled;
+    }
+
+    public boolean isJfrEventsEnabled() {
+        return jfrEvents;
+    }
+
+    // Prometheus text exposition format 0.0.4; timers are summaries in seconds with a few quantiles
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics.values()) {
+            metric.writePrometheus(out, prefix + "_" + metric.getName());
+        }
+        return out.toString();
+    }
+
+    // Current values keyed by metric name, e.g. for a report's metrics section
+    public Map<String, Object> snapshot() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Metric metric : metrics.values()) metric.snapshot(values);
+        return values;
+    }
+
+    // Same name, same metric: classes may look a metric up more than once, but not as two different kinds
+    private <T extends Metric> T register(T metric, Class<T> type) {
+        if (!metric.getName().matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
+            throw new IllegalArgumentException("Metric names must be letters, digits and underscores: " + metric.getName());
+        }
+        Metric existing = metrics.putIfAbsent(metric.getName(), metric);
+        if (existing == null) {
+            if (jmxServer != null) registerMBean(metric);
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + metric.getName() + " is already a " + existing.getClass().getSimpleName());
+        }
+        return type.cast(existing);
+    }
+
+    private void registerMBean(Metric metric) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Metrics,prefix=" + prefix + ",name=" + metric.getName());
+            if (!jmxServer.isRegistered(name)) jmxServer.registerMBean(metric.mbean(), name);
+        } catch (JMException e) {
+            System.err.println("Could not register metric " + metric.getName() + " with JMX: " + e.getMessage());
+        }
+    }
+
+    public abstract static class Metric {
+        private final String name;
+        private final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        abstract void writePrometheus(StringBuilder out, String fullName);
+
+        abstract void snapshot(Map<String, Object> values);
+
+        abstract StandardMBean mbean() throws NotCompliantMBeanException;
+
+        void writeHeader(StringBuilder out, String fullName, String type) {
+            out.append("# HELP ").append(fullName).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(fullName).append(' ').append(type).append('\n');
+        }
+    }
+
+    public interface CounterMBean {
+        long getCount();
+    }
+
+    public static class Counter extends Metric implements CounterMBean {
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        void writePrometheus(StringBuilder out, String fullName) {
+            writeHeader(out, fullName + "_total", "counter");
+            out.append(fullName).append("_total ").append(getCount()).append('\n');
+        }
+
+        @Override
+        void snapshot(Map<String, Object> values) {
+            values.put(getName(), getCount());
+        }
+
+        @Override
+        StandardMBean mbean() throws NotCompliantMBeanException {
+            return new StandardMBean(this, CounterMBean.class);
+        }
+    }
+
+    public interface TimerMBean {
+        long getCount();
+
+        double getTotalMillis();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP95Millis();
+
+        double getP99Millis();
+
+        double getMaxMillis();
+    }
+
+    // Durations in a LatencyHistogram, so percentiles stay available without keeping samples
+    public static class Timer extends Metric implements TimerMBean {
+        private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+        private final Metrics registry;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Timer(Metrics registry, String name, String help) {
+            super(name, help);
+            this.registry = registry;
+        }
+
+        // Times until the span is closed. Close it in a finally block rather than try-with-resources, where
+        // the never-referenced variable draws a -Xlint:try warning:
+        //   Metrics.Span span = TIMER.start();
+        //   try { ... } finally { span.close(); }
+        public Span start() {
+            return new Span(this, registry.jfrEvents ? StageEvent.begin(getName()) : null);
+        }
+
+        public void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getTotalMillis() {
+            return histogram.getTotalNanos() / 1e6;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return histogram.getMeanNanos() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return histogram.percentileNanos(0.5) / 1e6;
+        }
+
+        @Override
+        public double getP95Millis() {
+            return histogram.percentileNanos(0.95) / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return histogram.percentileNanos(0.99) / 1e6;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return histogram.getMaxNanos() / 1e6;
+        }
+
+        @Override
+        void writePrometheus(StringBuilder out, String fullName) {
+            String seconds = fullName + "_seconds";
+            writeHeader(out, seconds, "summary");
+            for (double q : QUANTILES) {
+                out.append(seconds).append("{quantile=\"").append(q).append("\"} ")
+                        .append(histogram.percentileNanos(q) / 1e9).append('\n');
+            }
+            out.append(seconds).append("_sum ").append(histogram.getTotalNanos() / 1e9).append('\n');
+            out.append(seconds).append("_count ").append(histogram.getCount()).append('\n');
+            writeHeader(out, seconds + "_max", "gauge");
+            out.append(seconds).append("_max ").append(histogram.getMaxNanos() / 1e9).append('\n');
+        }
+
+        @Override
+        void snapshot(Map<String, Object> values) {
+            values.put(getName(), String.format("%d calls, mean %.1f ms, p95 %.1f ms, max %.1f ms",
+                    getCount(), getMeanMillis(), getP95Millis(), getMaxMillis()));
+        }
+
+        @Override
+        StandardMBean mbean() throws NotCompliantMBeanException {
+            return new StandardMBean(this, TimerMBean.class);
+        }
+    }
+
+    // One timed execution of a stage; closing it records the duration (and commits its JFR event)
+    public static class Span implements AutoCloseable {
+        private final Timer timer;
+        private final Object event;
+        private final long start = System.nanoTime();
+        private boolean closed;
+
+        Span(Timer timer, Object event) {
+            this.timer = timer;
+            this.event = event;
+        }
+
+        public long elapsedNanos() {
+            return System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            timer.record(System.nanoTime() - start);
+            if (event != null) StageEvent.commit(event);
+        }
+    }
+
+    public interface GaugeMBean {
+        double getValue();
+    }
+
+    public static class Gauge extends Metric implements GaugeMBean {
+        private final DoubleSupplier value;
+
+        Gauge(String name, String help, DoubleSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        @Override
+        public double getValue() {
+            return value.getAsDouble();
+        }
+
+        @Override
+        void writePrometheus(StringBuilder out, String fullName) {
+            writeHeader(out, fullName, "gauge");
+            out.append(fullName).append(' ').append(getValue()).append('\n');
+        }
+
+        @Override
+        void snapshot(Map<String, Object> values) {
+            values.put(getName(), getValue());
+        }
+
+        @Override
+        StandardMBean mbean() throws NotCompliantMBeanException {
+            return new StandardMBean(this, GaugeMBean.class);
+        }
+    }
+}
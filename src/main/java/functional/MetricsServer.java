@@ -0,0 +1,84 @@
+package functional;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Local HTTP endpoint serving the metrics registry in Prometheus text format at /metrics. Binds to the
+// loopback interface only; a scraper or tunnel on the same host can reach it, nothing else can.
+public class MetricsServer implements AutoCloseable {
+    public static final String PORT_PROPERTY = "metrics.port";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static MetricsServer start(Metrics metrics, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/metrics", exchange -> respond(exchange, metrics));
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Serving metrics at http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/metrics");
+        return new MetricsServer(server, executor);
+    }
+
+    // Started only when -Dmetrics.port is set; null otherwise or if the port cannot be bound
+    public static MetricsServer startIfConfigured(Metrics metrics) {
+        Integer port = Integer.getInteger(PORT_PROPERTY);
+        if (port == null) return null;
+        try {
+            return start(metrics, port);
+        } catch (IOException e) {
+            System.err.println("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private static void respond(HttpExchange exchange, Metrics metrics) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            exchange.sendResponseHeaders(200, head ? -1 : body.length);
+            if (!head) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
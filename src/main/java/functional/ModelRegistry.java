@@ -0,0 +1,194 @@
+package functional;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registry of trained models keyed by dataset content hash plus model class and hyperparameters.
+// Entries are kept in memory and serialized to disk, so an unchanged dataset is never retrained.
+public class ModelRegistry {
+    public static final String DEFAULT_DIRECTORY = "src/main/resources/models";
+    private static final String FILE_HASH_INDEX = "file-hashes.properties";
+
+    // A trained model together with the evaluation metrics computed when it was trained and the
+    // (empty) dataset structure it expects, so it can score new instances without the training data
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Classifier model;
+        private final LinkedHashMap<String, Object> metrics;
+        private final Instances header;
+        private final long trainedAt;
+
+        public Entry(Classifier model, Map<String, Object> metrics) {
+            this(model, metrics, null);
+        }
+
+        public Entry(Classifier model, Map<String, Object> metrics, Instances trainingData) {
+            this.model = model;
+            this.metrics = new LinkedHashMap<>(metrics);
+            this.header = trainingData == null ? null : new Instances(trainingData, 0);
+            this.trainedAt = System.currentTimeMillis();
+        }
+
+        public Classifier getModel() {
+            return model;
+        }
+
+        public Map<String, Object> getMetrics() {
+            return Collections.unmodifiableMap(metrics);
+        }
+
+        public Instances getHeader() {
+            return header;
+        }
+
+        public long getTrainedAt() {
+            return trainedAt;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Trainer {
+        Entry train() throws Exception;
+    }
+
+    private final Path directory;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Properties fileHashes = new Properties();
+
+    public ModelRegistry() {
+        this(DEFAULT_DIRECTORY);
+    }
+
+    public ModelRegistry(String directory) {
+        this.directory = Paths.get(directory);
+        loadFileHashIndex();
+    }
+
+    // Cache key for a dataset and an (untrained) model configuration
+    public String key(String datasetHash, Classifier template) {
+        String options = template instanceof OptionHandler
+                ? Utils.joinOptions(((OptionHandler) template).getOptions())
+                : "";
+        return Sha256.hex((datasetHash + "|" + template.getClass().getName() + " " + options).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Serve the cached entry for this dataset/configuration, training and persisting it on a miss
+    public Entry getOrTrain(String datasetHash, Classifier template, Trainer trainer) throws Exception {
+        String key = key(datasetHash, template);
+        Entry entry = get(key);
+        if (entry != null) {
+            PipelineMetrics.MODEL_CACHE_HITS.increment();
+            System.out.println("Using cached " + template.getClass().getSimpleName() + " model " + key.substring(0, 12));
+            return entry;
+        }
+        entry = trainer.train();
+        put(key, entry);
+        return entry;
+    }
+
+    public Entry get(String key) {
+        Entry entry = cache.get(key);
+        if (entry != null) return entry;
+
+        Path file = modelFile(key);
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            entry = (Entry) SerializationHelper.read(file.toString());
+            cache.put(key, entry);
+            return entry;
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable cached model " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, Entry entry) {
+        cache.put(key, entry);
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            SerializationHelper.write(temp.toString(), entry);
+            Files.move(temp, modelFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("Could not persist model " + key + ": " + e.getMessage());
+        }
+    }
+
+    public void evictAll() {
+        cache.clear();
+    }
+
+    // Content hash of a file; remembered per (path, size, modification time) so unchanged files are not re-read
+    public synchronized String hashFile(String filePath) throws IOException {
+        Path path = Paths.get(filePath).toAbsolutePath();
+        String stamp = path + "|" + Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis();
+        String known = fileHashes.getProperty(stamp);
+        if (known != null) return known;
+
+        MessageDigest digest = Sha256.newDigest();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String hash = Sha256.toHex(digest.digest());
+        fileHashes.setProperty(stamp, hash);
+        saveFileHashIndex();
+        return hash;
+    }
+
+    // Content hash of in-memory instances: header plus every attribute value
+    public static String hashInstances(Instances data) {
+        MessageDigest digest = Sha256.newDigest();
+        digest.update(new Instances(data, 0).toString().getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(8 * Math.max(1, data.numAttributes()));
+        for (Instance instance : data) {
+            buffer.clear();
+            for (int i = 0; i < instance.numAttributes(); i++) {
+                buffer.putDouble(instance.value(i));
+            }
+            digest.update(buffer.array(), 0, buffer.position());
+        }
+        return Sha256.toHex(digest.digest());
+    }
+
+    private Path modelFile(String key) {
+        return directory.resolve(key + ".model");
+    }
+
+    private void loadFileHashIndex() {
+        Path index = directory.resolve(FILE_HASH_INDEX);
+        if (!Files.isRegularFile(index)) return;
+        try (InputStream in = Files.newInputStream(index)) {
+            fileHashes.load(in);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable file hash index: " + e.getMessage());
+        }
+    }
+
+    private void saveFileHashIndex() {
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream out = Files.newOutputStream(directory.resolve(FILE_HASH_INDEX))) {
+                fileHashes.store(out, "Dataset file content hashes");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save file hash index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package functional;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.AggregateableEvaluation;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+// k-fold cross-validation with every fold trained and evaluated concurrently. Folds are cut exactly as
+// Evaluation.crossValidateModel cuts them (same randomize/stratify/trainCV sequence), so results match
+// the sequential run; per-fold evaluations are aggregated at the end.
+public class ParallelCrossValidator {
+    private static ExecutorService defaultExecutor;
+
+    private final ExecutorService executor;
+
+    public ParallelCrossValidator() {
+        this(sharedExecutor());
+    }
+
+    public ParallelCrossValidator(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // Daemon pool sized to the machine, shared by all validators that are not given an executor
+    private static synchronized ExecutorService sharedExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "cross-validation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return defaultExecutor;
+    }
+
+    public Evaluation crossValidate(Classifier template, Instances data, int folds, long seed) throws Exception {
+        return crossValidate(template, data, folds, seed, null);
+    }
+
+    // Cross-validate and, if finalModel is given, train it on the full data at the same time as the folds
+    public Evaluation crossValidate(Classifier template, Instances data, int folds, long seed,
+                                    Classifier finalModel) throws Exception {
+        if (folds < 2) throw new IllegalArgumentException("Number of folds must be at least 2: " + folds);
+
+        Random random = new Random(seed);
+        Instances randomized = new Instances(data);
+        randomized.randomize(random);
+        if (randomized.classAttribute().isNominal()) randomized.stratify(folds);
+
+        List<Future<Evaluation>> results = new ArrayList<>(folds);
+        for (int fold = 0; fold < folds; fold++) {
+            Instances train = randomized.trainCV(folds, fold, random);
+            Instances test = randomized.testCV(folds, fold);
+            Classifier copy = AbstractClassifier.makeCopy(template);
+            results.add(executor.submit(() -> {
+                copy.buildClassifier(train);
+                Evaluation evaluation = new Evaluation(randomized);
+                evaluation.setPriors(train);
+                evaluation.evaluateModel(copy, test);
+                return evaluation;
+            }));
+        }
+        Future<?> fullBuild = finalModel == null ? null : executor.submit(() -> {
+            finalModel.buildClassifier(data);
+            return null;
+        });
+
+        AggregateableEvaluation aggregate = new AggregateableEvaluation(randomized);
+        try {
+            for (Future<Evaluation> result : results) {
+                aggregate.aggregate(result.get());
+            }
+            if (fullBuild != null) fullBuild.get();
+        } catch (ExecutionException e) {
+            for (Future<Evaluation> result : results) result.cancel(true);
+            if (fullBuild != null) fullBuild.cancel(true);
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+        return aggregate;
+    }
+}
@@ -0,0 +1,146 @@
+package functional;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Parallel delimited-file parser: the file is memory-mapped, cut into line-aligned chunks and each chunk
+// is tokenized into its own columnar part on a fork-join pool. Parts are concatenated in file order.
+// Quoted fields may contain delimiters but not line breaks. Lines with more or fewer fields than the header
+// are skipped; they are counted in PipelineMetrics.ROWS_REJECTED and reported once per file.
+public class ParallelCsvParser {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final char delimiter;
+    private final int parallelism;
+    private final int chunkSize;
+
+    public ParallelCsvParser(char delimiter) {
+        this(delimiter, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelCsvParser(char delimiter, int parallelism, int chunkSize) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.delimiter = delimiter;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    public ColumnarDataset parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) throw new IOException("The file is empty: " + file);
+
+            byte[] headerLine = readHeaderLine(channel, size);
+            String[] header = new String[4096];
+            int headerEnd = headerLine[headerLine.length - 1] == '\n' ? headerLine.length - 1 : headerLine.length;
+            int columnCount = new CsvTokenizer(delimiter).tokenize(headerLine, 0, lineEnd(headerLine, 0, headerEnd), header);
+            if (columnCount <= 0) throw new IOException("Could not parse header line of " + file);
+            List<String> columns = Arrays.asList(Arrays.copyOf(header, columnCount));
+
+            List<long[]> chunks = splitIntoChunks(channel, headerLine.length, size);
+            LongAdder rejected = new LongAdder();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<Future<ColumnarDataset>> parts = new ArrayList<>(chunks.size());
+                for (long[] chunk : chunks) {
+                    parts.add(pool.submit(() -> parseChunk(channel, chunk[0], chunk[1], columns, rejected)));
+                }
+                List<ColumnarDataset> ordered = new ArrayList<>(parts.size());
+                for (Future<ColumnarDataset> part : parts) {
+                    ordered.add(part.get());
+                }
+                ColumnarDataset parsed = ordered.isEmpty() ? ColumnarDataset.empty(columns) : ColumnarDataset.concat(ordered);
+                PipelineMetrics.ROWS_PARSED.add(parsed.getRowCount());
+                long skipped = rejected.sum();
+                if (skipped > 0) {
+                    PipelineMetrics.ROWS_REJECTED.add(skipped);
+                    System.out.println("Skipped " + skipped + " lines of " + file + " without exactly "
+                            + columns.size() + " fields");
+                }
+                return parsed;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Parsing interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error parsing " + file + ": " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Header bytes including the line terminator
+    private byte[] readHeaderLine(FileChannel channel, long size) throws IOException {
+        long end = nextLineStart(channel, 0, size);
+        if (end > Integer.MAX_VALUE) throw new IOException("Header line too long");
+        byte[] header = new byte[(int) end];
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, end).get(header);
+        return header;
+    }
+
+    // Chunk boundaries [start, end) aligned so every chunk starts at the beginning of a line
+    private List<long[]> splitIntoChunks(FileChannel channel, long dataStart, long size) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long start = dataStart;
+        while (start < size) {
+            long tentativeEnd = Math.min(size, start + chunkSize);
+            long end = tentativeEnd >= size ? size : nextLineStart(channel, tentativeEnd, size);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Position just after the next '\n' at or after from, or size if there is none
+    private long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        long position = from;
+        int window = 64 * 1024;
+        while (position < size) {
+            int length = (int) Math.min(window, size - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += length;
+        }
+        return size;
+    }
+
+    // Blank lines are ignored; lines with the wrong number of fields are counted in rejected
+    private ColumnarDataset parseChunk(FileChannel channel, long start, long end, List<String> columns,
+                                       LongAdder rejected) throws IOException {
+        int length = (int) (end - start);
+        byte[] bytes = new byte[length];
+        channel.map(FileChannel.MapMode.READ_ONLY, start, length).get(bytes);
+
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter);
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(columns);
+        String[] fields = new String[columns.size()];
+        int lineStart = 0;
+        long malformed = 0;
+        while (lineStart < length) {
+            int newline = lineStart;
+            while (newline < length && bytes[newline] != '\n') newline++;
+            int contentEnd = lineEnd(bytes, lineStart, newline);
+            if (contentEnd > lineStart) {
+                if (tokenizer.tokenize(bytes, lineStart, contentEnd, fields) == fields.length) builder.addRow(fields);
+                else malformed++;
+            }
+            lineStart = newline + 1;
+        }
+        rejected.add(malformed);
+        return builder.build();
+    }
+
+    // End of the line content before the terminator at newline, dropping a trailing '\r'
+    private static int lineEnd(byte[] bytes, int lineStart, int newline) {
+        return newline > lineStart && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+    }
+}
@@ -0,0 +1,324 @@
+package functional;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Layout for the metrics reports: a title, then one "key: value" entry per metric, wrapped to the page width
+// and continued on as many pages as it takes. Values spanning several lines (Weka summaries, model output)
+// are set in Courier below their key so their columns stay aligned. Chart images (PNG or JPEG) follow the
+// metrics, each scaled to the text width.
+//
+// Fonts and their glyph widths are loaded once per rendering thread and reused for every document that
+// thread renders. PDFBox fonts cache encodings internally and are not safe to share between threads.
+// Each page's content is flushed when the page is full, and a document larger than the in-memory budget
+// spills to a scratch file instead of the heap.
+public class PdfReportTemplate {
+    public static final String DEFAULT_TITLE = "Customer Behavior Analysis Report";
+    private static final long MAIN_MEMORY_BYTES = 4L << 20;
+    private static final PdfReportTemplate DEFAULT = new PdfReportTemplate(PDRectangle.A4, 50, 11);
+
+    private final PDRectangle pageSize;
+    private final float margin;
+    private final float fontSize;
+    private final float monoSize;
+    private final float leading;
+    private final ThreadLocal<Fonts> fonts = ThreadLocal.withInitial(Fonts::new);
+
+    public PdfReportTemplate(PDRectangle pageSize, float margin, float fontSize) {
+        if (margin * 2 >= Math.min(pageSize.getWidth(), pageSize.getHeight())) {
+            throw new IllegalArgumentException("Margin " + margin + " leaves no room on the page");
+        }
+        this.pageSize = pageSize;
+        this.margin = margin;
+        this.fontSize = fontSize;
+        this.monoSize = fontSize - 2;
+        this.leading = fontSize * 1.3f;
+    }
+
+    public static PdfReportTemplate defaultTemplate() {
+        return DEFAULT;
+    }
+
+    public int render(String title, Map<String, Object> metrics, Path file) throws IOException {
+        return render(title, metrics, Collections.emptyList(), file);
+    }
+
+    // Written to a temporary file and moved into place, so a failed render never leaves half a report.
+    // Returns the number of pages.
+    public int render(String title, Map<String, Object> metrics, List<Path> charts, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        // Per-thread name: concurrent renders of the same report never share a temporary file
+        Path temp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            int pages;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+                pages = render(title, metrics, charts, out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return pages;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public int render(String title, Map<String, Object> metrics, List<Path> charts, OutputStream out) throws IOException {
+        try (PDDocument document = new PDDocument(MemoryUsageSetting.setupMixed(MAIN_MEMORY_BYTES))) {
+            PDDocumentInformation info = document.getDocumentInformation();
+            info.setTitle(title);
+            info.setProducer("Customer Behaviour Analysis System");
+
+            int pages;
+            try (PageWriter writer = new PageWriter(document, fonts.get(), title)) {
+                for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+                    writer.entry(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+                for (Path chart : charts) {
+                    writer.image(chart);
+                }
+                pages = writer.pages;
+            }
+            document.save(out);
+            return pages;
+        }
+    }
+
+    // Greedy word wrap; a word wider than a whole line is broken between characters
+    static List<String> wrap(String text, FontMetrics font, float size, float firstWidth, float width) {
+        List<String> lines = new ArrayList<>();
+        float available = firstWidth;
+        int lineStart = 0;
+        int lastBreak = -1;
+        float lineWidth = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            float w = font.width(c) * size;
+            if (c == ' ') lastBreak = i;
+            if (lineWidth + w > available && i > lineStart) {
+                int end = lastBreak > lineStart ? lastBreak : i;
+                lines.add(text.substring(lineStart, end));
+                lineStart = end < text.length() && text.charAt(end) == ' ' ? end + 1 : end;
+                lastBreak = -1;
+                available = width;
+                lineWidth = font.width(text, lineStart, i + 1) * size;
+                continue;
+            }
+            lineWidth += w;
+        }
+        lines.add(text.substring(lineStart));
+        return lines;
+    }
+
+    // Glyph widths of one font for the characters it can encode; anything else is shown as '?'
+    static final class FontMetrics {
+        // WinAnsiEncoding characters outside Latin-1
+        private static final String WIN_ANSI_EXTRAS = "\u20AC\u201A\u0192\u201E\u2026\u2020\u2021\u02C6\u2030\u0160\u2039\u0152\u017D"
+                + "\u2018\u2019\u201C\u201D\u2022\u2013\u2014\u02DC\u2122\u0161\u203A\u0153\u017E\u0178";
+
+        final PDType1Font font;
+        private final float[] latin1 = new float[256];
+        private final Map<Character, Float> extras = new HashMap<>();
+
+        FontMetrics(String baseFont) {
+            COSDictionary dictionary = new COSDictionary();
+            dictionary.setItem(COSName.TYPE, COSName.FONT);
+            dictionary.setItem(COSName.SUBTYPE, COSName.TYPE1);
+            dictionary.setName(COSName.BASE_FONT, baseFont);
+            dictionary.setItem(COSName.ENCODING, COSName.WIN_ANSI_ENCODING);
+            try {
+                font = new PDType1Font(dictionary);
+                // Measuring every character also fills the font's own encoding cache before first use
+                for (char c = 0; c < 256; c++) latin1[c] = measure(c);
+                for (char c : WIN_ANSI_EXTRAS.toCharArray()) {
+                    float w = measure(c);
+                    if (!Float.isNaN(w)) extras.put(c, w);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load font " + baseFont, e);
+            }
+        }
+
+        private float measure(char c) throws IOException {
+            if (Character.isISOControl(c)) return Float.NaN;
+            try {
+                return font.getStringWidth(String.valueOf(c)) / 1000f;
+            } catch (IllegalArgumentException e) {
+                return Float.NaN;
+            }
+        }
+
+        boolean canEncode(char c) {
+            return c < 256 ? !Float.isNaN(latin1[c]) : extras.containsKey(c);
+        }
+
+        // Width in text space units per point of font size
+        float width(char c) {
+            if (c < 256) {
+                float w = latin1[c];
+                return Float.isNaN(w) ? latin1['?'] : w;
+            }
+            Float w = extras.get(c);
+            return w == null ? latin1['?'] : w;
+        }
+
+        float width(String text, int from, int to) {
+            float total = 0;
+            for (int i = from; i < to; i++) total += width(text.charAt(i));
+            return total;
+        }
+
+        // Tabs become spaces and characters the font cannot show become '?'
+        String sanitize(String text) {
+            StringBuilder out = null;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (canEncode(c)) {
+                    if (out != null) out.append(c);
+                    continue;
+                }
+                if (out == null) out = new StringBuilder(text.length() + 8).append(text, 0, i);
+                if (c == '\t') out.append("    ");
+                else if (c != '\r') out.append('?');
+            }
+            return out == null ? text : out.toString();
+        }
+    }
+
+    private static final class Fonts {
+        final FontMetrics regular = new FontMetrics("Helvetica");
+        final FontMetrics bold = new FontMetrics("Helvetica-Bold");
+        final FontMetrics mono = new FontMetrics("Courier");
+    }
+
+    // Lays lines out top to bottom, starting a new page (with a continuation header and page number)
+    // whenever the current one is full
+    private final class PageWriter implements Closeable {
+        private final PDDocument document;
+        private final Fonts fonts;
+        private final String title;
+        private final float textWidth = pageSize.getWidth() - 2 * margin;
+        private PDPageContentStream stream;
+        private float y;
+        private int pages;
+
+        PageWriter(PDDocument document, Fonts fonts, String title) throws IOException {
+            this.document = document;
+            this.fonts = fonts;
+            this.title = fonts.bold.sanitize(title.replace('\n', ' '));
+            newPage();
+        }
+
+        void entry(String key, String value) throws IOException {
+            String label = fonts.bold.sanitize(key.replace('\n', ' ')) + ": ";
+            if (value.indexOf('\n') >= 0) {
+                // Preformatted output: key on its own line, then every line as is in the monospaced font
+                for (String line : wrap(label, fonts.bold, fontSize, textWidth, textWidth)) line(fonts.bold, fontSize, 0, line);
+                for (String raw : value.split("\r?\n", -1)) {
+                    for (String line : wrap(fonts.mono.sanitize(raw), fonts.mono, monoSize, textWidth - 10, textWidth - 10)) {
+                        line(fonts.mono, monoSize, 10, line);
+                    }
+                }
+                return;
+            }
+            float labelWidth = fonts.bold.width(label, 0, label.length()) * fontSize;
+            if (labelWidth > textWidth / 2) {
+                for (String line : wrap(label, fonts.bold, fontSize, textWidth, textWidth)) line(fonts.bold, fontSize, 0, line);
+                labelWidth = 0;
+                label = null;
+            }
+            List<String> lines = wrap(fonts.regular.sanitize(value), fonts.regular, fontSize, textWidth - labelWidth, textWidth - 20);
+            for (int i = 0; i < lines.size(); i++) {
+                advance(leading);
+                stream.beginText();
+                if (i == 0 && label != null) {
+                    stream.setFont(fonts.bold.font, fontSize);
+                    stream.newLineAtOffset(margin, y);
+                    stream.showText(label);
+                    stream.setFont(fonts.regular.font, fontSize);
+                    stream.newLineAtOffset(labelWidth, 0);
+                } else {
+                    stream.setFont(fonts.regular.font, fontSize);
+                    stream.newLineAtOffset(margin + (i == 0 ? 0 : 20), y);
+                }
+                stream.showText(lines.get(i));
+                stream.endText();
+            }
+        }
+
+        // Scaled to the text width (never enlarged past 72 dpi), and to the page height if it is very tall
+        void image(Path file) throws IOException {
+            String name = file.getFileName().toString().toLowerCase();
+            if (!name.endsWith(".png") && !name.endsWith(".jpg") && !name.endsWith(".jpeg")) {
+                throw new IOException("Only PNG or JPEG charts can be embedded in a PDF: " + file);
+            }
+            PDImageXObject image = PDImageXObject.createFromFileByContent(file.toFile(), document);
+            float scale = Math.min(1f, textWidth / image.getWidth());
+            scale = Math.min(scale, (pageSize.getHeight() - 2 * margin - 3 * leading) / image.getHeight());
+            float width = image.getWidth() * scale;
+            float height = image.getHeight() * scale;
+            advance(leading / 2 + height);
+            stream.drawImage(image, margin + (textWidth - width) / 2, y, width, height);
+        }
+
+        private void line(FontMetrics font, float size, float indent, String text) throws IOException {
+            advance(size * 1.3f);
+            if (text.isEmpty()) return;
+            stream.beginText();
+            stream.setFont(font.font, size);
+            stream.newLineAtOffset(margin + indent, y);
+            stream.showText(text);
+            stream.endText();
+        }
+
+        private void advance(float height) throws IOException {
+            if (y - height < margin) newPage();
+            y -= height;
+        }
+
+        private void newPage() throws IOException {
+            finishPage();
+            PDPage page = new PDPage(pageSize);
+            document.addPage(page);
+            stream = new PDPageContentStream(document, page);
+            pages++;
+            y = pageSize.getHeight() - margin;
+            String heading = pages == 1 ? title : title + " (continued)";
+            for (String line : wrap(heading, fonts.bold, fontSize + 3, textWidth, textWidth)) {
+                line(fonts.bold, fontSize + 3, 0, line);
+            }
+            y -= leading / 2;
+        }
+
+        private void finishPage() throws IOException {
+            if (stream == null) return;
+            String footer = "Page " + pages;
+            stream.beginText();
+            stream.setFont(fonts.regular.font, monoSize);
+            stream.newLineAtOffset(pageSize.getWidth() - margin - fonts.regular.width(footer, 0, footer.length()) * monoSize, margin / 2);
+            stream.showText(footer);
+            stream.endText();
+            stream.close();
+            stream = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finishPage();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package functional;
+
+import java.lang.management.ManagementFactory;
+
+// The stage metrics recorded across ingestion, cleaning, storage, analysis, training and reporting, all in
+// the global registry so one scrape or MBean browser shows the whole pipeline
+public final class PipelineMetrics {
+    private static final Metrics METRICS = Metrics.global();
+
+    // Ingestion
+    public static final Metrics.Counter ROWS_PARSED = METRICS.counter("rows_parsed", "Rows parsed from delimited files");
+    public static final Metrics.Counter ROWS_REJECTED = METRICS.counter("rows_rejected", "Lines of delimited files skipped for a wrong number of fields");
+    public static final Metrics.Timer IMPORT = METRICS.timer("import", "Time to import one file into memory");
+
+    // Cleaning
+    public static final Metrics.Counter ROWS_CLEANED = METRICS.counter("rows_cleaned", "Rows passed through the cleaning pipeline");
+    public static final Metrics.Counter ROWS_REMOVED = METRICS.counter("rows_removed", "Rows dropped by cleaning");
+    public static final Metrics.Timer CLEAN = METRICS.timer("clean", "Time to run the cleaning pipeline over a dataset");
+
+    // Storage
+    public static final Metrics.Counter ROWS_STORED = METRICS.counter("rows_stored", "Rows committed to SQLite");
+    public static final Metrics.Timer BATCH_INSERT = METRICS.timer("batch_insert", "Time to execute and commit one insert batch");
+    public static final Metrics.Timer QUERY = METRICS.timer("query", "Time to run an analytics query and read its rows");
+
+    // Analysis and models
+    public static final Metrics.Timer SEGMENTATION = METRICS.timer("segmentation", "Time to segment customers");
+    public static final Metrics.Timer BASKET_MINING = METRICS.timer("basket_mining", "Time to mine market basket rules");
+    public static final Metrics.Timer TREND_ANALYSIS = METRICS.timer("trend_analysis", "Time to compute trends");
+    public static final Metrics.Timer MODEL_TRAIN = METRICS.timer("model_train", "Time to train and evaluate a model");
+    public static final Metrics.Counter MODEL_CACHE_HITS = METRICS.counter("model_cache_hits", "Models served from the registry without training");
+
+    // Reporting
+    public static final Metrics.Timer REPORT_RENDER = METRICS.timer("report_render", "Time to render and write one report");
+    public static final Metrics.Timer CHART_RENDER = METRICS.timer("chart_render", "Time to draw one chart offscreen and write the image");
+    public static final Metrics.Counter CHART_CACHE_HITS = METRICS.counter("chart_cache_hits", "Charts served from the rendered-image cache");
+
+    // JVM
+    public static final Metrics.Gauge HEAP_USED = METRICS.gauge("heap_used_bytes", "Heap memory in use",
+            () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+
+    private PipelineMetrics() {
+    }
+
+    // The registry holding these metrics, with all of them registered (so a scrape before the first
+    // import already lists every stage)
+    public static Metrics registry() {
+        return METRICS;
+    }
+}
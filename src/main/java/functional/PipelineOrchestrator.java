@@ -0,0 +1,374 @@
+package functional;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs a pipeline as a DAG: each stage declares the values it reads and writes, a stage starts as soon as
+// everything it reads has been written, and stages with no path between them run concurrently. Values
+// are handed over in memory, so a later stage never re-reads a file an earlier one already loaded.
+//
+// A failed stage only takes down the stages that need its output: they are skipped, everything else
+// still runs. Stages that can do without an input read it with readsIfPresent, e.g. a report that
+// should still be written when one of the analyses feeding it failed.
+public class PipelineOrchestrator {
+    public static final int DEFAULT_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    public enum Status { SUCCEEDED, FAILED, SKIPPED }
+
+    // A named, typed value passed between stages
+    public static final class Key<T> {
+        private final String name;
+        private final Class<T> type;
+
+        private Key(String name, Class<T> type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public static <T> Key<T> of(String name, Class<T> type) {
+            return new Key<>(name, type);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run(Context context) throws Exception;
+    }
+
+    // What a running stage sees: the values it declared as inputs, and a place to put its outputs
+    public final class Context {
+        private final StageDefinition stage;
+
+        private Context(StageDefinition stage) {
+            this.stage = stage;
+        }
+
+        // A declared input; null only for a readsIfPresent input whose producer failed or was skipped
+        public <T> T get(Key<T> key) {
+            if (!stage.inputs.contains(key) && !stage.optionalInputs.contains(key)) {
+                throw new IllegalStateException("Stage '" + stage.name + "' did not declare input " + key);
+            }
+            return key.type.cast(values.get(key));
+        }
+
+        public <T> void put(Key<T> key, T value) {
+            if (!stage.outputs.contains(key)) {
+                throw new IllegalStateException("Stage '" + stage.name + "' did not declare output " + key);
+            }
+            if (value == null) throw new IllegalArgumentException("Stage '" + stage.name + "' wrote null to " + key);
+            values.put(key, value);
+        }
+    }
+
+    // Declares one stage: orchestrator.stage("clean").reads(RAW).writes(CLEANED).run(context -> ...)
+    public final class StageDefinition {
+        private final String name;
+        private final Set<Key<?>> inputs = new LinkedHashSet<>();
+        private final Set<Key<?>> optionalInputs = new LinkedHashSet<>();
+        private final Set<Key<?>> outputs = new LinkedHashSet<>();
+        private Action action;
+
+        private StageDefinition(String name) {
+            this.name = name;
+        }
+
+        public StageDefinition reads(Key<?>... keys) {
+            inputs.addAll(Arrays.asList(keys));
+            return this;
+        }
+
+        // Waits for the producers of these keys, but runs even if they fail
+        public StageDefinition readsIfPresent(Key<?>... keys) {
+            optionalInputs.addAll(Arrays.asList(keys));
+            return this;
+        }
+
+        public StageDefinition writes(Key<?>... keys) {
+            outputs.addAll(Arrays.asList(keys));
+            return this;
+        }
+
+        public PipelineOrchestrator run(Action action) {
+            this.action = action;
+            return PipelineOrchestrator.this;
+        }
+    }
+
+    public static final class StageResult {
+        private final String name;
+        private final Status status;
+        private final long millis;
+        private final Throwable error;
+
+        private StageResult(String name, Status status, long millis, Throwable error) {
+            this.name = name;
+            this.status = status;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + status + (status == Status.SKIPPED ? "" : " in " + millis + " ms")
+                    + (error == null ? "" : " (" + error + ")");
+        }
+    }
+
+    public final class Result {
+        private final Map<String, StageResult> stages;
+        private final long millis;
+
+        private Result(Map<String, StageResult> stages, long millis) {
+            this.stages = stages;
+            this.millis = millis;
+        }
+
+        public <T> T get(Key<T> key) {
+            return key.type.cast(values.get(key));
+        }
+
+        // In declaration order
+        public List<StageResult> getStages() {
+            return new ArrayList<>(stages.values());
+        }
+
+        public StageResult getStage(String name) {
+            return stages.get(name);
+        }
+
+        public boolean isSuccessful() {
+            return stages.values().stream().allMatch(stage -> stage.status == Status.SUCCEEDED);
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        // Stage outcomes for the reports: PipelineTimeMs plus one "Stage <name>" entry per stage
+        public Map<String, Object> toMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("PipelineTimeMs", millis);
+            stages.values().forEach(stage -> metrics.put("Stage " + stage.name, stage.status
+                    + (stage.status == Status.SKIPPED ? "" : " in " + stage.millis + " ms")));
+            return metrics;
+        }
+    }
+
+    private final Map<String, StageDefinition> definitions = new LinkedHashMap<>();
+    private final Map<Key<?>, Object> values = new ConcurrentHashMap<>();
+    private final Map<Key<?>, Object> provided = new LinkedHashMap<>();
+    private final int concurrency;
+
+    public PipelineOrchestrator() {
+        this(DEFAULT_CONCURRENCY);
+    }
+
+    // At most concurrency stages run at a time
+    public PipelineOrchestrator(int concurrency) {
+        if (concurrency <= 0) throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        this.concurrency = concurrency;
+    }
+
+    public StageDefinition stage(String name) {
+        if (definitions.containsKey(name)) throw new IllegalArgumentException("Duplicate stage: " + name);
+        StageDefinition stage = new StageDefinition(name);
+        definitions.put(name, stage);
+        return stage;
+    }
+
+    // A value available to every stage from the start, e.g. the input file
+    public <T> PipelineOrchestrator provide(Key<T> key, T value) {
+        provided.put(key, value);
+        return this;
+    }
+
+    // Blocks until every stage has succeeded, failed or been skipped
+    public Result run() throws InterruptedException {
+        Map<Key<?>, StageDefinition> producers = validate();
+        values.clear();
+        values.putAll(provided);
+
+        // Stage -> stages waiting on it; a stage is ready once every producer it waits on has finished
+        Map<String, List<StageDefinition>> dependents = new HashMap<>();
+        Map<String, Integer> waitingOn = new HashMap<>();
+        for (StageDefinition stage : definitions.values()) {
+            Set<String> upstream = new HashSet<>();
+            for (Key<?> key : union(stage.inputs, stage.optionalInputs)) {
+                StageDefinition producer = producers.get(key);
+                if (producer != null) upstream.add(producer.name);
+            }
+            for (String producer : upstream) dependents.computeIfAbsent(producer, p -> new ArrayList<>()).add(stage);
+            waitingOn.put(stage.name, upstream.size());
+        }
+
+        long start = System.nanoTime();
+        Map<String, StageResult> results = new ConcurrentHashMap<>();
+        BlockingQueue<StageResult> finished = new LinkedBlockingQueue<>();
+        Semaphore slots = new Semaphore(concurrency);
+        ExecutorService executor = newExecutor(concurrency);
+        try {
+            for (StageDefinition stage : definitions.values()) {
+                if (waitingOn.get(stage.name) == 0) submit(executor, slots, stage, finished);
+            }
+            int remaining = definitions.size();
+            while (remaining > 0) {
+                StageResult result = finished.take();
+                results.put(result.name, result);
+                remaining--;
+                for (StageDefinition dependent : dependents.getOrDefault(result.name, Collections.emptyList())) {
+                    if (waitingOn.merge(dependent.name, -1, Integer::sum) > 0) continue;
+                    StageResult missing = missingInput(dependent, producers, results);
+                    if (missing == null) {
+                        submit(executor, slots, dependent, finished);
+                    } else {
+                        finished.add(new StageResult(dependent.name, Status.SKIPPED, 0, null));
+                        System.err.println("Skipping stage '" + dependent.name + "': stage '" + missing.name + "' " + missing.status.name().toLowerCase());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, StageResult> ordered = new LinkedHashMap<>();
+        definitions.keySet().forEach(name -> ordered.put(name, results.get(name)));
+        return new Result(ordered, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void submit(ExecutorService executor, Semaphore slots, StageDefinition stage, BlockingQueue<StageResult> finished) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            Throwable error = null;
+            try {
+                slots.acquire();
+                Metrics.Span span = stageTimer(stage.name).start();
+                try {
+                    start = System.nanoTime();
+                    stage.action.run(new Context(stage));
+                    for (Key<?> output : stage.outputs) {
+                        if (!values.containsKey(output)) throw new IllegalStateException("Stage did not write " + output);
+                    }
+                } finally {
+                    span.close();
+                    slots.release();
+                }
+            } catch (Throwable e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                error = e;
+                System.err.println("Stage '" + stage.name + "' failed: " + e);
+            }
+            finished.add(new StageResult(stage.name, error == null ? Status.SUCCEEDED : Status.FAILED,
+                    (System.nanoTime() - start) / 1_000_000, error));
+        });
+    }
+
+    // The first required input whose producer did not succeed
+    private static StageResult missingInput(StageDefinition stage, Map<Key<?>, StageDefinition> producers,
+                                            Map<String, StageResult> results) {
+        for (Key<?> key : stage.inputs) {
+            StageDefinition producer = producers.get(key);
+            if (producer == null) continue;
+            StageResult result = results.get(producer.name);
+            if (result.status != Status.SUCCEEDED) return result;
+        }
+        return null;
+    }
+
+    // Every stage has an action, every key one producer, every required input a source, and no cycles
+    private Map<Key<?>, StageDefinition> validate() {
+        Map<Key<?>, StageDefinition> producers = new HashMap<>();
+        for (StageDefinition stage : definitions.values()) {
+            if (stage.action == null) throw new IllegalStateException("Stage '" + stage.name + "' has no action");
+            for (Key<?> key : stage.outputs) {
+                StageDefinition previous = producers.put(key, stage);
+                if (previous != null || provided.containsKey(key)) {
+                    throw new IllegalStateException(key + " is written by more than one stage");
+                }
+            }
+        }
+        for (StageDefinition stage : definitions.values()) {
+            for (Key<?> key : union(stage.inputs, stage.optionalInputs)) {
+                if (!producers.containsKey(key) && !provided.containsKey(key)) {
+                    throw new IllegalStateException("Stage '" + stage.name + "' reads " + key + ", which nothing provides");
+                }
+            }
+        }
+
+        // Kahn's algorithm: anything left unvisited sits on a cycle
+        Map<String, Integer> indegree = new HashMap<>();
+        Map<String, List<String>> edges = new HashMap<>();
+        for (StageDefinition stage : definitions.values()) {
+            indegree.putIfAbsent(stage.name, 0);
+            for (Key<?> key : union(stage.inputs, stage.optionalInputs)) {
+                StageDefinition producer = producers.get(key);
+                if (producer == null) continue;
+                edges.computeIfAbsent(producer.name, p -> new ArrayList<>()).add(stage.name);
+                indegree.merge(stage.name, 1, Integer::sum);
+            }
+        }
+        Deque<String> ready = new ArrayDeque<>();
+        indegree.forEach((name, degree) -> {
+            if (degree == 0) ready.add(name);
+        });
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            String name = ready.poll();
+            visited++;
+            for (String next : edges.getOrDefault(name, Collections.emptyList())) {
+                if (indegree.merge(next, -1, Integer::sum) == 0) ready.add(next);
+            }
+        }
+        if (visited < definitions.size()) throw new IllegalStateException("Pipeline stages form a cycle");
+        return producers;
+    }
+
+    private static Set<Key<?>> union(Set<Key<?>> a, Set<Key<?>> b) {
+        Set<Key<?>> all = new LinkedHashSet<>(a);
+        all.addAll(b);
+        return all;
+    }
+
+    private static Metrics.Timer stageTimer(String stage) {
+        String name = "stage_" + stage.toLowerCase().replaceAll("[^a-z0-9]+", "_");
+        return PipelineMetrics.registry().timer(name, "Time in pipeline stage '" + stage + "'");
+    }
+
+    // Virtual threads on Java 21+, where a stage blocked on I/O costs no platform thread; a fixed pool
+    // before that. Either way the semaphore in submit bounds how many stages run at once.
+    private static ExecutorService newExecutor(int concurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "pipeline-stage");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
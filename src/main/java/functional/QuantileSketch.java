@@ -0,0 +1,169 @@
+package functional;
+
+import java.util.Arrays;
+
+// KLL quantile sketch: bounded-memory, mergeable estimate of quantiles over a stream of doubles.
+// Level h holds items that each stand for 2^h original values; a full level is sorted and every other
+// item is promoted to the level above. Compaction is lazy: it only runs when the sketch as a whole is
+// full, so most updates are a plain array append. Rank error is roughly 1.7 / k with high probability.
+public class QuantileSketch {
+    public static final int DEFAULT_K = 200;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private int retained;
+    private int[] capacities;
+    private int totalCapacity;
+    private long coinState = 0x9E3779B97F4A7C15L;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("k must be at least 8: " + k);
+        this.k = k;
+        this.levels[0] = new double[k];
+        updateCapacities();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void update(double value) {
+        if (Double.isNaN(value)) return;
+        append(0, value);
+        count++;
+        if (retained >= totalCapacity()) compress();
+    }
+
+    // Fold another sketch into this one; the other sketch is left unchanged
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.k != k) throw new IllegalArgumentException("Cannot merge sketches with different k");
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        while (retained >= totalCapacity()) compress();
+        return this;
+    }
+
+    // Estimated value at quantile q in [0, 1]; exact (with interpolation) until the first compaction
+    public double quantile(double q) {
+        if (q < 0 || q > 1) throw new IllegalArgumentException("Quantile must be in [0, 1]: " + q);
+        if (count == 0) return Double.NaN;
+
+        if (levels.length == 1) {
+            double[] sorted = Arrays.copyOf(levels[0], sizes[0]);
+            Arrays.sort(sorted);
+            double position = q * (sorted.length - 1);
+            int lower = (int) Math.floor(position);
+            int upper = (int) Math.ceil(position);
+            return sorted[lower] + (sorted[upper] - sorted[lower]) * (position - lower);
+        }
+
+        double[] values = new double[retained];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n++] = levels[h][i];
+            }
+        }
+        Integer[] order = new Integer[retained];
+        for (int i = 0; i < retained; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        long[] weights = new long[retained];
+        n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) weights[n++] = 1L << h;
+        }
+
+        double target = q * count;
+        long cumulative = 0;
+        for (int index : order) {
+            cumulative += weights[index];
+            if (cumulative >= target) return values[index];
+        }
+        return values[order[retained - 1]];
+    }
+
+    // Number of values kept in memory, independent of how many were added
+    public int retainedItems() {
+        return retained;
+    }
+
+    private int capacity(int level) {
+        return capacities[level];
+    }
+
+    private int totalCapacity() {
+        return totalCapacity;
+    }
+
+    // Capacities depend only on the number of levels, so they are recomputed when a level is added
+    private void updateCapacities() {
+        capacities = new int[levels.length];
+        totalCapacity = 0;
+        for (int h = 0; h < levels.length; h++) {
+            int depth = levels.length - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    private void append(int level, double value) {
+        while (level >= levels.length) addLevel();
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(MIN_CAPACITY, levels[level].length * 2));
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        levels[levels.length - 1] = new double[MIN_CAPACITY];
+        updateCapacities();
+    }
+
+    // Compact the lowest level that is at or over its capacity
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < capacity(h)) continue;
+
+            double[] level = levels[h];
+            int size = sizes[h];
+            Arrays.sort(level, 0, size);
+            // an odd leftover stays on this level so total weight is preserved exactly
+            int pairs = size / 2;
+            int offset = nextCoin();
+            for (int i = 0; i < pairs; i++) {
+                append(h + 1, level[2 * i + offset]);
+            }
+            if (size % 2 == 1) {
+                level[0] = level[size - 1];
+                sizes[h] = 1;
+            } else {
+                sizes[h] = 0;
+            }
+            retained -= size - sizes[h];
+            return;
+        }
+    }
+
+    private int nextCoin() {
+        coinState ^= coinState << 13;
+        coinState ^= coinState >>> 7;
+        coinState ^= coinState << 17;
+        return (int) (coinState & 1);
+    }
+}
@@ -0,0 +1,202 @@
+package functional;
+
+import weka.associations.Apriori;
+import weka.associations.AssociationRule;
+import weka.associations.Item;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.util.*;
+
+// Product recommendations from association rules mined once over all customer baskets.
+// Rules are indexed by the rarest item of their antecedent, so a lookup only visits rules whose
+// rarest item the customer owns and checks the rest of the antecedent by binary search.
+public class RecommendationEngine {
+    public static final double DEFAULT_MIN_SUPPORT = 0.01;
+    public static final double DEFAULT_MIN_CONFIDENCE = 0.3;
+    public static final int DEFAULT_MAX_RULES = 10000;
+
+    private final TransactionBaskets baskets;
+    private final List<BasketRule> rules;
+    private final int[][] antecedents;
+    private final int[][] consequents;
+    private final double[] confidences;
+    private final int[][] rulesByItem;
+
+    public RecommendationEngine(TransactionBaskets baskets, List<BasketRule> rules) {
+        this.baskets = baskets;
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.antecedents = new int[rules.size()][];
+        this.consequents = new int[rules.size()][];
+        this.confidences = new double[rules.size()];
+
+        int[] itemFrequency = new int[baskets.itemCount()];
+        for (int b = 0; b < baskets.size(); b++) {
+            for (int item : baskets.basket(b)) itemFrequency[item]++;
+        }
+
+        int[] bucketSizes = new int[baskets.itemCount()];
+        int[] indexItem = new int[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            BasketRule rule = rules.get(r);
+            antecedents[r] = itemIds(rule.getAntecedent());
+            consequents[r] = itemIds(rule.getConsequent());
+            confidences[r] = rule.getConfidence();
+
+            int rarest = -1;
+            for (int item : antecedents[r]) {
+                if (item < 0) {
+                    rarest = -1; // antecedent item never bought: the rule can never fire
+                    break;
+                }
+                if (rarest == -1 || itemFrequency[item] < itemFrequency[rarest]) rarest = item;
+            }
+            indexItem[r] = rarest;
+            if (rarest >= 0) bucketSizes[rarest]++;
+        }
+
+        this.rulesByItem = new int[baskets.itemCount()][];
+        for (int item = 0; item < rulesByItem.length; item++) {
+            rulesByItem[item] = new int[bucketSizes[item]];
+            bucketSizes[item] = 0;
+        }
+        for (int r = 0; r < indexItem.length; r++) {
+            int item = indexItem[r];
+            if (item >= 0) rulesByItem[item][bucketSizes[item]++] = r;
+        }
+    }
+
+    // Mine rules with Weka's Apriori using the default thresholds
+    public static RecommendationEngine build(TransactionBaskets baskets) throws Exception {
+        return build(baskets, DEFAULT_MIN_SUPPORT, DEFAULT_MIN_CONFIDENCE, DEFAULT_MAX_RULES);
+    }
+
+    public static RecommendationEngine build(TransactionBaskets baskets, double minSupport,
+                                             double minConfidence, int maxRules) throws Exception {
+        long start = System.currentTimeMillis();
+        List<BasketRule> rules = mineApriori(baskets, minSupport, minConfidence, maxRules);
+        System.out.println("Mined " + rules.size() + " association rules from " + baskets.size()
+                + " baskets in " + (System.currentTimeMillis() - start) + " ms");
+        return new RecommendationEngine(baskets, rules);
+    }
+
+    // Mine rules with FP-Growth instead, for catalogues too large for Apriori
+    public static RecommendationEngine build(TransactionBaskets baskets, FPGrowth miner) throws InterruptedException {
+        return new RecommendationEngine(baskets, miner.mineRules(baskets));
+    }
+
+    // Top-N products for a customer, ranked by the best confidence of any rule recommending them.
+    // Products already in the customer's basket are never recommended.
+    public List<String> recommend(String customerId, int n) {
+        int[] basket = baskets.basketFor(customerId);
+        if (basket.length == 0 || n <= 0) return new ArrayList<>();
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (int item : basket) {
+            for (int r : rulesByItem[item]) {
+                if (!containsAll(basket, antecedents[r])) continue;
+                for (int candidate : consequents[r]) {
+                    if (candidate < 0 || Arrays.binarySearch(basket, candidate) >= 0) continue;
+                    scores.merge(candidate, confidences[r], Math::max);
+                }
+            }
+        }
+
+        List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((a, b) -> {
+            int byScore = Double.compare(b.getValue(), a.getValue());
+            return byScore != 0 ? byScore : baskets.itemName(a.getKey()).compareTo(baskets.itemName(b.getKey()));
+        });
+
+        List<String> recommendations = new ArrayList<>(Math.min(n, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < n; i++) {
+            recommendations.add(baskets.itemName(ranked.get(i).getKey()));
+        }
+        return recommendations;
+    }
+
+    // Top-N products for every known customer
+    public Map<String, List<String>> recommendAll(int n) {
+        Map<String, List<String>> all = new LinkedHashMap<>();
+        for (String customerId : baskets.keys()) {
+            all.put(customerId, recommend(customerId, n));
+        }
+        return all;
+    }
+
+    public List<String> getBasket(String customerId) {
+        return baskets.itemNames(baskets.basketFor(customerId));
+    }
+
+    public List<BasketRule> getRules() {
+        return rules;
+    }
+
+    public TransactionBaskets getBaskets() {
+        return baskets;
+    }
+
+    // Market-basket Instances: one {f, t} attribute per item, stored sparsely with absent items left
+    // as the zero value so Apriori only forms itemsets from purchased items
+    static Instances toMarketBasket(TransactionBaskets baskets) {
+        ArrayList<Attribute> attributes = new ArrayList<>(baskets.itemCount());
+        List<String> values = Arrays.asList("f", "t");
+        for (int item = 0; item < baskets.itemCount(); item++) {
+            attributes.add(new Attribute(baskets.itemName(item), new ArrayList<>(values)));
+        }
+        Instances data = new Instances("baskets", attributes, baskets.size());
+        for (int b = 0; b < baskets.size(); b++) {
+            int[] basket = baskets.basket(b);
+            double[] ones = new double[basket.length];
+            Arrays.fill(ones, 1.0);
+            data.add(new SparseInstance(1.0, ones, basket, baskets.itemCount()));
+        }
+        return data;
+    }
+
+    private static List<BasketRule> mineApriori(TransactionBaskets baskets, double minSupport,
+                                                double minConfidence, int maxRules) throws Exception {
+        List<BasketRule> rules = new ArrayList<>();
+        if (baskets.size() == 0 || baskets.itemCount() == 0) return rules;
+
+        Apriori apriori = new Apriori();
+        apriori.setTreatZeroAsMissing(true);
+        apriori.setLowerBoundMinSupport(minSupport);
+        apriori.setMinMetric(minConfidence);
+        apriori.setNumRules(maxRules);
+        apriori.buildAssociations(toMarketBasket(baskets));
+
+        double total = baskets.size();
+        for (AssociationRule rule : apriori.getAssociationRules().getRules()) {
+            double premiseSupport = rule.getPremiseSupport();
+            double consequenceSupport = rule.getConsequenceSupport();
+            double support = rule.getTotalSupport();
+            double confidence = premiseSupport == 0 ? 0 : support / premiseSupport;
+            double lift = premiseSupport == 0 || consequenceSupport == 0
+                    ? 0 : support * total / (premiseSupport * consequenceSupport);
+            rules.add(new BasketRule(itemNames(rule.getPremise()), itemNames(rule.getConsequence()),
+                    support / total, confidence, lift));
+        }
+        return rules;
+    }
+
+    private static List<String> itemNames(Collection<Item> items) {
+        List<String> names = new ArrayList<>(items.size());
+        for (Item item : items) names.add(item.getAttribute().name());
+        return names;
+    }
+
+    private int[] itemIds(List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = baskets.itemId(names.get(i));
+        return ids;
+    }
+
+    private static boolean containsAll(int[] sortedBasket, int[] items) {
+        for (int item : items) {
+            if (item < 0 || Arrays.binarySearch(sortedBasket, item) < 0) return false;
+        }
+        return true;
+    }
+}
@@ -1,112 +1,120 @@
 package functional;
 
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartPanel;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.data.general.DefaultPieDataset;
-
-import javax.swing.*;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class ReportingAndDashboards {
+    public static final String DEFAULT_REPORTS_DIRECTORY = "src/main/resources/reports";
+
+    private Path reportsDirectory = Paths.get(DEFAULT_REPORTS_DIRECTORY);
+    private PdfReportTemplate pdfTemplate = PdfReportTemplate.defaultTemplate();
+    private ChartRenderer chartRenderer = ChartRenderer.shared();
+
+    public void setReportsDirectory(Path reportsDirectory) {
+        this.reportsDirectory = reportsDirectory;
+    }
+
+    public Path getReportsDirectory() {
+        return reportsDirectory;
+    }
+
+    public void setPdfTemplate(PdfReportTemplate pdfTemplate) {
+        this.pdfTemplate = pdfTemplate;
+    }
+
+    public void setChartRenderer(ChartRenderer chartRenderer) {
+        this.chartRenderer = chartRenderer;
+    }
 
     // Generate a report (text or PDF) with metrics
     public void generateReport(String reportName, Map<String, Object> metrics, String format) {
-        if (format.equalsIgnoreCase("txt")) {
-            generateTextReport(reportName, metrics);
-        } else if (format.equalsIgnoreCase("pdf")) {
-            generatePDFReport(reportName, metrics);
-        } else {
-            System.err.println("Unsupported format. Please use 'txt' or 'pdf'.");
+        generateReport(reportName, metrics, format, Collections.emptyList());
+    }
+
+    // PDF reports embed the chart images below the metrics; text reports list their paths
+    public void generateReport(String reportName, Map<String, Object> metrics, String format, List<Path> charts) {
+        try {
+            Path reportPath = writeReport(reportName, metrics, format, charts);
+            System.out.println((format.equalsIgnoreCase("pdf") ? "PDF" : "Text") + " report generated successfully: " + reportPath);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error generating " + format + " report: " + e.getMessage());
+        }
+    }
+
+    // Renders many reports in parallel on a worker pool; close the batch to wait for them
+    public BatchReportRenderer newBatch() {
+        return new BatchReportRenderer(this);
+    }
+
+    // Render one report into the reports directory and return its path; shared by single and batch reports
+    Path writeReport(String reportName, Map<String, Object> metrics, String format, List<Path> charts) throws IOException {
+        Metrics.Span span = PipelineMetrics.REPORT_RENDER.start();
+        try {
+            if (format.equalsIgnoreCase("txt")) {
+                return generateTextReport(reportName, metrics, charts);
+            } else if (format.equalsIgnoreCase("pdf")) {
+                return generatePDFReport(reportName, metrics, charts);
+            }
+            throw new IllegalArgumentException("Unsupported format. Please use 'txt' or 'pdf'.");
+        } finally {
+            span.close();
         }
     }
 
     // Generate a text-based report
-    private void generateTextReport(String reportName, Map<String, Object> metrics) {
-        String reportPath = "src/main/resources/reports/" + reportName + ".txt";
-        try (FileWriter writer = new FileWriter(reportPath)) {
-            writer.write("========== Customer Behavior Analysis Report ==========\n\n");
+    private Path generateTextReport(String reportName, Map<String, Object> metrics, List<Path> charts) throws IOException {
+        Path reportPath = reportsDirectory.resolve(reportName + ".txt");
+        Files.createDirectories(reportsDirectory);
+        try (BufferedWriter writer = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+            writer.write("========== " + PdfReportTemplate.DEFAULT_TITLE + " ==========\n\n");
             for (Map.Entry<String, Object> entry : metrics.entrySet()) {
                 writer.write(entry.getKey() + ": " + entry.getValue() + "\n");
             }
-            System.out.println("Text report generated successfully: " + reportPath);
-        } catch (IOException e) {
-            System.err.println("Error generating text report: " + e.getMessage());
+            for (Path chart : charts) {
+                writer.write("Chart: " + chart + "\n");
+            }
         }
+        return reportPath;
     }
 
-    // Generate a PDF-based report
-    private void generatePDFReport(String reportName, Map<String, Object> metrics) {
-        String reportPath = "src/main/resources/reports/" + reportName + ".pdf";
-        try (PDDocument document = new PDDocument()) {
-            PDPage page = new PDPage(PDRectangle.A4);
-            document.addPage(page);
-
-            try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
-                contentStream.setLeading(14.5f);
-                contentStream.beginText();
-                contentStream.setFont(org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD, 14);
-                contentStream.newLineAtOffset(50, 750);
-
-                contentStream.showText("Customer Behavior Analysis Report");
-                contentStream.newLine();
-                contentStream.setFont(org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA, 12);
-
-                // Write metrics to the PDF
-                for (Map.Entry<String, Object> entry : metrics.entrySet()) {
-                    contentStream.newLine();
-                    contentStream.showText(entry.getKey() + ": " + entry.getValue());
-                }
-                contentStream.endText();
-            }
-
-            document.save(reportPath);
-            System.out.println("PDF report generated successfully: " + reportPath);
-        } catch (IOException e) {
-            System.err.println("Error generating PDF report: " + e.getMessage());
-        }
+    // Generate a PDF-based report, paginated and wrapped by the template
+    private Path generatePDFReport(String reportName, Map<String, Object> metrics, List<Path> charts) throws IOException {
+        Path reportPath = reportsDirectory.resolve(reportName + ".pdf");
+        pdfTemplate.render(PdfReportTemplate.DEFAULT_TITLE, metrics, charts, reportPath);
+        return reportPath;
     }
 
-    // Create a bar chart dashboard
+    // Create a bar chart dashboard: a window when there is a display, otherwise an image file
     public void createBarChartDashboard(Map<String, Integer> data, String title, String categoryAxis, String valueAxis) {
-        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        data.forEach((key, value) -> dataset.addValue(value, categoryAxis, key));
-
-        JFreeChart barChart = ChartFactory.createBarChart(
-                title, categoryAxis, valueAxis, dataset, PlotOrientation.VERTICAL, true, true, false
-        );
-
-        displayChart(barChart, title);
+        showChart(data, ChartRenderer.ChartSpec.bar(title, categoryAxis, valueAxis));
     }
 
     // Create a pie chart dashboard
     public void createPieChartDashboard(Map<String, Integer> data, String title) {
-        DefaultPieDataset dataset = new DefaultPieDataset();
-        data.forEach(dataset::setValue);
-
-        JFreeChart pieChart = ChartFactory.createPieChart(
-                title, dataset, true, true, false
-        );
+        showChart(data, ChartRenderer.ChartSpec.pie(title));
+    }
 
-        displayChart(pieChart, title);
+    // Draw a chart offscreen (or reuse the cached image) for embedding in a report
+    public Path renderChart(Map<String, ? extends Number> data, ChartRenderer.ChartSpec spec) throws IOException {
+        return chartRenderer.render(data, spec);
     }
 
-    // Display the chart in a Swing window
-    private void displayChart(JFreeChart chart, String title) {
-        JFrame frame = new JFrame(title);
-        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-        frame.add(new ChartPanel(chart));
-        frame.pack();
-        frame.setVisible(true);
+    private void showChart(Map<String, Integer> data, ChartRenderer.ChartSpec spec) {
+        try {
+            chartRenderer.show(data, spec);
+        } catch (IOException e) {
+            System.err.println("Error rendering chart: " + e.getMessage());
+        }
     }
 
     // Integration Points for MLAnalysis
@@ -126,11 +134,28 @@ public class ReportingAndDashboards {
         System.out.println("=== Recommendations for Customer " + customerID + " ===");
         recommendations.forEach(System.out::println);
 
-        Map<String, Object> results = Map.of(
-                "CustomerID", customerID,
-                "Recommendations", String.join(", ", recommendations)
-        );
-        generateReport("Recommendations_" + customerID, results, "pdf");
+        generateReport("Recommendations_" + customerID, recommendationMetrics(customerID, recommendations), "pdf");
+    }
+
+    // One PDF per customer, rendered in parallel
+    public void addRecommendations(Map<String, List<String>> recommendationsByCustomer) {
+        System.out.println("=== Recommendations for " + recommendationsByCustomer.size() + " customers ===");
+        try (BatchReportRenderer batch = newBatch()) {
+            for (Map.Entry<String, List<String>> entry : recommendationsByCustomer.entrySet()) {
+                batch.submit("Recommendations_" + entry.getKey(), recommendationMetrics(entry.getKey(), entry.getValue()), "pdf");
+            }
+        } catch (InterruptedException e) {
+            // submit was interrupted while waiting for room in the backlog
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while generating recommendation reports");
+        }
+    }
+
+    private static Map<String, Object> recommendationMetrics(String customerID, List<String> recommendations) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("CustomerID", customerID);
+        results.put("Recommendations", String.join(", ", recommendations));
+        return results;
     }
 
     public void addTrends(Map<String, Object> trends) {
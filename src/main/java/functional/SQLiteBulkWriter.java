@@ -0,0 +1,165 @@
+package functional;
+
+import java.sql.*;
+import java.util.*;
+
+// Bulk loader for SQLite: one parameterized statement per table, JDBC batches and one transaction per batch
+public class SQLiteBulkWriter implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    public static final String DEFAULT_SYNCHRONOUS = "NORMAL";
+
+    private final Connection connection;
+    private final List<String> columns;
+    private final PreparedStatement statement;
+    private final int batchSize;
+    private final boolean previousAutoCommit;
+    private int pendingRows;
+    private long rowsWritten;
+
+    public SQLiteBulkWriter(Connection connection, String tableName, List<String> columns) throws SQLException {
+        this(connection, tableName, columns, DEFAULT_BATCH_SIZE, DEFAULT_SYNCHRONOUS);
+    }
+
+    public SQLiteBulkWriter(Connection connection, String tableName, List<String> columns, int batchSize) throws SQLException {
+        this(connection, tableName, columns, batchSize, DEFAULT_SYNCHRONOUS);
+    }
+
+    public SQLiteBulkWriter(Connection connection, String tableName, List<String> columns,
+                            int batchSize, String synchronous) throws SQLException {
+        this(connection, tableName, columns, batchSize, synchronous, false);
+    }
+
+    // With replaceExisting, rows that collide with a unique key overwrite the stored row instead of being skipped
+    public SQLiteBulkWriter(Connection connection, String tableName, List<String> columns,
+                            int batchSize, String synchronous, boolean replaceExisting) throws SQLException {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        if (columns.isEmpty()) throw new IllegalArgumentException("At least one column is required.");
+
+        this.connection = connection;
+        this.columns = new ArrayList<>(columns);
+        this.batchSize = batchSize;
+
+        applyBulkLoadPragmas(connection, synchronous);
+        this.previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        this.statement = connection.prepareStatement(buildInsertStatement(tableName, this.columns, replaceExisting));
+    }
+
+    // Queue one row; values are bound by column name, missing columns are stored as NULL
+    public void addRow(Map<String, String> row) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            statement.setString(i + 1, row.get(columns.get(i)));
+        }
+        statement.addBatch();
+        if (++pendingRows >= batchSize) flush();
+    }
+
+    public void addRows(Collection<Map<String, String>> rows) throws SQLException {
+        for (Map<String, String> row : rows) {
+            addRow(row);
+        }
+    }
+
+    // Queue every row of a columnar dataset whose columns match the writer's, binding typed values directly
+    public void addRows(ColumnarDataset data) throws SQLException {
+        if (!data.getColumnNames().equals(columns)) {
+            throw new IllegalArgumentException("Dataset columns " + data.getColumnNames() + " do not match " + columns);
+        }
+        for (int row = 0; row < data.getRowCount(); row++) {
+            addRow(data, row);
+        }
+    }
+
+    public void addRow(ColumnarDataset data, int row) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (data.isNull(row, i)) {
+                statement.setNull(i + 1, Types.NULL);
+                continue;
+            }
+            switch (data.getColumnType(i)) {
+                case LONG: statement.setLong(i + 1, data.getLong(row, i)); break;
+                case DOUBLE: statement.setDouble(i + 1, data.getDouble(row, i)); break;
+                default: statement.setString(i + 1, data.getString(row, i));
+            }
+        }
+        statement.addBatch();
+        if (++pendingRows >= batchSize) flush();
+    }
+
+    // Queue one row given positionally, in the writer's column order
+    public void addValues(Object... values) throws SQLException {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " values but got " + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            statement.setObject(i + 1, values[i]);
+        }
+        statement.addBatch();
+        if (++pendingRows >= batchSize) flush();
+    }
+
+    // Execute the pending batch and commit it as one transaction
+    public void flush() throws SQLException {
+        if (pendingRows == 0) return;
+        Metrics.Span span = PipelineMetrics.BATCH_INSERT.start();
+        try {
+            statement.executeBatch();
+            connection.commit();
+            rowsWritten += pendingRows;
+            PipelineMetrics.ROWS_STORED.add(pendingRows);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            span.close();
+            pendingRows = 0;
+        }
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    // Rows queued since the last flush; 0 right after addValues means that call flushed the batch
+    public int getPendingRows() {
+        return pendingRows;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            statement.close();
+            connection.setAutoCommit(previousAutoCommit);
+        }
+    }
+
+    // WAL lets readers continue during the load; NORMAL sync is durable in WAL mode without fsync per commit
+    private static void applyBulkLoadPragmas(Connection connection, String synchronous) throws SQLException {
+        String level = synchronous.toUpperCase(Locale.ROOT);
+        if (!Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA").contains(level)) {
+            throw new IllegalArgumentException("Unsupported synchronous level: " + synchronous);
+        }
+        try (Statement pragma = connection.createStatement()) {
+            pragma.execute("PRAGMA journal_mode=WAL");
+            pragma.execute("PRAGMA synchronous=" + level);
+            pragma.execute("PRAGMA temp_store=MEMORY");
+            pragma.execute("PRAGMA cache_size=-65536");
+        }
+    }
+
+    private static String buildInsertStatement(String tableName, List<String> columns, boolean replaceExisting) {
+        StringJoiner names = new StringJoiner(", ");
+        StringJoiner placeholders = new StringJoiner(", ");
+        for (String column : columns) {
+            names.add(quoteIdentifier(column));
+            placeholders.add("?");
+        }
+        return (replaceExisting ? "INSERT OR REPLACE INTO " : "INSERT OR IGNORE INTO ") + quoteIdentifier(tableName) + " (" + names + ") VALUES (" + placeholders + ")";
+    }
+
+    static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
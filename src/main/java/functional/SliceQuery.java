@@ -0,0 +1,126 @@
+package functional;
+
+import java.util.*;
+
+// A filtered, projected slice of one table in the SQLite store. Identifiers are quoted and every value is
+// bound as a parameter, so filters can come straight from user input.
+public class SliceQuery {
+    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList("=", "!=", "<", "<=", ">", ">=", "LIKE"));
+
+    private final String table;
+    private final List<String> columns = new ArrayList<>();
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> parameters = new ArrayList<>();
+    private final List<String> ordering = new ArrayList<>();
+    private int limit = -1;
+
+    private SliceQuery(String table) {
+        this.table = table;
+    }
+
+    public static SliceQuery from(String table) {
+        return new SliceQuery(table);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    // Columns to return; all columns when none are selected
+    public SliceQuery select(String... columnNames) {
+        columns.addAll(Arrays.asList(columnNames));
+        return this;
+    }
+
+    // A copy of this slice (same filters, ordering and limit) returning exactly these columns; this slice is
+    // left unchanged, so callers can narrow a slice they were handed
+    public SliceQuery project(String... columnNames) {
+        SliceQuery copy = new SliceQuery(table);
+        copy.columns.addAll(Arrays.asList(columnNames));
+        copy.conditions.addAll(conditions);
+        copy.parameters.addAll(parameters);
+        copy.ordering.addAll(ordering);
+        copy.limit = limit;
+        return copy;
+    }
+
+    public SliceQuery where(String column, String operator, Object value) {
+        String op = operator.trim().toUpperCase(Locale.ROOT);
+        if (!OPERATORS.contains(op)) throw new IllegalArgumentException("Unsupported operator: " + operator);
+        conditions.add(quote(column) + " " + op + " ?");
+        parameters.add(value);
+        return this;
+    }
+
+    // Inclusive lower and exclusive upper bound, e.g. a date range as ISO strings; a null bound is open
+    public SliceQuery between(String column, Object from, Object to) {
+        if (from != null) where(column, ">=", from);
+        if (to != null) where(column, "<", to);
+        return this;
+    }
+
+    public SliceQuery in(String column, Collection<?> values) {
+        if (values.isEmpty()) {
+            conditions.add("0");
+            return this;
+        }
+        StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+        for (Object value : values) {
+            placeholders.add("?");
+            parameters.add(value);
+        }
+        conditions.add(quote(column) + " IN " + placeholders);
+        return this;
+    }
+
+    // Only customers assigned to a cluster in a segmentation table written by ClusterAssignmentWriter
+    public SliceQuery inSegment(String segmentsTable, String idColumn, int cluster) {
+        conditions.add(quote(idColumn) + " IN (SELECT " + quote(idColumn) + " FROM " + quote(segmentsTable)
+                + " WHERE " + quote(ClusterAssignmentWriter.CLUSTER_COLUMN) + " = ?)");
+        parameters.add(cluster);
+        return this;
+    }
+
+    public SliceQuery orderBy(String column, boolean ascending) {
+        ordering.add(quote(column) + (ascending ? " ASC" : " DESC"));
+        return this;
+    }
+
+    public SliceQuery limit(int rows) {
+        if (rows < 0) throw new IllegalArgumentException("Limit must not be negative: " + rows);
+        this.limit = rows;
+        return this;
+    }
+
+    public String toSql() {
+        StringJoiner projection = new StringJoiner(", ");
+        for (String column : columns) projection.add(quote(column));
+        return toSql(columns.isEmpty() ? "*" : projection.toString(), null);
+    }
+
+    // One row per group: the group value and the aggregate of the value column over the slice
+    public String toAggregateSql(String groupColumn, Aggregate aggregate, String valueColumn) {
+        String measure = aggregate == Aggregate.COUNT && valueColumn == null
+                ? "COUNT(*)" : aggregate.name() + "(" + quote(valueColumn) + ")";
+        return toSql(quote(groupColumn) + ", " + measure, quote(groupColumn));
+    }
+
+    public List<Object> getParameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+
+    public enum Aggregate { COUNT, SUM, AVG, MIN, MAX }
+
+    private String toSql(String projection, String groupBy) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(projection).append(" FROM ").append(quote(table));
+        if (!conditions.isEmpty()) sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        if (groupBy != null) sql.append(" GROUP BY ").append(groupBy);
+        if (!ordering.isEmpty()) sql.append(" ORDER BY ").append(String.join(", ", ordering));
+        if (limit >= 0) sql.append(" LIMIT ").append(limit);
+        return sql.toString();
+    }
+
+    private static String quote(String identifier) {
+        return SQLiteBulkWriter.quoteIdentifier(identifier);
+    }
+}
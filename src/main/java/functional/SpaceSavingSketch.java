@@ -0,0 +1,150 @@
+package functional;
+
+import java.util.*;
+
+// Space-Saving heavy-hitter sketch: tracks at most `capacity` items; when a new item arrives and the
+// sketch is full it replaces the item with the smallest count. Any item with true frequency above
+// n / capacity is guaranteed to be tracked, and each estimate overcounts by at most its error bound.
+public class SpaceSavingSketch<T> {
+
+    public static class Estimate<T> {
+        private final T item;
+        private final long count;
+        private final long error;
+
+        Estimate(T item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // Upper bound on how much count overstates the true frequency
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return item + ": " + count + " (+/- " + error + ")";
+        }
+    }
+
+    private final int capacity;
+    private final Map<T, Integer> positions;
+    private final Object[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    private long total;
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.positions = new HashMap<>(capacity * 2);
+        this.items = new Object[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+    }
+
+    public void offer(T item) {
+        offer(item, 1);
+    }
+
+    public void offer(T item, long weight) {
+        total += weight;
+        Integer position = positions.get(item);
+        if (position != null) {
+            counts[position] += weight;
+            siftDown(position);
+        } else if (size < capacity) {
+            items[size] = item;
+            counts[size] = weight;
+            errors[size] = 0;
+            positions.put(item, size);
+            siftUp(size++);
+        } else {
+            // evict the current minimum (heap root) and inherit its count as the error bound
+            positions.remove(items[0]);
+            errors[0] = counts[0];
+            counts[0] += weight;
+            items[0] = item;
+            positions.put(item, 0);
+            siftDown(0);
+        }
+    }
+
+    // Merge another sketch's counters into this one (counts add; errors add)
+    public SpaceSavingSketch<T> merge(SpaceSavingSketch<T> other) {
+        for (int i = 0; i < other.size; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) other.items[i];
+            offer(item, other.counts[i]);
+            errors[positions.get(item)] += other.errors[i];
+        }
+        return this;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public List<Estimate<T>> topK(int k) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+
+        List<Estimate<T>> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, size); i++) {
+            int index = order[i];
+            @SuppressWarnings("unchecked")
+            T item = (T) items[index];
+            result.add(new Estimate<>(item, counts[index], errors[index]));
+        }
+        return result;
+    }
+
+    // Min-heap on counts, keeping the position map in sync
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) return;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) return;
+            int right = left + 1;
+            int smallest = right < size && counts[right] < counts[left] ? right : left;
+            if (counts[index] <= counts[smallest]) return;
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void swap(int a, int b) {
+        Object item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+        long error = errors[a];
+        errors[a] = errors[b];
+        errors[b] = error;
+        positions.put((T) items[a], a);
+        positions.put((T) items[b], b);
+    }
+}
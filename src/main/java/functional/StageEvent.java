@@ -0,0 +1,32 @@
+package functional;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for one timed pipeline stage, emitted only in the metrics' JFR mode. Record with
+// -XX:StartFlightRecording and look for "functional.Stage" next to the GC and allocation events.
+// Only referenced once JFR mode is on, so JVMs without jdk.jfr never load it.
+@Name("functional.Stage")
+@Label("Pipeline Stage")
+@Category("Customer Behaviour Analysis")
+@Description("One execution of a timed stage")
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    static Object begin(String stage) {
+        StageEvent event = new StageEvent();
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object event) {
+        StageEvent stageEvent = (StageEvent) event;
+        stageEvent.end();
+        if (stageEvent.shouldCommit()) stageEvent.commit();
+    }
+}
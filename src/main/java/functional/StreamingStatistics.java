@@ -0,0 +1,134 @@
+package functional;
+
+import java.util.stream.IntStream;
+
+// Single-pass descriptive statistics over primitive doubles: Welford mean/variance, exact min/max and a
+// KLL sketch for median and quantiles. Accumulators merge, so chunks or partitions can be summarized
+// independently and combined.
+public class StreamingStatistics {
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 16;
+
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final QuantileSketch sketch;
+
+    public StreamingStatistics() {
+        this(QuantileSketch.DEFAULT_K);
+    }
+
+    public StreamingStatistics(int sketchK) {
+        this.sketch = new QuantileSketch(sketchK);
+    }
+
+    private StreamingStatistics(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    // Moments and extremes only: several times cheaper per value, but the quantile methods are unavailable
+    public static StreamingStatistics withoutQuantiles() {
+        return new StreamingStatistics((QuantileSketch) null);
+    }
+
+    // Summarize an array, splitting it into chunks that are accumulated in parallel and merged
+    public static StreamingStatistics of(double[] values) {
+        int chunks = (values.length + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+        if (chunks <= 1) {
+            StreamingStatistics stats = new StreamingStatistics();
+            stats.addAll(values, 0, values.length);
+            return stats;
+        }
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    StreamingStatistics stats = new StreamingStatistics();
+                    int from = chunk * PARALLEL_CHUNK_SIZE;
+                    stats.addAll(values, from, Math.min(values.length, from + PARALLEL_CHUNK_SIZE));
+                    return stats;
+                })
+                .reduce(StreamingStatistics::merge)
+                .get();
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (value < min) min = value;
+        if (value > max) max = value;
+        if (sketch != null) sketch.update(value);
+    }
+
+    public void addAll(double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            add(values[i]);
+        }
+    }
+
+    // Combine with another accumulator (Chan et al. parallel variance); returns this
+    public StreamingStatistics merge(StreamingStatistics other) {
+        if (other.count == 0) return this;
+        if (count == 0) {
+            mean = other.mean;
+            m2 = other.m2;
+        } else {
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (sketch != null) {
+            if (other.sketch == null) throw new IllegalArgumentException("Cannot merge statistics without quantiles into ones with");
+            sketch.merge(other.sketch);
+        }
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    // Sample variance (n - 1 denominator), as reported by commons-math DescriptiveStatistics
+    public double getVariance() {
+        if (count == 0) return Double.NaN;
+        return count == 1 ? 0.0 : m2 / (count - 1);
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getRange() {
+        return getMax() - getMin();
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    public double getQuantile(double q) {
+        if (count == 0) return Double.NaN;
+        if (q == 0) return min;
+        if (q == 1) return max;
+        if (sketch == null) throw new IllegalStateException("Quantiles were not tracked for these statistics");
+        return Math.max(min, Math.min(max, sketch.quantile(q)));
+    }
+}
@@ -0,0 +1,154 @@
+package functional;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Column types and indexes for a table in the SQLite store, inferred from the data being loaded.
+// Integral columns become INTEGER, other numeric columns REAL and everything else TEXT. The customer ID
+// column and timestamp columns (recognised by name) get indexes, so per-customer and date-range reads
+// do not scan the table.
+public class TableSchema {
+    public enum SqlType { INTEGER, REAL, TEXT }
+
+    private final LinkedHashMap<String, SqlType> columns;
+    private final String customerIdColumn;
+    private final List<String> timestampColumns;
+
+    private TableSchema(LinkedHashMap<String, SqlType> columns) {
+        this.columns = columns;
+        String customerId = null;
+        List<String> timestamps = new ArrayList<>();
+        for (String column : columns.keySet()) {
+            if (customerId == null && isCustomerIdColumn(column)) customerId = column;
+            if (isTimestampColumn(column)) timestamps.add(column);
+        }
+        this.customerIdColumn = customerId;
+        this.timestampColumns = timestamps;
+    }
+
+    public static TableSchema infer(ColumnarDataset data) {
+        LinkedHashMap<String, SqlType> columns = new LinkedHashMap<>();
+        for (int c = 0; c < data.getColumnCount(); c++) {
+            columns.put(data.getColumnNames().get(c), toSqlType(data.getColumnType(c)));
+        }
+        return new TableSchema(columns);
+    }
+
+    // Infer from a sample of raw rows, e.g. the first batch of a streaming import
+    public static TableSchema infer(List<String> columnNames, List<String[]> sampleRows) {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(columnNames);
+        for (String[] row : sampleRows) builder.addRow(row);
+        return infer(builder.build());
+    }
+
+    // Types of an existing table, mapped from the declared types by SQLite's column affinity rules
+    // (NUMERIC and untyped columns count as REAL and TEXT)
+    public static TableSchema read(Connection connection, String table) throws SQLException {
+        LinkedHashMap<String, SqlType> columns = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA table_info(" + SQLiteBulkWriter.quoteIdentifier(table) + ")")) {
+            while (rs.next()) {
+                String declared = rs.getString("type");
+                String upper = declared == null ? "" : declared.toUpperCase(Locale.ROOT);
+                SqlType type;
+                if (upper.contains("INT")) type = SqlType.INTEGER;
+                else if (upper.contains("CHAR") || upper.contains("CLOB") || upper.contains("TEXT")
+                        || upper.contains("BLOB") || upper.isEmpty()) type = SqlType.TEXT;
+                else type = SqlType.REAL;
+                columns.put(rs.getString("name"), type);
+            }
+        }
+        if (columns.isEmpty()) throw new SQLException("No such table: " + table);
+        return new TableSchema(columns);
+    }
+
+    public List<String> getColumnNames() {
+        return new ArrayList<>(columns.keySet());
+    }
+
+    public SqlType getType(String column) {
+        SqlType type = columns.get(column);
+        if (type == null) throw new IllegalArgumentException("Unknown column: " + column);
+        return type;
+    }
+
+    // Column holding the customer identifier, or null if none is recognised
+    public String getCustomerIdColumn() {
+        return customerIdColumn;
+    }
+
+    public List<String> getTimestampColumns() {
+        return Collections.unmodifiableList(timestampColumns);
+    }
+
+    public String createTableSql(String table) {
+        StringJoiner definitions = new StringJoiner(", ");
+        for (Map.Entry<String, SqlType> column : columns.entrySet()) {
+            definitions.add(SQLiteBulkWriter.quoteIdentifier(column.getKey()) + " " + column.getValue());
+        }
+        return "CREATE TABLE IF NOT EXISTS " + SQLiteBulkWriter.quoteIdentifier(table) + " (" + definitions + ")";
+    }
+
+    // (customer, first timestamp) serves both per-customer lookups and per-customer histories;
+    // each timestamp column also gets its own index for date-range slices across customers
+    public List<String> createIndexSql(String table) {
+        List<String> statements = new ArrayList<>();
+        if (customerIdColumn != null) {
+            List<String> key = new ArrayList<>();
+            key.add(customerIdColumn);
+            if (!timestampColumns.isEmpty()) key.add(timestampColumns.get(0));
+            statements.add(createIndex(table, key));
+        }
+        for (String timestamp : timestampColumns) {
+            statements.add(createIndex(table, Collections.singletonList(timestamp)));
+        }
+        return statements;
+    }
+
+    public void createTable(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(createTableSql(table));
+        }
+    }
+
+    // Building an index once over loaded rows is cheaper than maintaining it row by row, so bulk
+    // loads call this after the data is in
+    public void createIndexes(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String index : createIndexSql(table)) {
+                statement.execute(index);
+            }
+        }
+    }
+
+    static boolean isCustomerIdColumn(String name) {
+        String normalized = name.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "");
+        return normalized.equals("customerid") || normalized.equals("custid") || normalized.equals("clientid")
+                || normalized.equals("customer") || normalized.equals("customerno") || normalized.equals("customernumber");
+    }
+
+    static boolean isTimestampColumn(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.contains("date") || lower.contains("timestamp") || lower.equals("time") || lower.equals("ts")
+                || lower.endsWith("_time") || lower.endsWith("_at");
+    }
+
+    private static String createIndex(String table, List<String> key) {
+        String name = ("idx_" + table + "_" + String.join("_", key)).replaceAll("[^A-Za-z0-9_]", "_");
+        StringJoiner columns = new StringJoiner(", ");
+        for (String column : key) columns.add(SQLiteBulkWriter.quoteIdentifier(column));
+        return "CREATE INDEX IF NOT EXISTS " + SQLiteBulkWriter.quoteIdentifier(name)
+                + " ON " + SQLiteBulkWriter.quoteIdentifier(table) + " (" + columns + ")";
+    }
+
+    private static SqlType toSqlType(ColumnarDataset.ColumnType type) {
+        switch (type) {
+            case LONG: return SqlType.INTEGER;
+            case DOUBLE: return SqlType.REAL;
+            default: return SqlType.TEXT;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package functional;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Baskets of items grouped by a key (customer or transaction ID), with items dictionary-encoded as ints.
+// Each basket is a sorted, duplicate-free int array so subset tests are binary searches.
+public class TransactionBaskets {
+    private final List<String> items;
+    private final Map<String, Integer> itemIds;
+    private final List<String> keys;
+    private final Map<String, Integer> keyIndex;
+    private final int[][] baskets;
+
+    private TransactionBaskets(List<String> items, Map<String, Integer> itemIds, List<String> keys, int[][] baskets) {
+        this.items = items;
+        this.itemIds = itemIds;
+        this.keys = keys;
+        this.baskets = baskets;
+        this.keyIndex = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            keyIndex.put(keys.get(i), i);
+        }
+    }
+
+    // One row per purchase: rows sharing the same group value form one basket
+    public static TransactionBaskets fromColumns(ColumnarDataset data, String groupColumn, String itemColumn) {
+        int group = data.getColumnIndex(groupColumn);
+        int item = data.getColumnIndex(itemColumn);
+        Accumulator accumulator = new Accumulator();
+        for (int row = 0; row < data.getRowCount(); row++) {
+            accumulator.add(data.getString(row, group), data.getString(row, item));
+        }
+        return accumulator.build();
+    }
+
+    // Purchases streamed straight from a table of the SQLite store, without loading the rows first
+    public static TransactionBaskets fromTable(Connection conn, String table, String groupColumn,
+                                               String itemColumn) throws SQLException {
+        String query = "SELECT " + SQLiteBulkWriter.quoteIdentifier(groupColumn) + ", "
+                + SQLiteBulkWriter.quoteIdentifier(itemColumn) + " FROM " + SQLiteBulkWriter.quoteIdentifier(table);
+        Accumulator accumulator = new Accumulator();
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+            stmt.setFetchSize(10000);
+            while (rs.next()) {
+                accumulator.add(rs.getString(1), rs.getString(2));
+            }
+        }
+        return accumulator.build();
+    }
+
+    // One basket per instance, as in Weka's market-basket ARFF files. Attributes with a single nominal
+    // value ("t") contribute their name when present; other attributes contribute "name=value".
+    public static TransactionBaskets fromInstances(Instances data) {
+        Accumulator accumulator = new Accumulator();
+        for (int row = 0; row < data.numInstances(); row++) {
+            Instance instance = data.instance(row);
+            String key = String.valueOf(row);
+            accumulator.open(key);
+            for (int a = 0; a < data.numAttributes(); a++) {
+                if (instance.isMissing(a)) continue;
+                Attribute attribute = data.attribute(a);
+                if (attribute.isNominal() && attribute.numValues() == 1) {
+                    accumulator.add(key, attribute.name());
+                } else {
+                    accumulator.add(key, attribute.name() + "=" + instance.stringValue(a));
+                }
+            }
+        }
+        return accumulator.build();
+    }
+
+    // Baskets given directly as item lists, e.g. read back from the database
+    public static TransactionBaskets fromLists(Map<String, ? extends Collection<String>> basketsByKey) {
+        List<String> items = new ArrayList<>();
+        Map<String, Integer> itemIds = new HashMap<>();
+        List<String> keys = new ArrayList<>(basketsByKey.keySet());
+        int[][] baskets = new int[keys.size()][];
+        for (int b = 0; b < keys.size(); b++) {
+            Collection<String> basket = basketsByKey.get(keys.get(b));
+            int[] ids = new int[basket.size()];
+            int n = 0;
+            for (String value : basket) {
+                Integer itemId = itemIds.get(value);
+                if (itemId == null) {
+                    itemId = items.size();
+                    items.add(value);
+                    itemIds.put(value, itemId);
+                }
+                ids[n++] = itemId;
+            }
+            baskets[b] = sortedDistinct(ids, n);
+        }
+        return new TransactionBaskets(items, itemIds, keys, baskets);
+    }
+
+    public int size() {
+        return baskets.length;
+    }
+
+    public int itemCount() {
+        return items.size();
+    }
+
+    public String itemName(int itemId) {
+        return items.get(itemId);
+    }
+
+    // Item id for a name, or -1 if the item never appears
+    public int itemId(String name) {
+        Integer id = itemIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String key(int basket) {
+        return keys.get(basket);
+    }
+
+    public List<String> keys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    // Sorted item ids of one basket; the array must not be modified
+    public int[] basket(int index) {
+        return baskets[index];
+    }
+
+    // Sorted item ids for a key, or an empty array for an unknown key
+    public int[] basketFor(String key) {
+        Integer index = keyIndex.get(key);
+        return index == null ? new int[0] : baskets[index];
+    }
+
+    public List<String> itemNames(int[] itemIds) {
+        List<String> names = new ArrayList<>(itemIds.length);
+        for (int id : itemIds) names.add(items.get(id));
+        return names;
+    }
+
+    // Collects (basket key, item) pairs into growing per-basket id arrays
+    private static class Accumulator {
+        private final List<String> items = new ArrayList<>();
+        private final Map<String, Integer> itemIds = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private final Map<String, Integer> keyIds = new HashMap<>();
+        private final List<int[]> growing = new ArrayList<>();
+        private int[] sizes = new int[16];
+
+        // Register a basket even if it turns out to hold no items
+        int open(String key) {
+            Integer basket = keyIds.get(key);
+            if (basket == null) {
+                basket = keys.size();
+                keys.add(key);
+                keyIds.put(key, basket);
+                growing.add(new int[4]);
+                if (basket == sizes.length) sizes = Arrays.copyOf(sizes, sizes.length * 2);
+            }
+            return basket;
+        }
+
+        void add(String key, String value) {
+            if (key == null || value == null) return;
+            Integer itemId = itemIds.get(value);
+            if (itemId == null) {
+                itemId = items.size();
+                items.add(value);
+                itemIds.put(value, itemId);
+            }
+            int basket = open(key);
+            int[] contents = growing.get(basket);
+            if (sizes[basket] == contents.length) {
+                contents = Arrays.copyOf(contents, contents.length * 2);
+                growing.set(basket, contents);
+            }
+            contents[sizes[basket]++] = itemId;
+        }
+
+        TransactionBaskets build() {
+            int[][] baskets = new int[growing.size()][];
+            for (int b = 0; b < baskets.length; b++) {
+                baskets[b] = sortedDistinct(growing.get(b), sizes[b]);
+            }
+            return new TransactionBaskets(items, itemIds, keys, baskets);
+        }
+    }
+
+    private static int[] sortedDistinct(int[] values, int length) {
+        int[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[n++] = sorted[i];
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+}
@@ -0,0 +1,439 @@
+package functional;
+
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Time-series trends over timestamped events. Events are summed into fixed-size time buckets per
+// category (one primitive array slot per bucket); prefix sums over the buckets make any sliding window an
+// O(1) lookup. Adding events only invalidates derived values from the earliest touched bucket onwards, so
+// appending a day of data recomputes just the new buckets.
+public class TrendEngine {
+    public static final String ALL_CATEGORIES = "All";
+    // Most buckets one series may span (about 2 years of minutes or 119 years of hours); an event further
+    // from the rest of its series is a bad timestamp, not a reason to allocate gigabytes
+    public static final int MAX_BUCKETS = 1 << 20;
+    private static final Pattern ZONE_OFFSET = Pattern.compile("[+-]\\d{2}:\\d{2}$");
+
+    private final long bucketMillis;
+    private final Map<String, Series> series = new TreeMap<>();
+
+    // Bucketed totals of one category, starting at bucket index `origin`
+    public static class Series {
+        private final long bucketMillis;
+        private long origin;
+        private int length;
+        private double[] sums = new double[64];
+        private long[] counts = new long[64];
+        private double[] prefix = new double[65];
+        private int prefixValid;
+        private final Map<Integer, double[]> movingAverages = new HashMap<>();
+        private final Map<Integer, Integer> movingAverageValid = new HashMap<>();
+
+        Series(long bucketMillis, long firstBucket) {
+            this.bucketMillis = bucketMillis;
+            this.origin = firstBucket;
+        }
+
+        // False, leaving the series unchanged, when the bucket is more than MAX_BUCKETS from the others
+        boolean add(long bucket, double value) {
+            if (spanWith(bucket) > MAX_BUCKETS) return false;
+            if (bucket < origin) shiftOrigin(bucket);
+            int index = (int) (bucket - origin);
+            if (index >= length) {
+                ensureCapacity(index + 1);
+                length = index + 1;
+            }
+            sums[index] += value;
+            counts[index]++;
+            invalidateFrom(index);
+            return true;
+        }
+
+        // Buckets the series would cover including this one; Long.MAX_VALUE if that does not fit a long
+        private long spanWith(long bucket) {
+            try {
+                return bucket < origin
+                        ? Math.addExact(Math.subtractExact(origin, bucket), length)
+                        : Math.max(length, Math.addExact(Math.subtractExact(bucket, origin), 1));
+            } catch (ArithmeticException e) {
+                return Long.MAX_VALUE;
+            }
+        }
+
+        public int size() {
+            return length;
+        }
+
+        // Start of a bucket as epoch milliseconds
+        public long bucketStart(int index) {
+            return (origin + index) * bucketMillis;
+        }
+
+        public double total(int index) {
+            return sums[index];
+        }
+
+        public long count(int index) {
+            return counts[index];
+        }
+
+        public double[] totals() {
+            return Arrays.copyOf(sums, length);
+        }
+
+        // Sum of the buckets [from, to)
+        public double windowSum(int from, int to) {
+            updatePrefix();
+            return prefix[to] - prefix[from];
+        }
+
+        // Trailing moving average of bucket totals; the first window-1 buckets average what is available
+        public double[] movingAverage(int window) {
+            if (window <= 0) throw new IllegalArgumentException("Window must be positive: " + window);
+            updatePrefix();
+            double[] averages = movingAverages.get(window);
+            int valid = movingAverageValid.getOrDefault(window, 0);
+            if (averages == null || averages.length < length) {
+                averages = averages == null ? new double[length] : Arrays.copyOf(averages, length);
+                movingAverages.put(window, averages);
+            }
+            for (int i = valid; i < length; i++) {
+                int from = Math.max(0, i + 1 - window);
+                averages[i] = (prefix[i + 1] - prefix[from]) / (i + 1 - from);
+            }
+            movingAverageValid.put(window, length);
+            return Arrays.copyOf(averages, length);
+        }
+
+        private void updatePrefix() {
+            if (prefix.length < length + 1) prefix = Arrays.copyOf(prefix, Math.max(length + 1, prefix.length * 2));
+            for (int i = prefixValid; i < length; i++) {
+                prefix[i + 1] = prefix[i] + sums[i];
+            }
+            prefixValid = length;
+        }
+
+        private void invalidateFrom(int index) {
+            if (index < prefixValid) prefixValid = index;
+            for (Map.Entry<Integer, Integer> valid : movingAverageValid.entrySet()) {
+                if (index < valid.getValue()) valid.setValue(index);
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= sums.length) return;
+            int grown = Math.max(capacity, sums.length * 2);
+            sums = Arrays.copyOf(sums, grown);
+            counts = Arrays.copyOf(counts, grown);
+        }
+
+        // An event older than the first bucket: move everything right to make room
+        private void shiftOrigin(long bucket) {
+            int shift = (int) (origin - bucket);
+            ensureCapacity(length + shift);
+            System.arraycopy(sums, 0, sums, shift, length);
+            System.arraycopy(counts, 0, counts, shift, length);
+            Arrays.fill(sums, 0, shift, 0.0);
+            Arrays.fill(counts, 0, shift, 0L);
+            length += shift;
+            origin = bucket;
+            prefixValid = 0;
+            movingAverages.clear();
+            movingAverageValid.clear();
+        }
+    }
+
+    // Classical additive decomposition: value = trend + seasonal + residual
+    public static class Decomposition {
+        private final double[] trend;
+        private final double[] seasonal;
+        private final double[] residual;
+
+        Decomposition(double[] trend, double[] seasonal, double[] residual) {
+            this.trend = trend;
+            this.seasonal = seasonal;
+            this.residual = residual;
+        }
+
+        // Centered moving average over one period; NaN where the window does not fit
+        public double[] getTrend() {
+            return trend;
+        }
+
+        public double[] getSeasonal() {
+            return seasonal;
+        }
+
+        public double[] getResidual() {
+            return residual;
+        }
+
+        // Peak-to-trough size of the seasonal pattern
+        public double seasonalAmplitude() {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double value : seasonal) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            return seasonal.length == 0 ? 0 : max - min;
+        }
+    }
+
+    public TrendEngine(Duration bucketSize) {
+        if (bucketSize.isZero() || bucketSize.isNegative()) throw new IllegalArgumentException("Bucket size must be positive: " + bucketSize);
+        this.bucketMillis = bucketSize.toMillis();
+    }
+
+    public void add(String category, long epochMillis, double value) {
+        long bucket = Math.floorDiv(epochMillis, bucketMillis);
+        if (!seriesFor(category, bucket).add(bucket, value)) {
+            throw new IllegalArgumentException("Event at " + epochMillis + " ms is more than " + MAX_BUCKETS
+                    + " buckets away from the other events of '" + category + "'");
+        }
+    }
+
+    // Add every event of a dataset. Timestamps may be epoch seconds/milliseconds or ISO dates/date-times
+    // (each distinct text value is parsed once); without a category column all events go to one series,
+    // and without a value column each event counts as 1. Events more than MAX_BUCKETS buckets away from the
+    // rest of their series are skipped and counted.
+    public void add(ColumnarDataset data, String timestampColumn, String categoryColumn, String valueColumn) {
+        int time = data.getColumnIndex(timestampColumn);
+        int category = categoryColumn == null ? -1 : data.getColumnIndex(categoryColumn);
+        int value = valueColumn == null ? -1 : data.getColumnIndex(valueColumn);
+        if (value >= 0 && !data.isNumeric(value)) throw new IllegalArgumentException("Value column '" + valueColumn + "' is not numeric");
+
+        long[] parsedCodes = null;
+        if (data.getColumnType(time) == ColumnarDataset.ColumnType.CATEGORICAL) {
+            List<String> dictionary = data.dictionary(time);
+            parsedCodes = new long[dictionary.size()];
+            for (int code = 0; code < parsedCodes.length; code++) {
+                parsedCodes[code] = parseTimestamp(dictionary.get(code));
+            }
+        }
+
+        // Resolve each category's series once per dictionary code rather than once per event
+        Series[] seriesByCode = category >= 0 && data.getColumnType(category) == ColumnarDataset.ColumnType.CATEGORICAL
+                ? new Series[data.dictionary(category).size()] : null;
+
+        long skipped = 0;
+        long outOfRange = 0;
+        for (int row = 0; row < data.getRowCount(); row++) {
+            if (data.isNull(row, time) || (value >= 0 && data.isNull(row, value))) {
+                skipped++;
+                continue;
+            }
+            long millis;
+            if (parsedCodes != null) {
+                millis = parsedCodes[data.getCategoryCode(row, time)];
+                if (millis == Long.MIN_VALUE) {
+                    skipped++;
+                    continue;
+                }
+            } else {
+                millis = toEpochMillis(data.getDouble(row, time));
+            }
+            long bucket = Math.floorDiv(millis, bucketMillis);
+            Series target;
+            if (seriesByCode != null && !data.isNull(row, category)) {
+                int code = data.getCategoryCode(row, category);
+                target = seriesByCode[code];
+                if (target == null) target = seriesByCode[code] = seriesFor(data.getString(row, category), bucket);
+            } else {
+                target = seriesFor(category < 0 || data.isNull(row, category) ? ALL_CATEGORIES : data.getString(row, category), bucket);
+            }
+            if (!target.add(bucket, value < 0 ? 1.0 : data.getDouble(row, value))) outOfRange++;
+        }
+        if (skipped > 0) System.out.println("Skipped " + skipped + " events without a usable timestamp or value.");
+        if (outOfRange > 0) {
+            System.out.println("Skipped " + outOfRange + " events more than " + MAX_BUCKETS
+                    + " buckets away from the rest of their series; check " + timestampColumn + " for bad timestamps.");
+        }
+    }
+
+    private Series seriesFor(String category, long firstBucket) {
+        return series.computeIfAbsent(category, c -> new Series(bucketMillis, firstBucket));
+    }
+
+    public Set<String> categories() {
+        return Collections.unmodifiableSet(series.keySet());
+    }
+
+    public Series series(String category) {
+        Series found = series.get(category);
+        if (found == null) throw new IllegalArgumentException("No events for category '" + category + "'");
+        return found;
+    }
+
+    // Non-overlapping windows of bucketsPerWindow buckets, aligned to the first bucket
+    public double[] tumblingWindows(String category, int bucketsPerWindow) {
+        if (bucketsPerWindow <= 0) throw new IllegalArgumentException("Window must be positive: " + bucketsPerWindow);
+        Series s = series(category);
+        double[] windows = new double[(s.size() + bucketsPerWindow - 1) / bucketsPerWindow];
+        for (int w = 0; w < windows.length; w++) {
+            windows[w] = s.windowSum(w * bucketsPerWindow, Math.min(s.size(), (w + 1) * bucketsPerWindow));
+        }
+        return windows;
+    }
+
+    // Sums of overlapping windows of bucketsPerWindow buckets advancing by step buckets
+    public double[] slidingWindows(String category, int bucketsPerWindow, int step) {
+        if (bucketsPerWindow <= 0 || step <= 0) throw new IllegalArgumentException("Window and step must be positive");
+        Series s = series(category);
+        if (s.size() < bucketsPerWindow) return new double[0];
+        double[] windows = new double[(s.size() - bucketsPerWindow) / step + 1];
+        for (int w = 0; w < windows.length; w++) {
+            windows[w] = s.windowSum(w * step, w * step + bucketsPerWindow);
+        }
+        return windows;
+    }
+
+    public double[] movingAverage(String category, int window) {
+        return series(category).movingAverage(window);
+    }
+
+    // Relative change of each bucket against the bucket one period earlier (NaN without a comparable value)
+    public double[] periodOverPeriod(String category, int period) {
+        if (period <= 0) throw new IllegalArgumentException("Period must be positive: " + period);
+        Series s = series(category);
+        double[] changes = new double[s.size()];
+        for (int i = 0; i < changes.length; i++) {
+            double previous = i >= period ? s.total(i - period) : 0;
+            changes[i] = previous == 0 ? Double.NaN : (s.total(i) - previous) / previous;
+        }
+        return changes;
+    }
+
+    // Change of the latest full period against the one before it, e.g. this week against last week
+    public double latestPeriodChange(String category, int period) {
+        Series s = series(category);
+        if (s.size() < 2 * period) return Double.NaN;
+        double current = s.windowSum(s.size() - period, s.size());
+        double previous = s.windowSum(s.size() - 2 * period, s.size() - period);
+        return previous == 0 ? Double.NaN : (current - previous) / previous;
+    }
+
+    public Decomposition decompose(String category, int period) {
+        if (period < 2) throw new IllegalArgumentException("Seasonal period must be at least 2: " + period);
+        Series s = series(category);
+        int n = s.size();
+        double[] values = s.totals();
+
+        // Centered moving average; even periods use a 2 x period average so the window stays centered
+        double[] trend = new double[n];
+        Arrays.fill(trend, Double.NaN);
+        int half = period / 2;
+        for (int i = half; i < n - half; i++) {
+            trend[i] = period % 2 == 1
+                    ? s.windowSum(i - half, i + half + 1) / period
+                    : (s.windowSum(i - half + 1, i + half) + 0.5 * (values[i - half] + values[i + half])) / period;
+        }
+
+        double[] phaseSums = new double[period];
+        int[] phaseCounts = new int[period];
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(trend[i])) continue;
+            phaseSums[i % period] += values[i] - trend[i];
+            phaseCounts[i % period]++;
+        }
+        double[] pattern = new double[period];
+        double mean = 0;
+        for (int p = 0; p < period; p++) {
+            pattern[p] = phaseCounts[p] == 0 ? 0 : phaseSums[p] / phaseCounts[p];
+            mean += pattern[p] / period;
+        }
+
+        double[] seasonal = new double[n];
+        double[] residual = new double[n];
+        for (int i = 0; i < n; i++) {
+            seasonal[i] = pattern[i % period] - mean;
+            residual[i] = values[i] - trend[i] - seasonal[i];
+        }
+        return new Decomposition(trend, seasonal, residual);
+    }
+
+    // Headline figures per category, formatted for the trend report
+    public Map<String, Object> summary(int movingAverageWindow, int period) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (String category : series.keySet()) {
+            Series s = series.get(category);
+            int last = s.size() - 1;
+            double[] average = s.movingAverage(movingAverageWindow);
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("total %.2f over %d buckets", s.windowSum(0, s.size()), s.size()));
+            line.append(String.format("; latest %s = %.2f", Instant.ofEpochMilli(s.bucketStart(last)), s.total(last)));
+            line.append(String.format("; %d-bucket moving average %.2f", movingAverageWindow, average[last]));
+            double change = latestPeriodChange(category, period);
+            if (!Double.isNaN(change)) line.append(String.format("; last %d buckets vs previous %+.1f%%", period, 100 * change));
+            if (s.size() >= 2 * period) {
+                line.append(String.format("; seasonal amplitude %.2f", decompose(category, period).seasonalAmplitude()));
+            }
+            summary.put(category, line.toString());
+        }
+        return summary;
+    }
+
+    // Epoch milliseconds of an ISO date, date-time or instant, or of a number of epoch seconds/milliseconds;
+    // Long.MIN_VALUE if the text is none of these
+    static long parseTimestamp(String text) {
+        String value = text.trim();
+        long fast = parseLocalDateTime(value);
+        if (fast != Long.MIN_VALUE) return fast;
+        try {
+            return toEpochMillis(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            // not numeric, try date formats
+        }
+        try {
+            if (value.length() <= 10) return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            if (value.endsWith("Z") || ZONE_OFFSET.matcher(value).find()) return OffsetDateTime.parse(value.replace(' ', 'T')).toInstant().toEpochMilli();
+            return LocalDateTime.parse(value.replace(' ', 'T')).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    // Fast path for the common "yyyy-MM-dd[ T]HH:mm[:ss]" form (UTC), read digit by digit instead of
+    // through a DateTimeFormatter; Long.MIN_VALUE for anything else
+    private static long parseLocalDateTime(String value) {
+        int length = value.length();
+        if ((length != 16 && length != 19) || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || (value.charAt(10) != ' ' && value.charAt(10) != 'T') || value.charAt(13) != ':'
+                || (length == 19 && value.charAt(16) != ':')) {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = length == 19 ? digits(value, 17, 2) : 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            long epochDay = LocalDate.of(year, month, day).toEpochDay();
+            return ((epochDay * 24 + hour) * 60 + minute) * 60_000L + second * 1000L;
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // Numbers below 10^11 are taken as epoch seconds (until the year 5138), larger ones as milliseconds
+    private static long toEpochMillis(double number) {
+        return Math.abs(number) < 1e11 ? (long) (number * 1000) : (long) number;
+    }
+}
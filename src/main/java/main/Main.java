@@ -3,70 +3,146 @@ package main;
 import functional.*;
 import user.*;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class Main {
-    public static void main(String[] args) {
+    // Values passed between pipeline stages
+    private static final PipelineOrchestrator.Key<ColumnarDataset> RAW = PipelineOrchestrator.Key.of("raw", ColumnarDataset.class);
+    private static final PipelineOrchestrator.Key<CleaningPipeline.Result> CLEANING = PipelineOrchestrator.Key.of("cleaning", CleaningPipeline.Result.class);
+    private static final PipelineOrchestrator.Key<ColumnarDataset> CLEANED = PipelineOrchestrator.Key.of("cleaned", ColumnarDataset.class);
+    private static final PipelineOrchestrator.Key<String> STORED = PipelineOrchestrator.Key.of("stored", String.class);
+    @SuppressWarnings("unchecked")
+    private static final PipelineOrchestrator.Key<Map<String, Object>> STATISTICS = PipelineOrchestrator.Key.of("statistics", (Class<Map<String, Object>>) (Class<?>) Map.class);
+    private static final PipelineOrchestrator.Key<Path> CHART = PipelineOrchestrator.Key.of("chart", Path.class);
+    private static final PipelineOrchestrator.Key<KMeansModel> SEGMENTS = PipelineOrchestrator.Key.of("segments", KMeansModel.class);
+    @SuppressWarnings("unchecked")
+    private static final PipelineOrchestrator.Key<List<BasketRule>> RULES = PipelineOrchestrator.Key.of("rules", (Class<List<BasketRule>>) (Class<?>) List.class);
+
+    public static void main(String[] args) throws InterruptedException {
         // Initialize Functional Classes
         DataIngestion dataIngestion = new DataIngestion();
         DataAnalysis dataAnalysis = new DataAnalysis();
         ReportingAndDashboards reporting = new ReportingAndDashboards();
         MLAnalysis mlAnalysis = new MLAnalysis(reporting);
 
+        // Stage metrics over JMX; Prometheus text at /metrics with -Dmetrics.port=9404, JFR events with -Dmetrics.jfr=true
+        Metrics metrics = PipelineMetrics.registry();
+        metrics.enableJmx();
+        MetricsServer metricsServer = MetricsServer.startIfConfigured(metrics);
+
         // Initialize User Roles
         Administrator admin = new Administrator("A001", "AdminUser");
         MarketingDataAnalyst analyst = new MarketingDataAnalyst("M001", "MarketingUser");
 
-        // File and Database Configurations ,,,,, check path name !!!!!!!!!!!! aaaaaa maram 
-        String csvFilePath = "src/main/resources/datasets/sample_data.csv";
+        // File and Database Configurations
+        String csvFilePath = args.length > 0 ? args[0] : "src/main/resources/datasets/sample_data.csv";
         String tableName = "CustomerBehaviorData";
-        String dbUrl = "jdbc:sqlite:src/main/resources/datasets/customer_behavior.db";
+        String dbUrl = DatabaseConfig.load().getUrl();
 
-        // Administrator Workflow
-        System.out.println("\n=== Administrator Workflow ===");
+        System.out.println("\n=== Customer Behavior Pipeline ===");
         admin.login();
-        admin.uploadDataset(csvFilePath, dataIngestion);
-        admin.cleanDataset(dataIngestion);
-        admin.storeDataset(dataIngestion, dbUrl, tableName);
-
-        Map<String, Object> adminMetrics = Map.of(
-                "TotalRows", 1000,
-                "CleanedRows", 950,
-                "OutliersRemoved", 50
-        );
-        admin.generateReport(reporting, "pdf", adminMetrics);
-        admin.logout();
-
-        // Marketing Data Analyst Workflow
-        System.out.println("\n=== Marketing Data Analyst Workflow ===");
         analyst.login();
 
-        // Perform descriptive statistics
-        List<Double> salesData = Arrays.asList(500.0, 450.0, 600.0, 700.0, 550.0);
-        analyst.performDescriptiveAnalysis(dataAnalysis, salesData);
-
-        // Generate visualizations
-        Map<String, Integer> productMetrics = Map.of(
-                "Electronics", 120,
-                "Fashion", 80,
-                "Home & Kitchen", 90
-        );
-        analyst.generateVisualizations(dataAnalysis, productMetrics);
+        // The data is loaded and cleaned once; storing, statistics, charts and every model then work on the
+        // same in-memory dataset concurrently. A failed stage only skips the stages that need its output.
+        PipelineOrchestrator pipeline = new PipelineOrchestrator();
+        pipeline.stage("Ingest").writes(RAW).run(context -> {
+            admin.uploadDataset(csvFilePath, dataIngestion);
+            if (dataIngestion.getDataset().getRowCount() == 0) throw new IllegalStateException("No rows imported from " + csvFilePath);
+            context.put(RAW, dataIngestion.getDataset());
+        });
+        pipeline.stage("Clean").reads(RAW).writes(CLEANING, CLEANED).run(context -> {
+            dataIngestion.setCleaningPipeline(new CleaningPipeline()
+                    .add(new CleaningPipeline.CoerceTypes())
+                    .add(new CleaningPipeline.ImputeMissing(CleaningPipeline.ImputeMissing.Strategy.MEDIAN))
+                    .add(new CleaningPipeline.RemoveOutliers(CleaningPipeline.RemoveOutliers.Method.IQR, 3.0)));
+            CleaningPipeline.Result cleaning = admin.cleanDataset(dataIngestion);
+            context.put(CLEANING, cleaning);
+            context.put(CLEANED, cleaning.getDataset());
+        });
+        pipeline.stage("Store").reads(CLEANED).writes(STORED).run(context -> {
+            admin.storeDataset(dataIngestion, dbUrl, tableName);
+            context.put(STORED, tableName);
+        });
+        pipeline.stage("Statistics").reads(CLEANED).writes(STATISTICS).run(context -> {
+            ColumnarDataset data = context.get(CLEANED);
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            for (String column : numericFeatures(data)) {
+                StreamingStatistics stats = dataAnalysis.summarize(data, column);
+                statistics.put(column + " mean", stats.getMean());
+                statistics.put(column + " median", stats.getMedian());
+                statistics.put(column + " std dev", stats.getStandardDeviation());
+            }
+            context.put(STATISTICS, statistics);
+        });
+        pipeline.stage("Charts").reads(CLEANED).writes(CHART).run(context -> {
+            ColumnarDataset data = context.get(CLEANED);
+            String category = firstCategory(data);
+            if (category == null) throw new IllegalStateException("No categorical column to chart");
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            dataAnalysis.topCategories(data, category, 10).forEach((key, count) -> counts.put(key, count.intValue()));
+            analyst.generateVisualizations(dataAnalysis, counts);
+            // Same data and spec as the analyst's chart, so on a headless run this is the cached image
+            context.put(CHART, reporting.renderChart(counts, ChartRenderer.ChartSpec.bar("Category Distribution", "Category", "Value")));
+        });
+        pipeline.stage("Churn").reads(CLEANED).run(context -> mlAnalysis.predictChurn(context.get(CLEANED)));
+        pipeline.stage("CLV").reads(CLEANED).run(context -> mlAnalysis.predictCLV(context.get(CLEANED)));
+        pipeline.stage("Segmentation").reads(CLEANED).writes(SEGMENTS).run(context -> {
+            ColumnarDataset data = context.get(CLEANED);
+            String idColumn = data.getColumnNames().get(0);
+            String base = csvFilePath.contains(".") ? csvFilePath.substring(0, csvFilePath.lastIndexOf('.')) : csvFilePath;
+            context.put(SEGMENTS, dataAnalysis.customerSegmentation(data, idColumn, numericFeatures(data), 3,
+                    Paths.get(base + "_segments.csv")));
+        });
+        pipeline.stage("Market Basket").reads(CLEANED).writes(RULES).run(context -> {
+            ColumnarDataset data = context.get(CLEANED);
+            String item = firstCategory(data);
+            if (item == null) throw new IllegalStateException("No categorical column to use as basket items");
+            context.put(RULES, dataAnalysis.marketBasketAnalysis(data, data.getColumnNames().get(0), item));
+        });
+        pipeline.stage("Report").readsIfPresent(CLEANING, STATISTICS, CHART, SEGMENTS, RULES).run(context -> {
+            Map<String, Object> reportMetrics = new LinkedHashMap<>();
+            CleaningPipeline.Result cleaning = context.get(CLEANING);
+            if (cleaning != null) reportMetrics.putAll(cleaning.toMetrics());
+            Map<String, Object> statistics = context.get(STATISTICS);
+            if (statistics != null) reportMetrics.putAll(statistics);
+            KMeansModel segments = context.get(SEGMENTS);
+            if (segments != null) reportMetrics.put("Segments", segments.getK());
+            List<BasketRule> rules = context.get(RULES);
+            if (rules != null) reportMetrics.put("BasketRules", rules.size());
+            Path chart = context.get(CHART);
+            admin.generateReport(reporting, "pdf", reportMetrics,
+                    chart == null ? Collections.emptyList() : Collections.singletonList(chart));
+        });
 
-        // Run machine learning models
-        analyst.runChurnPrediction(mlAnalysis, csvFilePath);
-        analyst.performSegmentation(dataAnalysis, csvFilePath);
-
-        // Generate a report ,,,,, CHECK IT 
-        Map<String, Object> analystMetrics = Map.of(
-                "ChurnRate", "20%",
-                "TopSegment", "High-Value Customers",
-                "TopCategory", "Electronics"
-        );
-        analyst.generateReport(reporting, "txt", analystMetrics);
+        PipelineOrchestrator.Result result = pipeline.run();
+        System.out.println("\n=== Pipeline Stages ===");
+        result.getStages().forEach(System.out::println);
+        reporting.generateReport("Pipeline_Summary", result.toMetrics(), "txt");
 
         analyst.logout();
+        admin.logout();
+        if (metricsServer != null) metricsServer.close();
+        System.out.println(result.isSuccessful()
+                ? "\n=== System Integration Completed Successfully ==="
+                : "\n=== System Integration Completed With Failed Stages ===");
+    }
+
+    // Numeric columns other than the leading customer ID
+    private static List<String> numericFeatures(ColumnarDataset data) {
+        List<String> features = new ArrayList<>();
+        for (int c = 1; c < data.getColumnCount(); c++) {
+            if (data.isNumeric(c)) features.add(data.getColumnNames().get(c));
+        }
+        return features;
+    }
 
-        System.out.println("\n=== System Integration Completed Successfully ===");
+    private static String firstCategory(ColumnarDataset data) {
+        for (int c = 1; c < data.getColumnCount(); c++) {
+            if (!data.isNumeric(c)) return data.getColumnNames().get(c);
+        }
+        return null;
     }
 }
@@ -1,8 +1,11 @@
 package user;
 
+import functional.CleaningPipeline;
 import functional.DataIngestion;
 import functional.ReportingAndDashboards;
 
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 
 public class Administrator extends User {
@@ -22,10 +25,10 @@ public class Administrator extends User {
         dataIngestion.importData(filePath);
     }
 
-    // Clean dataset
-    public void cleanDataset(DataIngestion dataIngestion) {
+    // Clean dataset; the per-stage row counts and timings feed the admin report
+    public CleaningPipeline.Result cleanDataset(DataIngestion dataIngestion) {
         System.out.println("Administrator cleaning dataset...");
-        dataIngestion.cleanData();
+        return dataIngestion.cleanData();
     }
 
     // Store dataset
@@ -37,7 +40,13 @@ public class Administrator extends User {
     // Generate Reports
     public void generateReport(ReportingAndDashboards reporting, String format, Map<String, Object> metrics) {
         System.out.println("Administrator generating report in " + format + " format...");
-        reporting.generateReport(format, metrics);
+        reporting.generateReport("Administrator_Report", metrics, format);
+    }
+
+    // Generate Reports with chart images embedded below the metrics
+    public void generateReport(ReportingAndDashboards reporting, String format, Map<String, Object> metrics, List<Path> charts) {
+        System.out.println("Administrator generating report in " + format + " format...");
+        reporting.generateReport("Administrator_Report", metrics, format, charts);
     }
 }
 
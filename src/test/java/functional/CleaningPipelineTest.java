@@ -0,0 +1,155 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class CleaningPipelineTest {
+
+    private static ColumnarDataset dataset(String[]... rows) {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("CustomerID", "Spend", "Segment"));
+        for (String[] row : rows) builder.addRow(row);
+        return builder.build();
+    }
+
+    // Spend 1 .. 10 plus one extreme value, every segment "A" except the last two
+    private static ColumnarDataset withOutlier() {
+        String[][] rows = new String[11][];
+        for (int i = 0; i < 10; i++) rows[i] = new String[]{"C" + i, Integer.toString(i + 1), i < 8 ? "A" : "B"};
+        rows[10] = new String[]{"C10", "100", "B"};
+        return dataset(rows);
+    }
+
+    @Test
+    public void coerceTypesConvertsMostlyNumericText() {
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "$1,200", "A"},
+                new String[]{"C1", " 3.5 ", "B"},
+                new String[]{"C2", "7", "A"},
+                new String[]{"C3", "n/a", "B"});
+
+        CleaningPipeline.Result result = new CleaningPipeline().add(new CleaningPipeline.CoerceTypes(0.75)).run(data);
+        ColumnarDataset cleaned = result.getDataset();
+
+        assertTrue(cleaned.isNumeric(1));
+        assertEquals(1200.0, cleaned.getDouble(0, 1), 0.0);
+        assertEquals(3.5, cleaned.getDouble(1, 1), 0.0);
+        assertTrue(cleaned.isNull(3, 1));
+        // Too few numbers: stays text
+        assertFalse(cleaned.isNumeric(2));
+        assertEquals(4, result.getStages().get(0).getCellsChanged());
+    }
+
+    @Test
+    public void coerceTypesLeavesMostlyTextColumnsAlone() {
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "$1,200", "A"},
+                new String[]{"C1", "n/a", "B"});
+
+        ColumnarDataset cleaned = new CleaningPipeline().add(new CleaningPipeline.CoerceTypes()).run(data).getDataset();
+
+        assertFalse(cleaned.isNumeric(1));
+        assertEquals("n/a", cleaned.getString(1, 1));
+    }
+
+    @Test
+    public void imputeMissingFillsNumbersAndCategories() {
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "1", "A"},
+                new String[]{"C1", "2", "B"},
+                new String[]{"C2", "", "B"},
+                new String[]{"C3", "9", ""});
+
+        ColumnarDataset mean = new CleaningPipeline()
+                .add(new CleaningPipeline.ImputeMissing(CleaningPipeline.ImputeMissing.Strategy.MEAN)).run(data).getDataset();
+        assertEquals(4.0, mean.getDouble(2, 1), 1e-12);
+        assertEquals("B", mean.getString(3, 2));
+        assertEquals(0, mean.nullCount(1));
+        assertEquals(0, mean.nullCount(2));
+
+        ColumnarDataset median = new CleaningPipeline()
+                .add(new CleaningPipeline.ImputeMissing(CleaningPipeline.ImputeMissing.Strategy.MEDIAN)).run(data).getDataset();
+        assertEquals(2.0, median.getDouble(2, 1), 1e-12);
+    }
+
+    @Test
+    public void dropIncompleteAlsoChecksTheIdColumn() {
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "1", "A"},
+                new String[]{"", "2", "B"},
+                new String[]{"C2", "", "B"},
+                new String[]{"C3", "4", ""},
+                new String[]{"C4", "5", "A"});
+
+        CleaningPipeline.Result result = CleaningPipeline.dropIncomplete().run(data);
+
+        assertEquals(2, result.getDataset().getRowCount());
+        assertEquals("C0", result.getDataset().getString(0, 0));
+        assertEquals("C4", result.getDataset().getString(1, 0));
+        assertEquals(3, result.getRowsRemovedBy(CleaningPipeline.DropIncomplete.class));
+        BitSet kept = new BitSet();
+        kept.set(0);
+        kept.set(4);
+        assertEquals(kept, result.getKeptRows());
+    }
+
+    @Test
+    public void removeOutliersByInterquartileRange() {
+        // Quartiles of 1 .. 10 and 100 are 3.5 and 8.5, so everything above 16 goes
+        CleaningPipeline.Result result = new CleaningPipeline()
+                .add(new CleaningPipeline.RemoveOutliers(CleaningPipeline.RemoveOutliers.Method.IQR, 1.5))
+                .run(withOutlier());
+
+        assertEquals(10, result.getDataset().getRowCount());
+        assertEquals(1, result.getRowsRemovedBy(CleaningPipeline.RemoveOutliers.class));
+        assertEquals(1, result.toMetrics().get("OutliersRemoved"));
+        assertFalse(result.getKeptRows().get(10));
+    }
+
+    @Test
+    public void laterStagesAreFittedOnTheRowsLeftByEarlierOnes() {
+        CleaningPipeline.Result result = new CleaningPipeline()
+                .add(new CleaningPipeline.RemoveOutliers(CleaningPipeline.RemoveOutliers.Method.IQR, 1.5))
+                .add(new CleaningPipeline.Normalize(CleaningPipeline.Normalize.Method.MIN_MAX))
+                .run(withOutlier());
+        ColumnarDataset cleaned = result.getDataset();
+
+        // Scaled over 1 .. 10, not 1 .. 100
+        assertEquals(0.0, cleaned.getDouble(0, 1), 1e-12);
+        assertEquals(1.0, cleaned.getDouble(9, 1), 1e-12);
+        assertEquals(4.0 / 9, cleaned.getDouble(4, 1), 1e-12);
+        assertEquals(2, result.getStages().size());
+        assertEquals(11, result.getStages().get(0).getRowsIn());
+        assertEquals(10, result.getStages().get(1).getRowsIn());
+    }
+
+    @Test
+    public void zScoreNormalizationCentersTheColumn() {
+        ColumnarDataset cleaned = new CleaningPipeline()
+                .add(new CleaningPipeline.Normalize(CleaningPipeline.Normalize.Method.Z_SCORE))
+                .run(dataset(new String[]{"C0", "2", "A"}, new String[]{"C1", "4", "A"}, new String[]{"C2", "6", "A"}))
+                .getDataset();
+
+        assertEquals(-1.0, cleaned.getDouble(0, 1), 1e-12);
+        assertEquals(0.0, cleaned.getDouble(1, 1), 1e-12);
+        assertEquals(1.0, cleaned.getDouble(2, 1), 1e-12);
+    }
+
+    @Test
+    public void stagesCanBeRestrictedToColumns() {
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "1", "A"},
+                new String[]{"C1", "", ""},
+                new String[]{"C2", "3", "A"});
+
+        ColumnarDataset cleaned = new CleaningPipeline()
+                .add(new CleaningPipeline.ImputeMissing(CleaningPipeline.ImputeMissing.Strategy.MEAN).on("Segment"))
+                .run(data).getDataset();
+
+        assertTrue(cleaned.isNull(1, 1));
+        assertEquals("A", cleaned.getString(1, 2));
+    }
+}
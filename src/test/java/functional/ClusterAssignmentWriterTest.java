@@ -0,0 +1,86 @@
+package functional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClusterAssignmentWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void idsWithSpecialCharactersRoundTrip() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("segments.csv");
+        List<String> ids = Arrays.asList("C1", "Smith, J", "say \"hi\"", " padded ", null, "");
+
+        ClusterAssignmentWriter.toFile(file, "CustomerID", ids, new int[]{0, 1, 2, 0, 1, 2});
+
+        assertEquals(new HashSet<>(Arrays.asList("C1", "Smith, J", "say \"hi\"", " padded ")),
+                ClusterAssignmentWriter.readIds(file));
+    }
+
+    @Test
+    public void failedRewriteKeepsPreviousAssignments() throws Exception {
+        String url = "jdbc:sqlite:" + folder.getRoot().toPath().resolve("segments.db");
+        try (Connection connection = DriverManager.getConnection(url)) {
+            ClusterAssignmentWriter.toTable(connection, "Segments", "CustomerID", Arrays.asList("C1", "C2"), new int[]{0, 1});
+
+            // Fails after a few rows have been queued
+            List<String> failing = new AbstractList<String>() {
+                @Override
+                public String get(int index) {
+                    if (index == 3) throw new IllegalStateException("source failed");
+                    return "N" + index;
+                }
+
+                @Override
+                public int size() {
+                    return 5;
+                }
+            };
+            try {
+                ClusterAssignmentWriter.toTable(connection, "Segments", "CustomerID", failing, new int[5]);
+                fail("Expected the write to fail");
+            } catch (IllegalStateException expected) {
+                // the old table must be untouched
+            }
+
+            assertEquals(2, count(connection, "Segments"));
+            ClusterAssignmentWriter.toTable(connection, "Segments", "CustomerID", Arrays.asList("C3"), new int[]{2});
+            assertEquals(1, count(connection, "Segments"));
+        }
+    }
+
+    @Test
+    public void storedClustersAreReadBackPerCustomer() throws Exception {
+        String url = "jdbc:sqlite:" + folder.getRoot().toPath().resolve("segments.db");
+        try (Connection connection = DriverManager.getConnection(url)) {
+            List<String> ids = Arrays.asList("C1", "C9", null, "C2");
+            assertArrayEquals(new int[]{-1, -1, -1, -1}, ClusterAssignmentWriter.readClusters(connection, "Segments", "CustomerID", ids));
+
+            ClusterAssignmentWriter.toTable(connection, "Segments", "CustomerID", Arrays.asList("C1", "C2"), new int[]{2, 1});
+
+            assertArrayEquals(new int[]{2, -1, -1, 1}, ClusterAssignmentWriter.readClusters(connection, "Segments", "CustomerID", ids));
+        }
+    }
+
+    private static int count(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM \"" + table + "\"")) {
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ColumnarDatasetTest {
+    private static ColumnarDataset column(String... values) {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Collections.singletonList("Value"));
+        for (String value : values) builder.addRow(new String[]{value});
+        return builder.build();
+    }
+
+    @Test
+    public void numbersWidenedToCategoricalKeepTheirText() {
+        ColumnarDataset data = column("3", "19.90", "1e3", "-0.0", "+7", "0.10000000000000000001", "", "abc");
+
+        assertEquals(ColumnarDataset.ColumnType.CATEGORICAL, data.getColumnType(0));
+        assertEquals("3", data.getString(0, 0));
+        assertEquals("19.90", data.getString(1, 0));
+        assertEquals("1e3", data.getString(2, 0));
+        assertEquals("-0.0", data.getString(3, 0));
+        assertEquals("+7", data.getString(4, 0));
+        assertEquals("0.10000000000000000001", data.getString(5, 0));
+        assertNull(data.getString(6, 0));
+        assertEquals("abc", data.getString(7, 0));
+    }
+
+    @Test
+    public void concatKeepsTheTextOfNumericParts() {
+        ColumnarDataset prices = column("19.90", "5", "+3", "");
+        ColumnarDataset counts = column("12", "-0");
+        ColumnarDataset labels = column("n/a");
+
+        assertEquals(ColumnarDataset.ColumnType.DOUBLE, prices.getColumnType(0));
+        assertEquals("19.9", prices.getString(0, 0));
+
+        // Rows that went through retainRows keep their text too
+        BitSet keep = new BitSet();
+        keep.set(0, 3);
+        ColumnarDataset merged = ColumnarDataset.concat(Arrays.asList(prices.retainRows(keep), counts, labels));
+
+        assertEquals(ColumnarDataset.ColumnType.CATEGORICAL, merged.getColumnType(0));
+        assertEquals(Arrays.asList("19.90", "5", "+3", "12", "-0", "n/a"), merged.dictionary(0));
+    }
+
+    @Test
+    public void leadingZerosStayTextual() {
+        ColumnarDataset ids = column("007", "01234", "-00.5");
+        assertEquals(ColumnarDataset.ColumnType.CATEGORICAL, ids.getColumnType(0));
+        assertEquals(Arrays.asList("007", "01234", "-00.5"), ids.dictionary(0));
+
+        // A zip code after plain numbers widens the column instead of parsing as 2134.0
+        ColumnarDataset zips = column("12345", "02134");
+        assertEquals(ColumnarDataset.ColumnType.CATEGORICAL, zips.getColumnType(0));
+        assertEquals("02134", zips.getString(1, 0));
+
+        ColumnarDataset fractions = column("0.5", "-0.5", "0", "10e2");
+        assertEquals(ColumnarDataset.ColumnType.DOUBLE, fractions.getColumnType(0));
+        assertArrayEquals(new double[]{0.5, -0.5, 0, 1000}, fractions.doubleValues(0), 0);
+    }
+
+    @Test
+    public void integersWidenedToDoublesStayNumeric() {
+        ColumnarDataset data = ColumnarDataset.concat(Arrays.asList(column("1", "2"), column("2.5")));
+
+        assertEquals(ColumnarDataset.ColumnType.DOUBLE, data.getColumnType(0));
+        assertArrayEquals(new double[]{1, 2, 2.5}, data.doubleValues(0), 0);
+    }
+}
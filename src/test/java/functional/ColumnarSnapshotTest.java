@@ -0,0 +1,97 @@
+package functional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ColumnarSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // One column of each type, each with missing values; IDs beyond double precision must survive as longs
+    private static ColumnarDataset dataset() {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("CustomerID", "Spend", "Segment", "Note"));
+        builder.addRow(new String[]{"9007199254740993", "19.90", "Gold", "first"});
+        builder.addRow(new String[]{"2", "", "Silver", ""});
+        builder.addRow(new String[]{"", "-0.5", "", "caf\u00e9, \"quoted\""});
+        builder.addRow(new String[]{"4", "1e300", "Gold", ""});
+        return builder.build();
+    }
+
+    private static void assertSameData(ColumnarDataset expected, ColumnarDataset actual) {
+        assertEquals(expected.getColumnNames(), actual.getColumnNames());
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        for (int c = 0; c < expected.getColumnCount(); c++) {
+            assertEquals(expected.getColumnType(c), actual.getColumnType(c));
+            assertEquals(expected.nullCount(c), actual.nullCount(c));
+            for (int r = 0; r < expected.getRowCount(); r++) {
+                String cell = "row " + r + ", column " + c;
+                assertEquals(cell, expected.isNull(r, c), actual.isNull(r, c));
+                assertEquals(cell, expected.getString(r, c), actual.getString(r, c));
+                if (!expected.isNull(r, c) && expected.getColumnType(c) == ColumnarDataset.ColumnType.LONG) {
+                    assertEquals(cell, expected.getLong(r, c), actual.getLong(r, c));
+                }
+            }
+        }
+    }
+
+    private void roundTrip(boolean compress) throws IOException {
+        ColumnarDataset data = dataset();
+        Path file = folder.getRoot().toPath().resolve("data" + ColumnarSnapshot.EXTENSION);
+
+        ColumnarSnapshot.write(data, file, null, compress);
+
+        assertSameData(data, ColumnarSnapshot.read(file));
+    }
+
+    @Test
+    public void uncompressedSnapshotReadsBackEqual() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void compressedSnapshotReadsBackEqual() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void emptyDatasetRoundTrips() throws IOException {
+        ColumnarDataset data = ColumnarDataset.empty(Arrays.asList("CustomerID", "Spend"));
+        Path file = folder.getRoot().toPath().resolve("empty" + ColumnarSnapshot.EXTENSION);
+
+        ColumnarSnapshot.write(data, file, null, true);
+
+        assertSameData(data, ColumnarSnapshot.read(file));
+    }
+
+    @Test
+    public void sourceIsRecordedInTheHeader() throws IOException {
+        Path csv = folder.newFile("data.csv").toPath();
+        Files.write(csv, "CustomerID,Spend\n1,2\n".getBytes("UTF-8"));
+        Path file = folder.getRoot().toPath().resolve("data" + ColumnarSnapshot.EXTENSION);
+
+        ColumnarSnapshot.write(dataset(), file, ColumnarSnapshot.Source.of(csv), false);
+
+        assertTrue(ColumnarSnapshot.readSource(file).matches(csv));
+        Files.write(csv, "CustomerID,Spend\n1,2\n3,4\n".getBytes("UTF-8"));
+        assertFalse(ColumnarSnapshot.readSource(file).matches(csv));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshotIsRejected() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("data" + ColumnarSnapshot.EXTENSION);
+        ColumnarSnapshot.write(dataset(), file, null, false);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 9));
+
+        ColumnarSnapshot.read(file);
+    }
+}
@@ -0,0 +1,107 @@
+package functional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        String url = "jdbc:sqlite:" + folder.getRoot().toPath().resolve("pool.db");
+        pool = new ConnectionPool(new DatabaseConfig(url, "", "", 2, 16, 1000, 200));
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void writerIsExclusiveEvenWhenALeaseIsClosedTwice() throws Exception {
+        ConnectionPool.Lease first = pool.write();
+        try {
+            pool.write();
+            fail("Expected the second writer to wait for the first");
+        } catch (SQLTimeoutException expected) {
+            // one write connection, one holder
+        }
+        first.close();
+        first.close();
+
+        ConnectionPool.Lease second = pool.write();
+        try {
+            pool.write();
+            fail("Expected the double close to have released the writer only once");
+        } catch (SQLTimeoutException expected) {
+            // still held by second
+        }
+        // a stale lease cannot hand back the connection second holds now
+        first.close();
+        try {
+            pool.write();
+            fail("Expected the writer to stay leased");
+        } catch (SQLTimeoutException expected) {
+            // still held by second
+        }
+        try {
+            first.getConnection();
+            fail("Expected a released lease to be unusable");
+        } catch (IllegalStateException expected) {
+            // released
+        }
+        second.close();
+        pool.write().close();
+    }
+
+    @Test
+    public void readersAreReusedAfterClose() throws Exception {
+        try (ConnectionPool.Lease writer = pool.write(); Statement statement = writer.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE t (x INTEGER)");
+            statement.execute("INSERT INTO t VALUES (1)");
+        }
+
+        Connection connection;
+        try (ConnectionPool.Lease reader = pool.read()) {
+            connection = reader.getConnection();
+            assertTrue(reader.prepare("SELECT x FROM t").executeQuery().next());
+        }
+        try (ConnectionPool.Lease reader = pool.read()) {
+            assertSame(connection, reader.getConnection());
+            assertTrue(reader.prepare("SELECT x FROM t").executeQuery().next());
+        }
+
+        // both permits in use: a third reader waits, and closing one lease twice frees only one permit
+        ConnectionPool.Lease a = pool.read();
+        ConnectionPool.Lease b = pool.read();
+        try {
+            pool.read();
+            fail("Expected a third reader to time out");
+        } catch (SQLTimeoutException expected) {
+            // two readers configured
+        }
+        a.close();
+        a.close();
+        ConnectionPool.Lease c = pool.read();
+        try {
+            pool.read();
+            fail("Expected the double close to free one permit only");
+        } catch (SQLTimeoutException expected) {
+            // b and c hold both permits
+        }
+        b.close();
+        c.close();
+    }
+}
@@ -0,0 +1,98 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FPGrowthTest {
+    // 20 baskets, so a 10% minimum support is exactly 2 baskets for both miners
+    private static final String[][] BASKETS = {
+            {"bread", "milk"},
+            {"bread", "diapers", "beer", "eggs"},
+            {"milk", "diapers", "beer", "cola"},
+            {"bread", "milk", "diapers", "beer"},
+            {"bread", "milk", "diapers", "cola"},
+            {"milk", "eggs"},
+            {"bread", "butter"},
+            {"bread", "milk", "butter"},
+            {"beer", "chips"},
+            {"beer", "chips", "cola"},
+            {"diapers", "beer", "chips"},
+            {"bread", "milk", "eggs", "butter"},
+            {"cola"},
+            {"milk", "cola", "chips"},
+            {"bread", "eggs"},
+            {"diapers", "milk"},
+            {"bread", "milk", "diapers", "beer", "chips"},
+            {"butter", "eggs"},
+            {"beer"},
+            {"bread", "milk", "cola"},
+    };
+
+    private static TransactionBaskets baskets() {
+        Map<String, List<String>> byCustomer = new LinkedHashMap<>();
+        for (int b = 0; b < BASKETS.length; b++) byCustomer.put("C" + b, Arrays.asList(BASKETS[b]));
+        return TransactionBaskets.fromLists(byCustomer);
+    }
+
+    // "a,b => c" with both sides sorted, mapped to {support, confidence, lift}
+    private static Map<String, double[]> byRule(List<BasketRule> rules) {
+        Map<String, double[]> byRule = new TreeMap<>();
+        for (BasketRule rule : rules) {
+            List<String> antecedent = new ArrayList<>(rule.getAntecedent());
+            List<String> consequent = new ArrayList<>(rule.getConsequent());
+            Collections.sort(antecedent);
+            Collections.sort(consequent);
+            String key = String.join(",", antecedent) + " => " + String.join(",", consequent);
+            assertNull("duplicate rule " + key, byRule.put(key, new double[]{rule.getSupport(), rule.getConfidence(), rule.getLift()}));
+        }
+        return byRule;
+    }
+
+    @Test
+    public void rulesMatchWekaApriori() throws Exception {
+        TransactionBaskets baskets = baskets();
+        double minSupport = 0.1;
+        double minConfidence = 0.5;
+
+        Map<String, double[]> apriori = byRule(RecommendationEngine.build(baskets, minSupport, minConfidence,
+                RecommendationEngine.DEFAULT_MAX_RULES).getRules());
+        // Apriori filters on confidence only, so accept any lift
+        Map<String, double[]> fpGrowth = byRule(new FPGrowth(minSupport, minConfidence, 0.0, 2).mineRules(baskets));
+
+        assertFalse(apriori.isEmpty());
+        assertEquals(apriori.keySet(), fpGrowth.keySet());
+        for (Map.Entry<String, double[]> rule : apriori.entrySet()) {
+            assertArrayEquals(rule.getKey(), rule.getValue(), fpGrowth.get(rule.getKey()), 1e-9);
+        }
+    }
+
+    @Test
+    public void itemsetCountsAreExact() throws Exception {
+        TransactionBaskets baskets = baskets();
+        Map<String, Long> counts = new HashMap<>();
+        for (FPGrowth.Itemset itemset : new FPGrowth(0.1, 0.5, 0.0, 1).mineItemsets(baskets)) {
+            List<String> names = new ArrayList<>(baskets.itemNames(itemset.getItems()));
+            Collections.sort(names);
+            counts.put(String.join(",", names), itemset.getCount());
+        }
+
+        assertEquals(Long.valueOf(10), counts.get("bread"));
+        assertEquals(Long.valueOf(4), counts.get("bread,diapers"));
+        assertEquals(Long.valueOf(3), counts.get("beer,bread,diapers"));
+        assertEquals(Long.valueOf(2), counts.get("beer,bread,diapers,milk"));
+        // butter and cola are never bought together
+        assertNull(counts.get("butter,cola"));
+    }
+
+    @Test
+    public void maxItemsetSizeLimitsTheMinedItemsets() throws Exception {
+        FPGrowth miner = new FPGrowth(0.1, 0.5, 0.0, 1);
+        miner.setMaxItemsetSize(2);
+        for (FPGrowth.Itemset itemset : miner.mineItemsets(baskets())) {
+            assertTrue(itemset.size() <= 2);
+        }
+    }
+}
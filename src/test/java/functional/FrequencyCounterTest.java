@@ -0,0 +1,65 @@
+package functional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FrequencyCounterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ColumnarDataset data(String... rows) {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("Store", "SKU", "Price"));
+        for (String row : rows) builder.addRow(row.split(",", -1));
+        return builder.build();
+    }
+
+    @Test
+    public void numericColumnsAreCountedByValue() {
+        ColumnarDataset data = data("S1,1001,9.5", "S2,1002,9.50", "S1,1001,", "S3,1001,2", "S2,,2.0");
+        FrequencyCounter counter = new FrequencyCounter();
+
+        assertEquals(ColumnarDataset.ColumnType.LONG, data.getColumnType(1));
+        Map<String, Long> skus = counter.frequencies(data, "SKU");
+        assertEquals(Arrays.asList("1001", "1002"), new ArrayList<>(skus.keySet()));
+        assertEquals(Long.valueOf(3), skus.get("1001"));
+
+        Map<String, Long> prices = counter.topK(data, "Price", 1);
+        assertEquals(1, prices.size());
+        assertEquals(Long.valueOf(2), prices.values().iterator().next());
+
+        assertEquals(Long.valueOf(2), counter.topK(data, "Store", 2).get("S1"));
+    }
+
+    @Test
+    public void approximateTopKStreamsTheFile() throws Exception {
+        StringBuilder csv = new StringBuilder("Store,\"Item, name\"\n");
+        for (int i = 0; i < 1000; i++) {
+            String item = i % 2 == 0 ? "apples" : i % 5 == 0 ? "pears" : "item" + i;
+            csv.append("S").append(i % 3).append(",\"").append(item).append("\"\n");
+        }
+        csv.append("S1\n,\n");
+        Path file = folder.newFile("sales.csv").toPath();
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<SpaceSavingSketch.Estimate<String>> top = new FrequencyCounter().approximateTopK(file, ',', "Item, name", 2, 50);
+
+        assertEquals("apples", top.get(0).getItem());
+        assertTrue(top.get(0).getCount() >= 500);
+        assertEquals("pears", top.get(1).getItem());
+        assertTrue(top.get(1).getCount() >= 100);
+        try {
+            new FrequencyCounter().approximateTopK(file, ',', "Missing", 2, 50);
+            fail("Expected an unknown column to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // the header has no such column
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package functional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IncrementalIngestionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConnectionPool pool;
+    private IncrementalIngestion ingestion;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ConnectionPool(new DatabaseConfig("jdbc:sqlite:" + folder.getRoot().toPath().resolve("store.db")));
+        ingestion = new IncrementalIngestion(pool);
+        ingestion.setNaturalKey(Collections.singletonList("CustomerID"));
+        file = folder.getRoot().toPath().resolve("customers.csv");
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    private void write(String content, StandardOpenOption... options) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), options);
+    }
+
+    private Map<String, String> stored() throws Exception {
+        Map<String, String> spend = new HashMap<>();
+        try (ConnectionPool.Lease lease = pool.read();
+             ResultSet rs = lease.prepare("SELECT CustomerID, Spend FROM Customers").executeQuery()) {
+            while (rs.next()) spend.put(rs.getString(1), rs.getString(2));
+        }
+        return spend;
+    }
+
+    private static void assertCounts(IncrementalIngestion.Result result, long inserted, long updated, long unchanged) {
+        assertEquals("inserted", inserted, result.getRowsInserted());
+        assertEquals("updated", updated, result.getRowsUpdated());
+        assertEquals("unchanged", unchanged, result.getRowsUnchanged());
+        assertEquals(result.getRowsRead(), result.getRowsInserted() + result.getRowsUpdated()
+                + result.getRowsUnchanged() + result.getRowsRejected());
+    }
+
+    @Test
+    public void keysRepeatedInTheFirstLoadAreInsertedOnce() throws Exception {
+        ingestion.setBatchSize(3);
+        // C1 repeats unchanged in its batch, C2 changes in its batch, C3 changes in a later batch
+        write("CustomerID,Spend\nC1,10\nC1,10\nC2,20\nC2,25\nC3,30\nC4,40\nC3,35\n");
+
+        IncrementalIngestion.Result result = ingestion.ingest(file, ',', "Customers");
+
+        assertEquals(IncrementalIngestion.Change.NEW, result.getChange());
+        assertCounts(result, 4, 2, 1);
+        Map<String, String> spend = stored();
+        assertEquals(4, spend.size());
+        assertEquals("25", spend.get("C2"));
+        assertEquals("35", spend.get("C3"));
+    }
+
+    @Test
+    public void keysRepeatedWithinAnUnflushedBatchAreCountedOnce() throws Exception {
+        write("CustomerID,Spend\nC1,10\nC2,20\n");
+        ingestion.ingest(file, ',', "Customers");
+
+        // appended: C3 twice before the batch is committed, then a changed C1 twice
+        write("C3,30\nC3,30\nC1,11\nC1,12\n", StandardOpenOption.APPEND);
+        IncrementalIngestion.Result result = ingestion.ingest(file, ',', "Customers");
+
+        assertEquals(IncrementalIngestion.Change.APPENDED, result.getChange());
+        assertCounts(result, 1, 2, 1);
+        Map<String, String> spend = stored();
+        assertEquals(3, spend.size());
+        assertEquals("12", spend.get("C1"));
+    }
+
+    @Test
+    public void reloadKeepsRowsMissingFromTheNewFile() throws Exception {
+        write("CustomerID,Spend\nC1,10\nC2,20\n");
+        ingestion.ingest(file, ',', "Customers");
+
+        write("CustomerID,Spend\nC2,21\nC3,30\nC4,40\n");
+        IncrementalIngestion.Result result = ingestion.ingest(file, ',', "Customers");
+
+        assertEquals(IncrementalIngestion.Change.RELOADED, result.getChange());
+        assertCounts(result, 2, 1, 0);
+        Map<String, String> spend = stored();
+        assertEquals(4, spend.size());
+        assertEquals("10", spend.get("C1"));
+        assertEquals("21", spend.get("C2"));
+    }
+
+    @Test
+    public void reloadAfterRestartRecognisesStoredNumericKeys() throws Exception {
+        // whole-row natural key, with a REAL column whose text SQLite does not keep ("10.50" becomes 10.5)
+        IncrementalIngestion wholeRows = new IncrementalIngestion(pool);
+        write("CustomerID,Spend,Visits\nC1,10.50,+3\nC2,7.25,4\n");
+        wholeRows.ingest(file, ',', "Customers");
+
+        write("CustomerID,Spend,Visits\nC2,7.25,4\nC1,10.50,+3\nC3,3.10,1\n");
+        IncrementalIngestion.Result result = new IncrementalIngestion(pool).ingest(file, ',', "Customers");
+
+        assertEquals(IncrementalIngestion.Change.RELOADED, result.getChange());
+        assertCounts(result, 1, 0, 2);
+        assertEquals(3, stored().size());
+    }
+
+    @Test
+    public void numericKeyPartsHashByValue() {
+        assertEquals("10.5", IncrementalIngestion.keyPart("10.50", TableSchema.SqlType.REAL));
+        assertEquals("10", IncrementalIngestion.keyPart("10.0", TableSchema.SqlType.REAL));
+        assertEquals("5", IncrementalIngestion.keyPart("+5", TableSchema.SqlType.INTEGER));
+        assertEquals("10.50", IncrementalIngestion.keyPart("10.50", TableSchema.SqlType.TEXT));
+        assertEquals("n/a", IncrementalIngestion.keyPart("n/a", TableSchema.SqlType.REAL));
+    }
+}
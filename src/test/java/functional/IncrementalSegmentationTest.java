@@ -0,0 +1,100 @@
+package functional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IncrementalSegmentationTest {
+    private static final List<String> FEATURES = Arrays.asList("Spend", "Visits");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ColumnarDataset customers(int count, String changedId, String extraId) {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("CustomerID", "Spend", "Visits"));
+        for (int i = 0; i < count; i++) {
+            String id = "C" + i;
+            double spend = (i % 2 == 0 ? 10 : 500) + i % 3;
+            if (id.equals(changedId)) spend += 40;
+            builder.addRow(new String[]{id, String.valueOf(spend), String.valueOf(1 + i % 4)});
+        }
+        if (extraId != null) builder.addRow(new String[]{extraId, "12.0", "2"});
+        return builder.build();
+    }
+
+    @Test
+    public void streamsNewAndChangedCustomersOnly() throws Exception {
+        Path model = folder.getRoot().toPath().resolve("segments.model");
+        Path assignments = folder.getRoot().toPath().resolve("segments.csv");
+        DataAnalysis analysis = new DataAnalysis();
+
+        IncrementalSegmentation first = new IncrementalSegmentation(model, FEATURES, 2);
+        analysis.customerSegmentation(first, customers(100, null, null), "CustomerID", assignments);
+        assertEquals(0, first.getModel().getStreamedRows());
+
+        // Unchanged data: nothing to stream
+        IncrementalSegmentation second = new IncrementalSegmentation(model, FEATURES, 2);
+        analysis.customerSegmentation(second, customers(100, null, null), "CustomerID", assignments);
+        assertEquals(0, second.getModel().getStreamedRows());
+
+        // One customer's spend changed and one customer is new
+        IncrementalSegmentation third = new IncrementalSegmentation(model, FEATURES, 2);
+        analysis.customerSegmentation(third, customers(100, "C7", "C100"), "CustomerID", assignments);
+        assertEquals(2, third.getModel().getStreamedRows());
+        assertTrue(ClusterAssignmentWriter.readIds(assignments).contains("C100"));
+        // the changed customer moved between clusters instead of being counted twice
+        assertEquals(101, Arrays.stream(third.getModel().getClusterSizes()).sum());
+    }
+
+    @Test
+    public void assignmentsWithoutRowHashesAreReclustered() throws Exception {
+        Path model = folder.getRoot().toPath().resolve("segments.model");
+        Path assignments = folder.getRoot().toPath().resolve("segments.csv");
+        DataAnalysis analysis = new DataAnalysis();
+        analysis.customerSegmentation(new IncrementalSegmentation(model, FEATURES, 2), customers(100, null, null),
+                "CustomerID", assignments);
+        // the one-off segmentation writes the same file, without row hashes
+        analysis.customerSegmentation(customers(100, null, null), "CustomerID", FEATURES, 2, assignments);
+
+        IncrementalSegmentation next = new IncrementalSegmentation(model, FEATURES, 2);
+        analysis.customerSegmentation(next, customers(100, "C7", null), "CustomerID", assignments);
+
+        assertEquals(0, next.getModel().getStreamedRows());
+        assertEquals(100, Arrays.stream(next.getModel().getClusterSizes()).sum());
+        assertNotNull(ClusterAssignmentWriter.readAssignments(assignments).get("C7").getRowHash());
+    }
+
+    @Test
+    public void rowHashIgnoresUnselectedColumnsAndNumericRepresentation() {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("CustomerID", "Spend", "Visits"));
+        builder.addRow(new String[]{"C1", "2", "3"});
+        builder.addRow(new String[]{"C2", "2.0", "3"});
+        builder.addRow(new String[]{"C3", "", "3"});
+        ColumnarDataset data = builder.build();
+        int[] features = {1, 2};
+
+        assertEquals(data.rowHash(0, features), data.rowHash(1, features));
+        assertNotEquals(data.rowHash(0, features), data.rowHash(2, features));
+        assertNotEquals(data.rowHash(0, new int[]{0, 1, 2}), data.rowHash(1, new int[]{0, 1, 2}));
+    }
+
+    @Test
+    public void segmentsArffInput() throws Exception {
+        Path arff = folder.getRoot().toPath().resolve("customers.arff");
+        StringBuilder content = new StringBuilder("@relation customers\n@attribute CustomerID string\n"
+                + "@attribute Spend numeric\n@attribute Visits numeric\n@data\n");
+        for (int i = 0; i < 20; i++) content.append('C').append(i).append(',').append(i % 2 == 0 ? 10 : 500).append(",2\n");
+        java.nio.file.Files.write(arff, content.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+
+        new DataAnalysis().customerSegmentation(arff.toString(), 2);
+
+        Path assignments = folder.getRoot().toPath().resolve("customers_segments.csv");
+        assertEquals(20, ClusterAssignmentWriter.readIds(assignments).size());
+    }
+}
@@ -0,0 +1,43 @@
+package functional;
+
+import org.junit.Test;
+import weka.core.Instances;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class InstancesAdapterTest {
+    private static final String ARFF = "@relation customers\n"
+            + "@attribute CustomerID string\n"
+            + "@attribute Spend numeric\n"
+            + "@attribute Visits numeric\n"
+            + "@attribute Tier {gold,silver}\n"
+            + "@data\n"
+            + "C1,10.5,3,gold\n"
+            + "C2,?,4,silver\n"
+            + "C3,7.25,1,?\n";
+
+    @Test
+    public void arffRoundTripsThroughColumnarData() throws Exception {
+        Instances instances = new Instances(new StringReader(ARFF));
+
+        ColumnarDataset data = InstancesAdapter.toColumnar(instances);
+
+        assertEquals(Arrays.asList("CustomerID", "Spend", "Visits", "Tier"), data.getColumnNames());
+        assertEquals(3, data.getRowCount());
+        assertEquals(ColumnarDataset.ColumnType.DOUBLE, data.getColumnType(1));
+        assertEquals(ColumnarDataset.ColumnType.LONG, data.getColumnType(2));
+        assertFalse(data.isNumeric(3));
+        assertTrue(data.isNull(1, 1));
+        assertTrue(data.isNull(2, 3));
+        assertEquals(10.5, data.getDouble(0, 1), 0);
+        assertEquals("silver", data.getString(1, 3));
+
+        Instances back = InstancesAdapter.from(data).select("Spend", "Visits").build();
+        assertEquals(3, back.numInstances());
+        assertEquals(7.25, back.instance(2).value(0), 0);
+        assertTrue(back.instance(1).isMissing(0));
+    }
+}
@@ -0,0 +1,70 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KMeansClusteringTest {
+
+    private static ColumnarDataset dataset(String[]... rows) {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("CustomerID", "Spend", "Visits"));
+        for (String[] row : rows) builder.addRow(row);
+        return builder.build();
+    }
+
+    @Test
+    public void missingFeaturesAreImputedWithTheColumnMean() {
+        // Spend is column 1; row 1 is complete, the missing value sits in row 3
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "10.0", "1"},
+                new String[]{"C1", "20.0", "2"},
+                new String[]{"C2", "30.0", "3"},
+                new String[]{"C3", "", "4"});
+
+        double[] points = KMeansClustering.features(data, Arrays.asList("Spend", "Visits"));
+
+        assertEquals(20.0, points[3 * 2], 1e-9);
+        assertEquals(4.0, points[3 * 2 + 1], 1e-9);
+        assertEquals(10.0, points[0], 1e-9);
+    }
+
+    @Test
+    public void completeColumnsAreCopiedAsIs() {
+        ColumnarDataset data = dataset(
+                new String[]{"C0", "1.5", "7"},
+                new String[]{"C1", "2.5", "8"});
+
+        assertArrayEquals(new double[]{1.5, 7, 2.5, 8},
+                KMeansClustering.features(data, Arrays.asList("Spend", "Visits")), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonNumericFeatures() {
+        ColumnarDataset data = dataset(new String[]{"C0", "1.5", "7"});
+        KMeansClustering.features(data, Arrays.asList("CustomerID"));
+    }
+
+    @Test
+    public void separatesWellSeparatedGroups() throws InterruptedException {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("CustomerID", "Spend", "Visits"));
+        for (int i = 0; i < 200; i++) {
+            double offset = i % 2 == 0 ? 0 : 1000;
+            builder.addRow(new String[]{"C" + i, String.valueOf(offset + i % 7), String.valueOf(offset + i % 5)});
+        }
+        ColumnarDataset data = builder.build();
+        List<String> features = Arrays.asList("Spend", "Visits");
+
+        KMeansClustering clustering = new KMeansClustering(2);
+        clustering.setSeed(42);
+        KMeansModel model = clustering.fit(data, features);
+        int[] clusters = model.assign(data);
+
+        for (int i = 2; i < clusters.length; i++) {
+            assertEquals("row " + i, clusters[i % 2], clusters[i]);
+        }
+        assertNotEquals(clusters[0], clusters[1]);
+    }
+}
@@ -0,0 +1,40 @@
+package functional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ParallelCsvParserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void linesWithTheWrongFieldCountAreCountedAsRejected() throws IOException {
+        StringBuilder csv = new StringBuilder("CustomerID,Spend,Segment\n");
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 == 3) csv.append("C").append(i).append(",").append(i).append("\n");           // too few
+            else if (i % 10 == 7) csv.append("C").append(i).append(",1,A,extra\n");                  // too many
+            else if (i % 10 == 9) csv.append("\r\n");                                                // blank
+            else csv.append("C").append(i).append(",").append(i).append(",\"A, B\"\r\n");
+        }
+        Path file = folder.newFile("customers.csv").toPath();
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        long rejectedBefore = PipelineMetrics.ROWS_REJECTED.getCount();
+
+        // Small chunks, so the lines are spread over several parallel parts
+        ColumnarDataset data = new ParallelCsvParser(',', 4, 256).parse(file);
+
+        assertEquals(70, data.getRowCount());
+        assertEquals(20, PipelineMetrics.ROWS_REJECTED.getCount() - rejectedBefore);
+        assertEquals("C0", data.getString(0, 0));
+        assertEquals("A, B", data.getString(0, 2));
+        assertEquals("C98", data.getString(69, 0));
+    }
+}
@@ -0,0 +1,162 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PipelineOrchestratorTest {
+    private static final PipelineOrchestrator.Key<String> RAW = PipelineOrchestrator.Key.of("raw", String.class);
+    private static final PipelineOrchestrator.Key<String> CLEANED = PipelineOrchestrator.Key.of("cleaned", String.class);
+    private static final PipelineOrchestrator.Key<Integer> COUNT = PipelineOrchestrator.Key.of("count", Integer.class);
+    private static final PipelineOrchestrator.Key<Integer> STATS = PipelineOrchestrator.Key.of("stats", Integer.class);
+
+    private static PipelineOrchestrator.Status status(PipelineOrchestrator.Result result, String stage) {
+        return result.getStage(stage).getStatus();
+    }
+
+    @Test
+    public void valuesAreHandedToDependentStages() throws Exception {
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        pipeline.provide(RAW, " a,b ");
+        pipeline.stage("Clean").reads(RAW).writes(CLEANED).run(context -> context.put(CLEANED, context.get(RAW).trim()));
+        pipeline.stage("Count").reads(CLEANED).writes(COUNT).run(context -> context.put(COUNT, context.get(CLEANED).split(",").length));
+
+        PipelineOrchestrator.Result result = pipeline.run();
+
+        assertTrue(result.isSuccessful());
+        assertEquals("a,b", result.get(CLEANED));
+        assertEquals(Integer.valueOf(2), result.get(COUNT));
+        assertEquals("Clean", result.getStages().get(0).getName());
+    }
+
+    @Test
+    public void failedStageSkipsOnlyItsDependents() throws Exception {
+        AtomicReference<Integer> reportInput = new AtomicReference<>(-1);
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        pipeline.stage("Ingest").writes(RAW).run(context -> {
+            throw new IllegalStateException("file missing");
+        });
+        pipeline.stage("Clean").reads(RAW).writes(CLEANED).run(context -> context.put(CLEANED, "never"));
+        pipeline.stage("Count").reads(CLEANED).writes(COUNT).run(context -> context.put(COUNT, 0));
+        pipeline.stage("Stats").writes(STATS).run(context -> context.put(STATS, 42));
+        pipeline.stage("Report").reads(STATS).readsIfPresent(COUNT).run(context -> reportInput.set(context.get(COUNT)));
+
+        PipelineOrchestrator.Result result = pipeline.run();
+
+        assertFalse(result.isSuccessful());
+        assertEquals(PipelineOrchestrator.Status.FAILED, status(result, "Ingest"));
+        assertEquals("file missing", result.getStage("Ingest").getError().getMessage());
+        assertEquals(PipelineOrchestrator.Status.SKIPPED, status(result, "Clean"));
+        assertEquals(PipelineOrchestrator.Status.SKIPPED, status(result, "Count"));
+        assertEquals(PipelineOrchestrator.Status.SUCCEEDED, status(result, "Stats"));
+        // the optional input's producer was skipped, so the report runs without it
+        assertEquals(PipelineOrchestrator.Status.SUCCEEDED, status(result, "Report"));
+        assertNull(reportInput.get());
+        assertEquals("SKIPPED", result.toMetrics().get("Stage Count"));
+    }
+
+    @Test
+    public void stagesMustWriteAndReadOnlyWhatTheyDeclare() throws Exception {
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        pipeline.provide(RAW, "x");
+        pipeline.stage("Silent").writes(CLEANED).run(context -> { });
+        pipeline.stage("Snoop").writes(COUNT).run(context -> context.put(COUNT, context.get(RAW).length()));
+
+        PipelineOrchestrator.Result result = pipeline.run();
+
+        assertEquals(PipelineOrchestrator.Status.FAILED, status(result, "Silent"));
+        assertEquals(PipelineOrchestrator.Status.FAILED, status(result, "Snoop"));
+        assertTrue(result.getStage("Snoop").getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void independentStagesOverlap() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        for (String name : new String[]{"Churn", "CLV"}) {
+            pipeline.stage(name).run(context -> {
+                bothStarted.countDown();
+                if (!bothStarted.await(10, TimeUnit.SECONDS)) throw new IllegalStateException(name + " ran alone");
+            });
+        }
+
+        PipelineOrchestrator.Result result = pipeline.run();
+
+        assertTrue(result.getStages().toString(), result.isSuccessful());
+    }
+
+    @Test
+    public void concurrencyBoundsRunningStages() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        for (int i = 0; i < 6; i++) {
+            pipeline.stage("Stage " + i).run(context -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+            });
+        }
+
+        assertTrue(pipeline.run().isSuccessful());
+        assertTrue("peak " + peak.get(), peak.get() <= 2);
+    }
+
+    @Test
+    public void cyclesAreRejected() throws Exception {
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        pipeline.stage("A").reads(COUNT).writes(STATS).run(context -> context.put(STATS, 1));
+        pipeline.stage("B").reads(STATS).writes(COUNT).run(context -> context.put(COUNT, 1));
+        try {
+            pipeline.run();
+            fail("Expected the cycle to be rejected");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("cycle"));
+        }
+    }
+
+    @Test
+    public void duplicateProducersAreRejected() throws Exception {
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        pipeline.stage("A").writes(STATS).run(context -> context.put(STATS, 1));
+        pipeline.stage("B").writes(STATS).run(context -> context.put(STATS, 2));
+        try {
+            pipeline.run();
+            fail("Expected the second producer to be rejected");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("more than one stage"));
+        }
+
+        PipelineOrchestrator provided = new PipelineOrchestrator(2).provide(RAW, "x");
+        provided.stage("Ingest").writes(RAW).run(context -> context.put(RAW, "y"));
+        try {
+            provided.run();
+            fail("Expected a stage writing a provided value to be rejected");
+        } catch (IllegalStateException expected) {
+            // provided values have no producing stage
+        }
+    }
+
+    @Test
+    public void undeclaredSourcesAndDuplicateNamesAreRejected() throws Exception {
+        PipelineOrchestrator pipeline = new PipelineOrchestrator(2);
+        pipeline.stage("Clean").reads(RAW).writes(CLEANED).run(context -> context.put(CLEANED, ""));
+        try {
+            pipeline.run();
+            fail("Expected the missing input to be rejected");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("nothing provides"));
+        }
+        try {
+            pipeline.stage("Clean");
+            fail("Expected the duplicate stage name to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // names identify stages in the results
+        }
+    }
+}
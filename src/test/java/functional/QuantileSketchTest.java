@@ -0,0 +1,85 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+    private static final int K = 200;
+    private static final int N = 200_000;
+    // Rank error of the sketch is about 1.7 / k; allow some slack for the coin flips
+    private static final double RANK_TOLERANCE = 3.0 / K;
+
+    // 0 .. n-1 in random order, so the value v has rank v / n
+    private static double[] shuffled(int n, long seed) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+
+    private static void assertRankError(QuantileSketch sketch, int n) {
+        for (double q = 0.01; q < 1.0; q += 0.01) {
+            double rank = sketch.quantile(q) / n;
+            assertEquals("rank of quantile " + q, q, rank, RANK_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void quantilesStayWithinTheRankErrorBound() {
+        QuantileSketch sketch = new QuantileSketch(K);
+        for (double value : shuffled(N, 1)) sketch.update(value);
+
+        assertEquals(N, sketch.getCount());
+        assertRankError(sketch, N);
+        // Memory grows with log(n / k), never with n
+        assertTrue("retained " + sketch.retainedItems(), sketch.retainedItems() < 4 * K);
+    }
+
+    @Test
+    public void mergedSketchesKeepTheRankErrorBound() {
+        double[] values = shuffled(N, 2);
+        QuantileSketch first = new QuantileSketch(K);
+        QuantileSketch second = new QuantileSketch(K);
+        for (int i = 0; i < N; i++) (i < N / 3 ? first : second).update(values[i]);
+
+        QuantileSketch merged = first.merge(second);
+
+        assertSame(first, merged);
+        assertEquals(N, merged.getCount());
+        assertRankError(merged, N);
+        // the merged-in sketch is left unchanged
+        assertEquals(N - N / 3, second.getCount());
+    }
+
+    @Test
+    public void smallInputsAreExact() {
+        QuantileSketch sketch = new QuantileSketch(K);
+        for (int i = 10; i >= 0; i--) sketch.update(i);
+        sketch.update(Double.NaN);
+
+        assertEquals(11, sketch.getCount());
+        assertEquals(0.0, sketch.quantile(0), 0.0);
+        assertEquals(5.0, sketch.quantile(0.5), 0.0);
+        assertEquals(2.5, sketch.quantile(0.25), 1e-12);
+        assertEquals(10.0, sketch.quantile(1), 0.0);
+    }
+
+    @Test
+    public void emptySketchHasNoQuantiles() {
+        assertTrue(Double.isNaN(new QuantileSketch(K).quantile(0.5)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sketchesWithDifferentKCannotBeMerged() {
+        new QuantileSketch(100).merge(new QuantileSketch(200));
+    }
+}
@@ -0,0 +1,41 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SliceQueryTest {
+
+    @Test
+    public void projectLeavesTheOriginalSliceUnchanged() {
+        SliceQuery slice = SliceQuery.from("Purchases")
+                .select("CustomerID")
+                .between("Date", "2024-01-01", "2024-02-01")
+                .orderBy("Date", true)
+                .limit(10);
+        String before = slice.toSql();
+
+        SliceQuery first = slice.project("Date", "Amount");
+        SliceQuery second = slice.project("Date", "Category", "Amount");
+
+        assertEquals(before, slice.toSql());
+        assertEquals("SELECT \"Date\", \"Amount\" FROM \"Purchases\" WHERE \"Date\" >= ? AND \"Date\" < ?"
+                + " ORDER BY \"Date\" ASC LIMIT 10", first.toSql());
+        assertTrue(second.toSql().startsWith("SELECT \"Date\", \"Category\", \"Amount\" FROM"));
+        assertEquals(Arrays.<Object>asList("2024-01-01", "2024-02-01"), first.getParameters());
+        assertEquals(slice.getParameters(), second.getParameters());
+    }
+
+    @Test
+    public void filtersAddedToAProjectionStayOnTheProjection() {
+        SliceQuery slice = SliceQuery.from("Purchases").where("Amount", ">", 5);
+
+        SliceQuery projected = slice.project("Amount").where("Category", "=", "Books");
+
+        assertEquals(1, slice.getParameters().size());
+        assertEquals(2, projected.getParameters().size());
+        assertFalse(slice.toSql().contains("Category"));
+    }
+}
@@ -0,0 +1,100 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamingStatisticsTest {
+
+    // Two-pass reference values: mean, then sample variance around it
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) sum += value;
+        return sum / values.length;
+    }
+
+    private static double variance(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) sum += (value - mean) * (value - mean);
+        return sum / (values.length - 1);
+    }
+
+    private static double[] values(int n, double offset, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) values[i] = offset + random.nextGaussian() * 3;
+        return values;
+    }
+
+    @Test
+    public void mergedPartsMatchASinglePass() {
+        // A large offset makes the naive sum-of-squares formula lose most of its digits
+        double[] values = values(10_000, 1e9, 3);
+        StreamingStatistics single = new StreamingStatistics();
+        single.addAll(values, 0, values.length);
+
+        StreamingStatistics merged = new StreamingStatistics();
+        int[] cuts = {0, 1, 2500, 2501, 7000, values.length};
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            StreamingStatistics part = new StreamingStatistics();
+            part.addAll(values, cuts[i], cuts[i + 1]);
+            merged.merge(part);
+        }
+
+        // Means near 1e9 agree to about 1e-15 relative; the variance must still be exact to 1e-6
+        assertEquals(values.length, merged.getCount());
+        assertEquals(mean(values), merged.getMean(), 1e-4);
+        assertEquals(variance(values), merged.getVariance(), 1e-6);
+        assertEquals(single.getMean(), merged.getMean(), 1e-4);
+        assertEquals(single.getVariance(), merged.getVariance(), 1e-6);
+        assertEquals(single.getMin(), merged.getMin(), 0.0);
+        assertEquals(single.getMax(), merged.getMax(), 0.0);
+        // standard deviation 3, so a 2% rank error moves the median by well under 0.2
+        assertEquals(single.getMedian(), merged.getMedian(), 0.2);
+    }
+
+    @Test
+    public void parallelSummaryMatchesTheTwoPassFormulas() {
+        double[] values = values(300_000, 50, 4);
+        StreamingStatistics stats = StreamingStatistics.of(values);
+
+        assertEquals(values.length, stats.getCount());
+        assertEquals(mean(values), stats.getMean(), 1e-9);
+        assertEquals(variance(values), stats.getVariance(), 1e-9);
+    }
+
+    @Test
+    public void mergingAnEmptyAccumulatorChangesNothing() {
+        StreamingStatistics stats = StreamingStatistics.withoutQuantiles();
+        stats.add(1);
+        stats.add(2);
+        stats.add(6);
+
+        stats.merge(StreamingStatistics.withoutQuantiles());
+        assertEquals(3, stats.getCount());
+        assertEquals(3.0, stats.getMean(), 1e-12);
+        assertEquals(7.0, stats.getVariance(), 1e-12);
+
+        StreamingStatistics empty = StreamingStatistics.withoutQuantiles().merge(stats);
+        assertEquals(3, empty.getCount());
+        assertEquals(3.0, empty.getMean(), 1e-12);
+        assertEquals(7.0, empty.getVariance(), 1e-12);
+        assertEquals(1.0, empty.getMin(), 0.0);
+        assertEquals(6.0, empty.getMax(), 0.0);
+    }
+
+    @Test
+    public void emptyAndSingleValueStatistics() {
+        StreamingStatistics stats = new StreamingStatistics();
+        assertTrue(Double.isNaN(stats.getMean()));
+        assertTrue(Double.isNaN(stats.getVariance()));
+
+        stats.add(Double.NaN);
+        stats.add(4);
+        assertEquals(1, stats.getCount());
+        assertEquals(0.0, stats.getVariance(), 0.0);
+    }
+}
@@ -0,0 +1,34 @@
+package functional;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TableSchemaTest {
+    @Test
+    public void idsAndZipCodesWithLeadingZerosAreText() {
+        List<String> columns = Arrays.asList("CustomerID", "ZipCode", "Spend", "Visits");
+        TableSchema schema = TableSchema.infer(columns, Arrays.asList(
+                new String[]{"007", "02134", "19.90", "3"},
+                new String[]{"01234", "10001", "0.5", "12"}));
+
+        assertEquals(TableSchema.SqlType.TEXT, schema.getType("CustomerID"));
+        assertEquals(TableSchema.SqlType.TEXT, schema.getType("ZipCode"));
+        assertEquals(TableSchema.SqlType.REAL, schema.getType("Spend"));
+        assertEquals(TableSchema.SqlType.INTEGER, schema.getType("Visits"));
+        assertEquals("CustomerID", schema.getCustomerIdColumn());
+    }
+
+    @Test
+    public void numericIdsWithoutLeadingZerosStayNumeric() {
+        TableSchema schema = TableSchema.infer(Arrays.asList("CustomerID", "Spend"), Arrays.asList(
+                new String[]{"7", "0"},
+                new String[]{"1234", "-0.25"}));
+
+        assertEquals(TableSchema.SqlType.INTEGER, schema.getType("CustomerID"));
+        assertEquals(TableSchema.SqlType.REAL, schema.getType("Spend"));
+    }
+}
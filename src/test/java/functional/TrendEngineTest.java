@@ -0,0 +1,51 @@
+package functional;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TrendEngineTest {
+    @Test
+    public void eventsFarFromTheirSeriesAreSkipped() {
+        ColumnarDataset.Builder builder = ColumnarDataset.builder(Arrays.asList("Date", "Amount"));
+        builder.addRow(new String[]{"2024-01-05 10:00", "5"});
+        builder.addRow(new String[]{"2024-01-05 10:02", "7"});
+        builder.addRow(new String[]{"20240105", "100"});          // yyyymmdd, read as epoch seconds in 1970
+        builder.addRow(new String[]{"2024-01-05 09:59", "1"});
+        TrendEngine engine = new TrendEngine(Duration.ofMinutes(1));
+
+        engine.add(builder.build(), "Date", null, "Amount");
+
+        TrendEngine.Series series = engine.series(TrendEngine.ALL_CATEGORIES);
+        assertEquals(4, series.size());
+        assertArrayEquals(new double[]{1, 5, 0, 7}, series.totals(), 0);
+    }
+
+    @Test
+    public void singleEventsOutsideTheSpanAreRejected() {
+        TrendEngine engine = new TrendEngine(Duration.ofSeconds(1));
+        engine.add("A", 1_700_000_000_000L, 2);
+
+        try {
+            engine.add("A", 1_700_000_000_000L + 1000L * TrendEngine.MAX_BUCKETS, 1);
+            fail("Expected the event to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // the series is left as it was
+        }
+        try {
+            engine.add("A", Long.MIN_VALUE, 1);
+            fail("Expected the event to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // too far to even count the buckets
+        }
+        engine.add("A", 1_700_000_000_000L - 1000L * (TrendEngine.MAX_BUCKETS - 1), 3);
+
+        TrendEngine.Series series = engine.series("A");
+        assertEquals(TrendEngine.MAX_BUCKETS, series.size());
+        assertEquals(3, series.total(0), 0);
+        assertEquals(2, series.total(TrendEngine.MAX_BUCKETS - 1), 0);
+    }
+}